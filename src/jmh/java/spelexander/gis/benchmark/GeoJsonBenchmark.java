@@ -0,0 +1,101 @@
+package spelexander.gis.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spelexander.gis.GisGridAnnotation;
+import spelexander.gis.MapGisGridAnnotationReader;
+
+/**
+ * GeoJson import and export, tree based and streaming, over a synthetic file
+ * generated once per trial. The 10M vertex layer is about 450MB of GeoJson, pass
+ * -p vertices=10000000 (and a larger heap) to include it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class GeoJsonBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int vertices;
+
+	private final MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+
+	private List<GisGridAnnotation> annotations;
+
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		annotations = SyntheticData.annotations(vertices);
+		file = Files.createTempFile("tiny-gis-bench", ".json");
+		reader.writeGeoJson(annotations, file, false);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public List<GisGridAnnotation> fromGeoJson() {
+		return reader.fromGeoJson(file.toFile());
+	}
+
+	@Benchmark
+	public long streamGeoJson() throws IOException {
+		File json = file.toFile();
+		try (Stream<GisGridAnnotation> stream = reader.streamGeoJson(json)) {
+			return stream.count();
+		}
+	}
+
+	@Benchmark
+	public String toGeoJson() {
+		return reader.toGeoJson(annotations);
+	}
+
+	@Benchmark
+	public void writeGeoJson() throws IOException {
+		try (OutputStream outputStream = new NullOutputStream()) {
+			reader.writeGeoJson(annotations, outputStream, false);
+		}
+	}
+
+	/**
+	 * Discards everything so only serialization is measured
+	 */
+	static final class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package spelexander.gis.benchmark;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Shape;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geojson.LngLatAlt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import spelexander.gis.GisGridAnnotation;
+import spelexander.gis.GisGridUtil.RotationType;
+import spelexander.gis.MapGisGridUtil;
+import spelexander.gis.ScaleRotation;
+import spelexander.gis.WidthHeightProvider;
+
+/**
+ * The per-vertex hot paths of MapGisGridUtil over whole synthetic layers.
+ * Each invocation processes every vertex of the layer once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class GeometryBenchmark {
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int vertices;
+
+	private final MapGisGridUtil util = new MapGisGridUtil();
+
+	private List<GisGridAnnotation> annotations;
+
+	private LngLatAlt centerPoint;
+
+	private LngLatAlt topLeft;
+
+	private ScaleRotation rotation;
+
+	private Dimension fieldSize;
+
+	private final WidthHeightProvider provider = new GridProvider(2.5);
+
+	@Setup(Level.Trial)
+	public void setup() {
+		annotations = SyntheticData.annotations(vertices);
+		centerPoint = util.getCenterPoint(annotations);
+		rotation = new ScaleRotation(30.0);
+		fieldSize = util.getFieldSizeToUse(annotations, rotation, provider);
+		topLeft = util.getTopLeftPoint(annotations, fieldSize, rotation, provider);
+	}
+
+	@Benchmark
+	public double distance() {
+		double total = 0;
+		for (GisGridAnnotation annotation : annotations) {
+			for (LngLatAlt point : annotation.getExteriorRing()) {
+				total += MapGisGridUtil.distance(centerPoint, point);
+			}
+		}
+		return total;
+	}
+
+	@Benchmark
+	public void transformToXY(Blackhole blackhole) {
+		for (GisGridAnnotation annotation : annotations) {
+			for (LngLatAlt point : annotation.getExteriorRing()) {
+				Point p = util.transformToXY(point, topLeft, fieldSize, rotation, provider);
+				blackhole.consume(p);
+			}
+		}
+	}
+
+	@Benchmark
+	public void getPolygonShape(Blackhole blackhole) {
+		for (GisGridAnnotation annotation : annotations) {
+			Shape shape = util.getPolygonShape(annotation, topLeft, fieldSize, rotation, provider);
+			blackhole.consume(shape);
+		}
+	}
+
+	@Benchmark
+	public List<GisGridAnnotation> rotateTo() {
+		return util.rotateTo(annotations, rotation, RotationType.NORTH);
+	}
+
+	@Benchmark
+	public LngLatAlt getCenterPoint() {
+		return util.getCenterPoint(annotations);
+	}
+
+	/**
+	 * Linear meters to grid units provider, as a Swing client would use
+	 */
+	static final class GridProvider implements WidthHeightProvider {
+
+		private final double metersPerUnit;
+
+		GridProvider(double metersPerUnit) {
+			this.metersPerUnit = metersPerUnit;
+		}
+
+		@Override
+		public double getTotalUnitX() {
+			return metersPerUnit;
+		}
+
+		@Override
+		public double getTotalUnitY() {
+			return metersPerUnit;
+		}
+
+		@Override
+		public double getUnitXForMeters(double meters) {
+			return meters / metersPerUnit;
+		}
+
+		@Override
+		public double getMetersForUnitX(double x) {
+			return x * metersPerUnit;
+		}
+
+		@Override
+		public double getUnitYForMeters(double meters) {
+			return meters / metersPerUnit;
+		}
+
+		@Override
+		public double getMetersForUnitY(double y) {
+			return y * metersPerUnit;
+		}
+
+		@Override
+		public int getAdditionalY() {
+			return 4;
+		}
+
+		@Override
+		public int getAdditionalX() {
+			return 4;
+		}
+	}
+}
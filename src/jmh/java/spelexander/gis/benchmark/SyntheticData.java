@@ -0,0 +1,83 @@
+package spelexander.gis.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geojson.LngLatAlt;
+
+import spelexander.gis.GisGridAnnotation;
+import spelexander.gis.MapGisGridAnnotationReader;
+
+/**
+ * Reproducible synthetic layers for the benchmarks, so they run offline and give
+ * comparable numbers between runs.
+ */
+public final class SyntheticData {
+
+	/**
+	 * Default ring size, close to a typical surveyed parcel
+	 */
+	public static final int VERTICES_PER_POLYGON = 64;
+
+	private static final double ORIGIN_LONGITUDE = 149.38;
+
+	private static final double ORIGIN_LATITUDE = -35.07;
+
+	/**
+	 * Roughly 100m between parcel centers
+	 */
+	private static final double SPACING_DEGREES = 0.001;
+
+	private SyntheticData() {
+	}
+
+	/**
+	 * Closed, jittered, roughly circular polygons laid out on a square grid
+	 * @param totalVertices vertices over all polygons, rounded up to whole polygons
+	 * @param verticesPerPolygon including the closing vertex
+	 * @param seed
+	 * @return
+	 */
+	public static List<GisGridAnnotation> annotations(int totalVertices, int verticesPerPolygon, long seed) {
+		Random random = new Random(seed);
+		int polygons = Math.max(1, (totalVertices + verticesPerPolygon - 1) / verticesPerPolygon);
+		int columns = (int) Math.ceil(Math.sqrt(polygons));
+
+		List<GisGridAnnotation> result = new ArrayList<>(polygons);
+		for (int i = 0; i < polygons; i++) {
+			double centerLong = ORIGIN_LONGITUDE + (i % columns) * SPACING_DEGREES;
+			double centerLat = ORIGIN_LATITUDE - (i / columns) * SPACING_DEGREES;
+
+			List<LngLatAlt> ring = new ArrayList<>(verticesPerPolygon);
+			for (int v = 0; v < verticesPerPolygon - 1; v++) {
+				double angle = 2 * Math.PI * v / (verticesPerPolygon - 1);
+				double radius = SPACING_DEGREES * (0.3 + 0.15 * random.nextDouble());
+				ring.add(new LngLatAlt(centerLong + radius * Math.cos(angle), centerLat + radius * Math.sin(angle)));
+			}
+			ring.add(ring.get(0));
+
+			GisGridAnnotation annotation = new GisGridAnnotation(ring);
+			annotation.setName("parcel-" + i);
+			result.add(annotation);
+		}
+
+		return result;
+	}
+
+	public static List<GisGridAnnotation> annotations(int totalVertices) {
+		return annotations(totalVertices, VERTICES_PER_POLYGON, 42L);
+	}
+
+	/**
+	 * Write a synthetic layer as a GeoJson FeatureCollection
+	 * @param totalVertices
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void writeGeoJson(int totalVertices, Path path) throws IOException {
+		new MapGisGridAnnotationReader().writeGeoJson(annotations(totalVertices), path, false);
+	}
+}
@@ -0,0 +1,254 @@
+package spelexander.gis;
+
+import java.awt.Dimension;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Keeps the center, top left and field size of a live edited set of annotations
+ * up to date as annotations are added, removed or replaced, instead of rescanning
+ * every vertex as the batch methods of {@link MapGisGridUtil} do.
+ *
+ * Each change costs O(changed vertices log n) and each query O(1). Coordinate sums
+ * are compensated so adding and removing over a long edit session does not drift,
+ * the center agrees with {@link MapGisGridUtil#getCenterPoint(java.util.List)} to
+ * rounding. The field size only depends on the longitude and latitude extents
+ * around the center, which are kept in counted sorted maps.
+ *
+ * Annotations are tracked by identity and their rings copied when added, so after
+ * editing an annotation in place call {@link #update(GisGridAnnotation)}. Not thread
+ * safe.
+ */
+public class AnnotationAccumulator {
+
+	private final MapGisGridUtil util;
+
+	private final Map<GisGridAnnotation, PackedRing> tracked = new IdentityHashMap<>();
+
+	private final CompensatedSum longitude = new CompensatedSum();
+
+	private final CompensatedSum latitude = new CompensatedSum();
+
+	private final CompensatedSum altitude = new CompensatedSum();
+
+	private long count = 0;
+
+	private final CountedValues longitudes = new CountedValues();
+
+	private final CountedValues latitudes = new CountedValues();
+
+	/**
+	 * @param util measures the field size and moves to the top left, with its distance model
+	 */
+	public AnnotationAccumulator(MapGisGridUtil util) {
+		this.util = Objects.requireNonNull(util);
+	}
+
+	/**
+	 * @param annotation
+	 * @return false if the annotation was already tracked
+	 */
+	public boolean add(GisGridAnnotation annotation) {
+		Objects.requireNonNull(annotation);
+		if (tracked.containsKey(annotation)) {
+			return false;
+		}
+
+		PackedRing ring = PackedRing.fromAnnotation(annotation);
+		tracked.put(annotation, ring);
+		apply(ring, 1);
+		return true;
+	}
+
+	public void addAll(Iterable<? extends GisGridAnnotation> annotations) {
+		for (GisGridAnnotation annotation : annotations) {
+			add(annotation);
+		}
+	}
+
+	/**
+	 * Remove an annotation as it was when added or last updated
+	 * @param annotation
+	 * @return false if the annotation was not tracked
+	 */
+	public boolean remove(GisGridAnnotation annotation) {
+		PackedRing ring = tracked.remove(annotation);
+		if (ring == null) {
+			return false;
+		}
+
+		apply(ring, -1);
+		return true;
+	}
+
+	/**
+	 * Pick up in place edits to a tracked annotation
+	 * @param annotation
+	 * @return false if the annotation was not tracked
+	 */
+	public boolean update(GisGridAnnotation annotation) {
+		if (!remove(annotation)) {
+			return false;
+		}
+		return add(annotation);
+	}
+
+	/**
+	 * @param previous
+	 * @param annotation
+	 * @return false if the previous annotation was not tracked, nothing is changed
+	 */
+	public boolean replace(GisGridAnnotation previous, GisGridAnnotation annotation) {
+		if (!remove(previous)) {
+			return false;
+		}
+		add(annotation);
+		return true;
+	}
+
+	public void clear() {
+		tracked.clear();
+		longitude.reset();
+		latitude.reset();
+		altitude.reset();
+		count = 0;
+		longitudes.clear();
+		latitudes.clear();
+	}
+
+	public int size() {
+		return tracked.size();
+	}
+
+	public boolean contains(GisGridAnnotation annotation) {
+		return tracked.containsKey(annotation);
+	}
+
+	/**
+	 * Same as {@link MapGisGridUtil#getCenterPoint(java.util.List)} of the tracked annotations
+	 * @return null when nothing is tracked
+	 */
+	public LngLatAlt getCenterPoint() {
+		if (tracked.isEmpty()) {
+			return null;
+		}
+
+		double points = count;
+		return new LngLatAlt(longitude.value() / points, latitude.value() / points, altitude.value() / points);
+	}
+
+	/**
+	 * Same as {@link MapGisGridUtil#getTopLeftPoint(java.util.List, Dimension, ScaleRotation, WidthHeightProvider)}
+	 * @return null when nothing is tracked
+	 */
+	public LngLatAlt getTopLeftPoint(Dimension fieldSize, ScaleRotation rotation, WidthHeightProvider params) {
+		LngLatAlt center = getCenterPoint();
+		if (center == null) {
+			return null;
+		}
+		return util.getTopLeftPoint(center, fieldSize, rotation, params);
+	}
+
+	/**
+	 * Same as {@link MapGisGridUtil#getFieldSizeToUse(java.util.List, ScaleRotation, WidthHeightProvider)}.
+	 * Distances from the center grow with the longitude or latitude difference, so the
+	 * furthest points are always at the extents.
+	 * @return null when nothing is tracked
+	 */
+	public Dimension getFieldSizeToUse(ScaleRotation rotation, WidthHeightProvider params) {
+		LngLatAlt center = getCenterPoint();
+		if (center == null) {
+			return null;
+		}
+
+		double max_x = 0;
+		double max_y = 0;
+
+		if (!longitudes.isEmpty()) {
+			max_x = Math.max(max_x, util.getDistanceBetween(new LngLatAlt(longitudes.min(), center.getLatitude()), center));
+			max_x = Math.max(max_x, util.getDistanceBetween(new LngLatAlt(longitudes.max(), center.getLatitude()), center));
+			max_y = Math.max(max_y, util.getDistanceBetween(new LngLatAlt(center.getLongitude(), latitudes.min()), center));
+			max_y = Math.max(max_y, util.getDistanceBetween(new LngLatAlt(center.getLongitude(), latitudes.max()), center));
+		}
+
+		Integer plotsX = (int) (params.getUnitXForMeters(max_x) * 2.0);
+		Integer plotsY = (int) (params.getUnitYForMeters(max_y) * 2.0);
+
+		return new Dimension(plotsX + params.getAdditionalX(), plotsY + params.getAdditionalY());
+	}
+
+	/**
+	 * Bounds of every tracked vertex
+	 * @return
+	 */
+	public Envelope getEnvelope() {
+		if (longitudes.isEmpty()) {
+			return Envelope.EMPTY;
+		}
+		return new Envelope(longitudes.min(), latitudes.min(), longitudes.max(), latitudes.max());
+	}
+
+	/**
+	 * Add (sign 1) or remove (sign -1) a ring. As in the batch methods only usable
+	 * rings count towards the center, every vertex counts towards the extents.
+	 */
+	private void apply(PackedRing ring, int sign) {
+		boolean usable = ring.canUse();
+
+		for (int i = 0; i < ring.size(); i++) {
+			double lng = ring.getLongitude(i);
+			double lat = ring.getLatitude(i);
+
+			longitudes.change(lng, sign);
+			latitudes.change(lat, sign);
+
+			if (usable) {
+				longitude.add(sign * lng);
+				latitude.add(sign * lat);
+				if (ring.hasAltitude() && !Double.isNaN(ring.getAltitude(i))) {
+					altitude.add(sign * ring.getAltitude(i));
+				}
+				count += sign;
+			}
+		}
+
+		// Drop any rounding left over once every point has been removed
+		if (count == 0) {
+			longitude.reset();
+			latitude.reset();
+			altitude.reset();
+		}
+	}
+
+	/**
+	 * Sorted multiset of doubles
+	 */
+	private static final class CountedValues {
+
+		private final TreeMap<Double, Integer> counts = new TreeMap<>();
+
+		void change(double value, int sign) {
+			counts.merge(value, sign, (a, b) -> a + b == 0 ? null : a + b);
+		}
+
+		boolean isEmpty() {
+			return counts.isEmpty();
+		}
+
+		double min() {
+			return counts.firstKey();
+		}
+
+		double max() {
+			return counts.lastKey();
+		}
+
+		void clear() {
+			counts.clear();
+		}
+	}
+}
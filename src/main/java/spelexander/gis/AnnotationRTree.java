@@ -0,0 +1,634 @@
+package spelexander.gis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * R-tree over the longitude/latitude envelopes of annotations, bulk loaded with
+ * Sort-Tile-Recursive packing and kept balanced on insert and remove.
+ *
+ * Annotations are tracked by identity. If an annotation's ring is edited after it
+ * was indexed, insert it again to refresh its envelope. Not thread safe.
+ */
+public class AnnotationRTree {
+
+	public static final int DEFAULT_NODE_CAPACITY = 16;
+
+	/**
+	 * What {@link AnnotationRTree#nearest(LngLatAlt, int, NearestMode)} measures to
+	 */
+	public enum NearestMode {
+		/**
+		 * The mean of the exterior ring, as {@link GisGridAnnotation#getCenterPoint()}
+		 */
+		CENTROID,
+		/**
+		 * The closest point of the exterior ring's edges as great circle arcs, zero inside it
+		 */
+		RING
+	}
+
+	/**
+	 * An annotation found by a nearest search and its distance in meters
+	 */
+	public static final class Neighbour {
+
+		private final GisGridAnnotation annotation;
+
+		private final double distance;
+
+		Neighbour(GisGridAnnotation annotation, double distance) {
+			this.annotation = annotation;
+			this.distance = distance;
+		}
+
+		public GisGridAnnotation getAnnotation() {
+			return annotation;
+		}
+
+		public double getDistance() {
+			return distance;
+		}
+
+		@Override
+		public String toString() {
+			return "Neighbour{annotation=" + annotation.getName() + ", distance=" + distance + "}";
+		}
+	}
+
+	private final int maxEntries;
+
+	private final int minEntries;
+
+	private final Map<GisGridAnnotation, Entry> entries = new IdentityHashMap<>();
+
+	private Node root;
+
+	public AnnotationRTree() {
+		this(DEFAULT_NODE_CAPACITY);
+	}
+
+	/**
+	 * @param nodeCapacity maximum children per node, at least 4
+	 */
+	public AnnotationRTree(int nodeCapacity) {
+		if (nodeCapacity < 4) {
+			throw new IllegalArgumentException("Node capacity must be at least 4");
+		}
+		this.maxEntries = nodeCapacity;
+		this.minEntries = Math.max(2, (int) Math.floor(nodeCapacity * 0.4));
+		this.root = new Node(true);
+	}
+
+	/**
+	 * Bulk load (STR) the given annotations
+	 * @param annotations
+	 */
+	public AnnotationRTree(Collection<? extends GisGridAnnotation> annotations) {
+		this(annotations, DEFAULT_NODE_CAPACITY);
+	}
+
+	public AnnotationRTree(Collection<? extends GisGridAnnotation> annotations, int nodeCapacity) {
+		this(nodeCapacity);
+
+		List<Bounded> level = new ArrayList<>(annotations.size());
+		for (GisGridAnnotation annotation : annotations) {
+			Objects.requireNonNull(annotation, "Annotations must not be null");
+			if (entries.containsKey(annotation)) {
+				continue;
+			}
+			Entry entry = new Entry(annotation);
+			entries.put(annotation, entry);
+			level.add(entry);
+		}
+
+		if (level.isEmpty()) {
+			return;
+		}
+
+		boolean leaf = true;
+		while (true) {
+			List<Bounded> nodes = pack(level, leaf);
+			if (nodes.size() == 1) {
+				root = (Node) nodes.get(0);
+				root.parent = null;
+				return;
+			}
+			level = nodes;
+			leaf = false;
+		}
+	}
+
+	/**
+	 * Add an annotation, or refresh its envelope if it is already indexed
+	 * @param annotation
+	 */
+	public void insert(GisGridAnnotation annotation) {
+		Objects.requireNonNull(annotation, "Annotation must not be null");
+		remove(annotation);
+
+		Entry entry = new Entry(annotation);
+		entries.put(annotation, entry);
+		insertEntry(entry);
+	}
+
+	/**
+	 * @param annotation
+	 * @return false if the annotation was not indexed
+	 */
+	public boolean remove(GisGridAnnotation annotation) {
+		Entry entry = entries.remove(annotation);
+		if (entry == null) {
+			return false;
+		}
+
+		Node leaf = entry.parent;
+		leaf.children.remove(entry);
+		condense(leaf);
+		return true;
+	}
+
+	public boolean contains(GisGridAnnotation annotation) {
+		return entries.containsKey(annotation);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * @return envelope of everything indexed
+	 */
+	public Envelope getBounds() {
+		return root.toEnvelope();
+	}
+
+	/**
+	 * Annotations which contain or touch the point
+	 * @param point
+	 * @return
+	 */
+	public List<GisGridAnnotation> query(LngLatAlt point) {
+		return query(new Envelope(point.getLongitude(), point.getLatitude(), point.getLongitude(), point.getLatitude()));
+	}
+
+	/**
+	 * Annotations whose area (or points and lines) touch the window
+	 * @param minLongitude
+	 * @param minLatitude
+	 * @param maxLongitude
+	 * @param maxLatitude
+	 * @return
+	 */
+	public List<GisGridAnnotation> query(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+		return query(new Envelope(minLongitude, minLatitude, maxLongitude, maxLatitude));
+	}
+
+	public List<GisGridAnnotation> query(Envelope window) {
+		List<GisGridAnnotation> result = new ArrayList<>();
+
+		search(window, entry -> {
+			if (window.contains(entry.toEnvelope()) || entry.annotation.intersects(window)) {
+				result.add(entry.annotation);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Annotations whose envelope touches the window, without the exact geometry test
+	 * @param window
+	 * @return
+	 */
+	public List<GisGridAnnotation> queryEnvelopes(Envelope window) {
+		List<GisGridAnnotation> result = new ArrayList<>();
+		search(window, entry -> result.add(entry.annotation));
+		return result;
+	}
+
+	/**
+	 * The k annotations nearest a point by centroid
+	 * @param point
+	 * @param k
+	 * @return nearest first
+	 */
+	public List<Neighbour> nearest(LngLatAlt point, int k) {
+		return nearest(point, k, NearestMode.CENTROID);
+	}
+
+	/**
+	 * The k annotations nearest a point, by best first search. Nodes and entries are
+	 * ordered by the great circle distance to their envelope, which is never more than
+	 * the distance to anything inside, so only entries which could still be among the
+	 * nearest have their exact distance measured.
+	 * @param point
+	 * @param k
+	 * @param mode
+	 * @return nearest first, fewer than k when there are fewer annotations
+	 */
+	public List<Neighbour> nearest(LngLatAlt point, int k, NearestMode mode) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative");
+		}
+		List<Neighbour> result = new ArrayList<>(Math.min(k, entries.size()));
+		if (k == 0 || root.isEmpty()) {
+			return result;
+		}
+
+		double longitude = point.getLongitude();
+		double latitude = point.getLatitude();
+
+		PriorityQueue<Candidate> queue = new PriorityQueue<>();
+		queue.add(new Candidate(root, bound(root, longitude, latitude, mode), false));
+
+		while (!queue.isEmpty() && result.size() < k) {
+			Candidate candidate = queue.poll();
+
+			if (candidate.exact) {
+				result.add(new Neighbour(((Entry) candidate.item).annotation, candidate.distance));
+			} else if (candidate.item instanceof Entry) {
+				// Survived pruning, now worth the exact distance
+				queue.add(new Candidate(candidate.item, distance((Entry) candidate.item, longitude, latitude, mode), true));
+			} else {
+				for (Bounded child : ((Node) candidate.item).children) {
+					if (!child.isEmpty()) {
+						queue.add(new Candidate(child, bound(child, longitude, latitude, mode), false));
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Lower bound of the distance from a point to anything in a box. Arcs between ring
+	 * vertices can bow towards the pole past the box, so for rings it is widened to cover them.
+	 */
+	private static double bound(Bounded bounded, double longitude, double latitude, NearestMode mode) {
+		double minY = bounded.minY;
+		double maxY = bounded.maxY;
+		if (mode == NearestMode.RING) {
+			double width = bounded.maxX - bounded.minX;
+			if (maxY > 0) {
+				maxY = GreatCircle.arcLatitude(maxY, width);
+			}
+			if (minY < 0) {
+				minY = GreatCircle.arcLatitude(minY, width);
+			}
+		}
+		return GreatCircle.distanceToBox(longitude, latitude, bounded.minX, minY, bounded.maxX, maxY);
+	}
+
+	private static double distance(Entry entry, double longitude, double latitude, NearestMode mode) {
+		GisGridAnnotation annotation = entry.annotation;
+		if (mode == NearestMode.CENTROID) {
+			LngLatAlt center = annotation.getCenterPoint().getCoordinates();
+			return MapGisGridUtil.haversine(longitude, latitude, center.getLongitude(), center.getLatitude());
+		}
+		return GreatCircle.distanceToRing(longitude, latitude, annotation.getExteriorRing(),
+				annotation.contains(longitude, latitude));
+	}
+
+	/**
+	 * A node or entry waiting in a nearest search, by its bound or exact distance
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+
+		final Bounded item;
+
+		final double distance;
+
+		final boolean exact;
+
+		Candidate(Bounded item, double distance, boolean exact) {
+			this.item = item;
+			this.distance = distance;
+			this.exact = exact;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			int order = Double.compare(distance, other.distance);
+			if (order == 0) {
+				// Settle exact distances before opening bounds that tie with them
+				order = Boolean.compare(other.exact, exact);
+			}
+			return order;
+		}
+	}
+
+	private void search(Envelope window, Consumer<Entry> visitor) {
+		if (window.isEmpty()) {
+			return;
+		}
+
+		Deque<Node> stack = new ArrayDeque<>();
+		stack.push(root);
+
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			for (Bounded child : node.children) {
+				if (!child.intersects(window)) {
+					continue;
+				}
+
+				if (node.leaf) {
+					visitor.accept((Entry) child);
+				} else {
+					stack.push((Node) child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pack one level of the tree, sorted into vertical slices by x then into nodes by y
+	 * @param items
+	 * @param leaf
+	 * @return
+	 */
+	private List<Bounded> pack(List<Bounded> items, boolean leaf) {
+		int nodeCount = (int) Math.ceil(items.size() / (double) maxEntries);
+		int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+		int sliceSize = sliceCount * maxEntries;
+
+		items.sort(Comparator.comparingDouble(Bounded::centerX));
+
+		List<Bounded> nodes = new ArrayList<>(nodeCount);
+		for (int start = 0; start < items.size(); start += sliceSize) {
+			List<Bounded> slice = items.subList(start, Math.min(start + sliceSize, items.size()));
+			slice.sort(Comparator.comparingDouble(Bounded::centerY));
+
+			for (int i = 0; i < slice.size(); i += maxEntries) {
+				Node node = new Node(leaf);
+				for (Bounded child : slice.subList(i, Math.min(i + maxEntries, slice.size()))) {
+					node.add(child);
+				}
+				nodes.add(node);
+			}
+		}
+
+		return nodes;
+	}
+
+	private void insertEntry(Entry entry) {
+		Node node = root;
+		while (!node.leaf) {
+			node = chooseSubtree(node, entry);
+		}
+
+		node.add(entry);
+		adjust(node);
+	}
+
+	/**
+	 * Child needing the least enlargement to hold the entry, then the smallest
+	 */
+	private Node chooseSubtree(Node node, Bounded entry) {
+		Node best = null;
+		double bestEnlargement = Double.POSITIVE_INFINITY;
+		double bestArea = Double.POSITIVE_INFINITY;
+
+		for (Bounded child : node.children) {
+			double area = child.area();
+			double enlargement = child.unionArea(entry) - area;
+
+			if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+				best = (Node) child;
+				bestEnlargement = enlargement;
+				bestArea = area;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Split overflowing nodes and refresh bounds from node up to the root
+	 * @param node
+	 */
+	private void adjust(Node node) {
+		while (node != null) {
+			if (node.children.size() > maxEntries) {
+				Node sibling = split(node);
+
+				if (node == root) {
+					root = new Node(false);
+					root.add(node);
+					root.add(sibling);
+					return;
+				}
+				node.parent.add(sibling);
+			} else {
+				node.recalculate();
+			}
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Halve the node along the axis its children's centers are most spread over
+	 * @param node
+	 * @return the new sibling holding the upper half
+	 */
+	private Node split(Node node) {
+		List<Bounded> children = new ArrayList<>(node.children);
+
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (Bounded child : children) {
+			minX = Math.min(minX, child.centerX());
+			maxX = Math.max(maxX, child.centerX());
+			minY = Math.min(minY, child.centerY());
+			maxY = Math.max(maxY, child.centerY());
+		}
+
+		if (maxX - minX >= maxY - minY) {
+			children.sort(Comparator.comparingDouble(Bounded::centerX));
+		} else {
+			children.sort(Comparator.comparingDouble(Bounded::centerY));
+		}
+
+		int half = children.size() / 2;
+		node.children.clear();
+		node.reset();
+		for (Bounded child : children.subList(0, half)) {
+			node.add(child);
+		}
+
+		Node sibling = new Node(node.leaf);
+		for (Bounded child : children.subList(half, children.size())) {
+			sibling.add(child);
+		}
+
+		return sibling;
+	}
+
+	/**
+	 * Drop underfull nodes on the path from node to the root, then reinsert their entries
+	 * @param node
+	 */
+	private void condense(Node node) {
+		List<Entry> orphans = new ArrayList<>();
+
+		while (node != root) {
+			Node parent = node.parent;
+			if (node.children.size() < minEntries) {
+				parent.children.remove(node);
+				collectEntries(node, orphans);
+			} else {
+				node.recalculate();
+			}
+			node = parent;
+		}
+		root.recalculate();
+
+		while (!root.leaf && root.children.size() == 1) {
+			root = (Node) root.children.get(0);
+			root.parent = null;
+		}
+		if (!root.leaf && root.children.isEmpty()) {
+			root = new Node(true);
+		}
+
+		for (Entry orphan : orphans) {
+			insertEntry(orphan);
+		}
+	}
+
+	private static void collectEntries(Node node, List<Entry> result) {
+		for (Bounded child : node.children) {
+			if (node.leaf) {
+				result.add((Entry) child);
+			} else {
+				collectEntries((Node) child, result);
+			}
+		}
+	}
+
+	/**
+	 * Shared bounding box bookkeeping of entries and nodes
+	 */
+	private static abstract class Bounded {
+
+		double minX = Double.POSITIVE_INFINITY;
+
+		double minY = Double.POSITIVE_INFINITY;
+
+		double maxX = Double.NEGATIVE_INFINITY;
+
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		Node parent;
+
+		boolean isEmpty() {
+			return minX > maxX || minY > maxY;
+		}
+
+		double centerX() {
+			return isEmpty() ? 0.0 : (minX + maxX) / 2.0;
+		}
+
+		double centerY() {
+			return isEmpty() ? 0.0 : (minY + maxY) / 2.0;
+		}
+
+		double area() {
+			return isEmpty() ? 0.0 : (maxX - minX) * (maxY - minY);
+		}
+
+		double unionArea(Bounded other) {
+			if (isEmpty()) {
+				return other.area();
+			}
+			if (other.isEmpty()) {
+				return area();
+			}
+			return (Math.max(maxX, other.maxX) - Math.min(minX, other.minX))
+					* (Math.max(maxY, other.maxY) - Math.min(minY, other.minY));
+		}
+
+		boolean intersects(Envelope window) {
+			return minX <= window.getMaxLongitude() && maxX >= window.getMinLongitude()
+					&& minY <= window.getMaxLatitude() && maxY >= window.getMinLatitude();
+		}
+
+		void extend(Bounded other) {
+			minX = Math.min(minX, other.minX);
+			minY = Math.min(minY, other.minY);
+			maxX = Math.max(maxX, other.maxX);
+			maxY = Math.max(maxY, other.maxY);
+		}
+
+		void reset() {
+			minX = Double.POSITIVE_INFINITY;
+			minY = Double.POSITIVE_INFINITY;
+			maxX = Double.NEGATIVE_INFINITY;
+			maxY = Double.NEGATIVE_INFINITY;
+		}
+
+		Envelope toEnvelope() {
+			return isEmpty() ? Envelope.EMPTY : new Envelope(minX, minY, maxX, maxY);
+		}
+	}
+
+	private static final class Entry extends Bounded {
+
+		final GisGridAnnotation annotation;
+
+		Entry(GisGridAnnotation annotation) {
+			this.annotation = annotation;
+
+			Envelope envelope = Envelope.of(annotation);
+			if (!envelope.isEmpty()) {
+				minX = envelope.getMinLongitude();
+				minY = envelope.getMinLatitude();
+				maxX = envelope.getMaxLongitude();
+				maxY = envelope.getMaxLatitude();
+			}
+		}
+	}
+
+	private static final class Node extends Bounded {
+
+		final boolean leaf;
+
+		final List<Bounded> children = new ArrayList<>();
+
+		Node(boolean leaf) {
+			this.leaf = leaf;
+		}
+
+		void add(Bounded child) {
+			children.add(child);
+			child.parent = this;
+			extend(child);
+		}
+
+		void recalculate() {
+			reset();
+			for (Bounded child : children) {
+				extend(child);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package spelexander.gis;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An immutable version of the annotations in an {@link AnnotationStore}, in the
+ * order they were added. It is a List, so it can be passed straight to the
+ * geometry utilities, and reading it never blocks writers or other readers.
+ *
+ * The annotations are read-only copies: their setters and ring lists throw
+ * UnsupportedOperationException.
+ */
+public final class AnnotationSnapshot extends AbstractList<GisGridAnnotation> implements RandomAccess {
+
+	static final AnnotationSnapshot EMPTY = new AnnotationSnapshot(new AnnotationStore.Segment[0], 0L);
+
+	private final AnnotationStore.Segment[] segments;
+
+	/**
+	 * Index of the first annotation of each segment, with the size at the end
+	 */
+	private final int[] offsets;
+
+	private final long version;
+
+	AnnotationSnapshot(AnnotationStore.Segment[] segments, long version) {
+		this.segments = segments;
+		this.version = version;
+		this.offsets = new int[segments.length + 1];
+		for (int i = 0; i < segments.length; i++) {
+			offsets[i + 1] = offsets[i] + segments[i].size();
+		}
+	}
+
+	/**
+	 * @return incremented by every committed change to the store
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public int size() {
+		return offsets[segments.length];
+	}
+
+	@Override
+	public GisGridAnnotation get(int index) {
+		int segment = segmentOf(index);
+		return segments[segment].annotations[index - offsets[segment]];
+	}
+
+	/**
+	 * The store id of the annotation at an index
+	 * @param index
+	 * @return
+	 */
+	public long getId(int index) {
+		int segment = segmentOf(index);
+		return segments[segment].ids[index - offsets[segment]];
+	}
+
+	/**
+	 * @param id
+	 * @return the annotation with a store id, null if it is not in this snapshot
+	 */
+	public GisGridAnnotation find(long id) {
+		int index = indexOfId(id);
+		return index < 0 ? null : get(index);
+	}
+
+	/**
+	 * @param id
+	 * @return the index of the annotation with a store id, -1 if it is not in this snapshot
+	 */
+	public int indexOfId(long id) {
+		int segment = AnnotationStore.slotOf(segments, id);
+		if (segment < 0) {
+			return -1;
+		}
+		int index = segments[segment].indexOf(id);
+		return index < 0 ? -1 : offsets[segment] + index;
+	}
+
+	AnnotationStore.Segment[] getSegments() {
+		return segments;
+	}
+
+	private int segmentOf(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+
+		// Last segment starting at or before the index, skipping empty segments
+		int low = 0;
+		int high = segments.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= index) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+}
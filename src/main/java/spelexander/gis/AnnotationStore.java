@@ -0,0 +1,386 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A layer of annotations shared between writer threads (loaders) and readers
+ * (painting), where readers never block.
+ *
+ * Annotations are held as read-only copies in fixed size copy-on-write segments.
+ * A change copies only the segments it touches and publishes a new
+ * {@link AnnotationSnapshot}; readers take the current snapshot with a volatile
+ * read and keep a consistent view for as long as they hold it. Writers are
+ * serialized, and a batch of changes publishes once.
+ *
+ * Each annotation gets an id when added, ids increase in insertion order.
+ */
+public class AnnotationStore {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+	private final int segmentSize;
+
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private volatile AnnotationSnapshot snapshot = AnnotationSnapshot.EMPTY;
+
+	private long nextId = 1;
+
+	public AnnotationStore() {
+		this(DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param segmentSize annotations per segment, the most copied by a single change
+	 */
+	public AnnotationStore(int segmentSize) {
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("Segment size must be at least 1");
+		}
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * The current annotations, never blocks
+	 * @return
+	 */
+	public AnnotationSnapshot snapshot() {
+		return snapshot;
+	}
+
+	public int size() {
+		return snapshot.size();
+	}
+
+	/**
+	 * @param annotation copied, later changes to it are not seen
+	 * @return the new annotation's id
+	 */
+	public long add(GisGridAnnotation annotation) {
+		long[] id = new long[1];
+		update(batch -> id[0] = batch.add(annotation));
+		return id[0];
+	}
+
+	/**
+	 * @param annotations copied
+	 * @return the new annotations' ids, in order
+	 */
+	public long[] addAll(List<? extends GisGridAnnotation> annotations) {
+		long[] ids = new long[annotations.size()];
+		update(batch -> {
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = batch.add(annotations.get(i));
+			}
+		});
+		return ids;
+	}
+
+	/**
+	 * @param id
+	 * @return false if there was no annotation with the id
+	 */
+	public boolean remove(long id) {
+		boolean[] removed = new boolean[1];
+		update(batch -> removed[0] = batch.remove(id));
+		return removed[0];
+	}
+
+	/**
+	 * Replace an annotation, keeping its id and position
+	 * @param id
+	 * @param annotation copied
+	 * @return false if there was no annotation with the id
+	 */
+	public boolean replace(long id, GisGridAnnotation annotation) {
+		boolean[] replaced = new boolean[1];
+		update(batch -> replaced[0] = batch.replace(id, annotation));
+		return replaced[0];
+	}
+
+	/**
+	 * Apply several changes and publish them as one snapshot. If the changes throw
+	 * nothing is published.
+	 * @param changes
+	 * @return the published snapshot
+	 */
+	public AnnotationSnapshot update(Consumer<Batch> changes) {
+		writeLock.lock();
+		try {
+			Batch batch = new Batch(snapshot);
+			changes.accept(batch);
+			if (!batch.changed) {
+				return snapshot;
+			}
+
+			AnnotationSnapshot next = batch.commit();
+			nextId = batch.nextId;
+			snapshot = next;
+			return next;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Changes collected under the write lock, see {@link AnnotationStore#update(Consumer)}
+	 */
+	public final class Batch {
+
+		private final AnnotationSnapshot base;
+
+		private final List<Segment> segments;
+
+		/**
+		 * Segments copied for editing in this batch, by slot
+		 */
+		private final Map<Integer, SegmentBuilder> edited = new HashMap<>();
+
+		private long nextId = AnnotationStore.this.nextId;
+
+		private boolean changed = false;
+
+		private Batch(AnnotationSnapshot base) {
+			this.base = base;
+			this.segments = new ArrayList<>(Arrays.asList(base.getSegments()));
+		}
+
+		/**
+		 * @param annotation copied
+		 * @return the new annotation's id
+		 */
+		public long add(GisGridAnnotation annotation) {
+			Objects.requireNonNull(annotation);
+			long id = nextId++;
+
+			int last = segments.size() - 1;
+			if (last < 0 || sizeOf(last) >= segmentSize) {
+				segments.add(new Segment(id, new long[0], new GisGridAnnotation[0]));
+				last++;
+			}
+			edit(last).add(id, SnapshotAnnotation.of(annotation));
+
+			changed = true;
+			return id;
+		}
+
+		/**
+		 * @param id
+		 * @return false if there was no annotation with the id
+		 */
+		public boolean remove(long id) {
+			int slot = find(id);
+			if (slot < 0) {
+				return false;
+			}
+
+			SegmentBuilder builder = edit(slot);
+			int index = builder.indexOf(id);
+			builder.ids.remove(index);
+			builder.annotations.remove(index);
+
+			changed = true;
+			return true;
+		}
+
+		/**
+		 * @param id
+		 * @param annotation copied
+		 * @return false if there was no annotation with the id
+		 */
+		public boolean replace(long id, GisGridAnnotation annotation) {
+			Objects.requireNonNull(annotation);
+			int slot = find(id);
+			if (slot < 0) {
+				return false;
+			}
+
+			SegmentBuilder builder = edit(slot);
+			builder.annotations.set(builder.indexOf(id), SnapshotAnnotation.of(annotation));
+
+			changed = true;
+			return true;
+		}
+
+		/**
+		 * The annotations as of the start of this batch
+		 * @return
+		 */
+		public AnnotationSnapshot getBase() {
+			return base;
+		}
+
+		/**
+		 * Slot of the segment holding an id, -1 if no segment does
+		 */
+		private int find(long id) {
+			int low = 0;
+			int high = segments.size() - 1;
+			int slot = -1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (segments.get(mid).baseId <= id) {
+					slot = mid;
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+
+			if (slot < 0) {
+				return -1;
+			}
+			SegmentBuilder builder = edited.get(slot);
+			int index = builder != null ? builder.indexOf(id) : segments.get(slot).indexOf(id);
+			return index < 0 ? -1 : slot;
+		}
+
+		private int sizeOf(int slot) {
+			SegmentBuilder builder = edited.get(slot);
+			return builder != null ? builder.ids.size() : segments.get(slot).size();
+		}
+
+		private SegmentBuilder edit(int slot) {
+			return edited.computeIfAbsent(slot, s -> new SegmentBuilder(segments.get(s)));
+		}
+
+		private AnnotationSnapshot commit() {
+			for (Map.Entry<Integer, SegmentBuilder> entry : edited.entrySet()) {
+				segments.set(entry.getKey(), entry.getValue().build());
+			}
+
+			int size = 0;
+			for (Segment segment : segments) {
+				size += segment.size();
+			}
+
+			// Merge segments once removals have left most of them sparse
+			if (segments.size() > 2 * (size / segmentSize + 1)) {
+				compact();
+			}
+
+			return new AnnotationSnapshot(segments.toArray(new Segment[segments.size()]), base.getVersion() + 1);
+		}
+
+		/**
+		 * Refill segments in order, which keeps ids ascending across them
+		 */
+		private void compact() {
+			List<Segment> compacted = new ArrayList<>();
+			SegmentBuilder builder = null;
+
+			for (Segment segment : segments) {
+				for (int i = 0; i < segment.size(); i++) {
+					if (builder == null || builder.ids.size() >= segmentSize) {
+						if (builder != null) {
+							compacted.add(builder.build());
+						}
+						builder = new SegmentBuilder(new Segment(segment.ids[i], new long[0], new GisGridAnnotation[0]));
+					}
+					builder.add(segment.ids[i], segment.annotations[i]);
+				}
+			}
+			if (builder != null) {
+				compacted.add(builder.build());
+			}
+
+			segments.clear();
+			segments.addAll(compacted);
+		}
+	}
+
+	/**
+	 * Slot of the segment that would hold an id, by the first id of each segment
+	 * @return -1 if the id is before every segment
+	 */
+	static int slotOf(Segment[] segments, long id) {
+		int low = 0;
+		int high = segments.length - 1;
+		int slot = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (segments[mid].baseId <= id) {
+				slot = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Immutable run of annotations. Every id in a segment is at least its base id and
+	 * less than the next segment's base id.
+	 */
+	static final class Segment {
+
+		final long baseId;
+
+		final long[] ids;
+
+		final GisGridAnnotation[] annotations;
+
+		Segment(long baseId, long[] ids, GisGridAnnotation[] annotations) {
+			this.baseId = baseId;
+			this.ids = ids;
+			this.annotations = annotations;
+		}
+
+		int size() {
+			return ids.length;
+		}
+
+		int indexOf(long id) {
+			int index = Arrays.binarySearch(ids, id);
+			return index < 0 ? -1 : index;
+		}
+	}
+
+	/**
+	 * Mutable copy of a segment while a batch edits it
+	 */
+	private static final class SegmentBuilder {
+
+		final long baseId;
+
+		final List<Long> ids;
+
+		final List<GisGridAnnotation> annotations;
+
+		SegmentBuilder(Segment segment) {
+			this.baseId = segment.baseId;
+			this.ids = new ArrayList<>(segment.size() + 1);
+			this.annotations = new ArrayList<>(Arrays.asList(segment.annotations));
+			for (long id : segment.ids) {
+				ids.add(id);
+			}
+		}
+
+		void add(long id, GisGridAnnotation annotation) {
+			ids.add(id);
+			annotations.add(annotation);
+		}
+
+		int indexOf(long id) {
+			int index = Collections.binarySearch(ids, id);
+			return index < 0 ? -1 : index;
+		}
+
+		Segment build() {
+			long[] result = new long[ids.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = ids.get(i);
+			}
+			return new Segment(baseId, result, annotations.toArray(new GisGridAnnotation[annotations.size()]));
+		}
+	}
+}
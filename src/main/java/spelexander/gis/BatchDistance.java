@@ -0,0 +1,203 @@
+package spelexander.gis;
+
+/**
+ * Haversine distances over primitive coordinate arrays: one to many, many to many
+ * and within radius.
+ *
+ * Points are prepared once into structure of arrays form (latitude and longitude in
+ * radians and the cosine of latitude), so the per pair work is two sines, two square
+ * roots and an atan2, in tight loops over contiguous doubles. Radius filtering
+ * compares the haversine term against a precomputed threshold and skips the
+ * square roots and atan2 entirely.
+ *
+ * Results match {@link MapGisGridUtil#distance(double, double, double, double)}
+ * to within {@link #TOLERANCE_METERS} plus {@link #RELATIVE_TOLERANCE} of the
+ * distance, the difference coming only from converting to radians before rather
+ * than after subtracting.
+ */
+public final class BatchDistance {
+
+	/**
+	 * Same radius as {@link MapGisGridUtil#distance(LngLatAlt, LngLatAlt)}
+	 */
+	private static final double EARTH_RADIUS_METERS = 6371 * 1000.0;
+
+	public static final double TOLERANCE_METERS = 1e-6;
+
+	public static final double RELATIVE_TOLERANCE = 1e-12;
+
+	/**
+	 * Targets (columns of the many to many matrix) per block, every row is computed against
+	 * one block of targets before the next so the block stays in cache
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private BatchDistance() {
+	}
+
+	/**
+	 * Points prepared for batch distance calculations
+	 */
+	public static final class Points {
+
+		final double[] latitudes;
+
+		final double[] longitudes;
+
+		final double[] cosLatitudes;
+
+		final int size;
+
+		Points(double[] longitudes, double[] latitudes, int size) {
+			this.size = size;
+			this.latitudes = new double[size];
+			this.longitudes = new double[size];
+			this.cosLatitudes = new double[size];
+
+			for (int i = 0; i < size; i++) {
+				this.latitudes[i] = Math.toRadians(latitudes[i]);
+				this.longitudes[i] = Math.toRadians(longitudes[i]);
+				this.cosLatitudes[i] = Math.cos(this.latitudes[i]);
+			}
+		}
+
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * @param longitudes in degrees
+	 * @param latitudes in degrees
+	 * @return
+	 */
+	public static Points prepare(double[] longitudes, double[] latitudes) {
+		if (longitudes.length != latitudes.length) {
+			throw new IllegalArgumentException("Must provide the same number of longitudes and latitudes");
+		}
+		return new Points(longitudes, latitudes, longitudes.length);
+	}
+
+	/**
+	 * @param coordinates interleaved lng, lat(, alt) in degrees, e.g. from a PackedRing
+	 * @param stride 2 or 3
+	 * @return
+	 */
+	public static Points prepare(double[] coordinates, int stride) {
+		int size = coordinates.length / stride;
+		double[] longitudes = new double[size];
+		double[] latitudes = new double[size];
+		for (int i = 0, index = 0; i < size; i++, index += stride) {
+			longitudes[i] = coordinates[index];
+			latitudes[i] = coordinates[index + 1];
+		}
+		return new Points(longitudes, latitudes, size);
+	}
+
+	/**
+	 * Distance in meters from one point to every target
+	 * @param longitude in degrees
+	 * @param latitude in degrees
+	 * @param targets
+	 * @param result receives targets.size() distances
+	 */
+	public static void oneToMany(double longitude, double latitude, Points targets, double[] result) {
+		double lat = Math.toRadians(latitude);
+		double lng = Math.toRadians(longitude);
+		double cosLat = Math.cos(lat);
+
+		distances(lat, lng, cosLat, targets, 0, targets.size, result, 0);
+	}
+
+	/**
+	 * Every distance between two sets of points, computed in blocks of target columns
+	 * @param from
+	 * @param to
+	 * @param result row major, receives from.size() * to.size() distances
+	 * @param tileSize targets per block
+	 */
+	public static void manyToMany(Points from, Points to, double[] result, int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Tile size must be positive");
+		}
+		if (result.length < (long) from.size * to.size) {
+			throw new IllegalArgumentException("Result must hold from.size() * to.size() distances");
+		}
+
+		for (int start = 0; start < to.size; start += tileSize) {
+			int end = Math.min(start + tileSize, to.size);
+			for (int row = 0; row < from.size; row++) {
+				distances(from.latitudes[row], from.longitudes[row], from.cosLatitudes[row], to, start, end,
+						result, row * to.size);
+			}
+		}
+	}
+
+	public static void manyToMany(Points from, Points to, double[] result) {
+		manyToMany(from, to, result, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Indices of the targets within a radius of a point
+	 * @param longitude in degrees
+	 * @param latitude in degrees
+	 * @param targets
+	 * @param radiusMeters
+	 * @return ascending indices into targets
+	 */
+	public static int[] withinRadius(double longitude, double latitude, Points targets, double radiusMeters) {
+		double lat = Math.toRadians(latitude);
+		double lng = Math.toRadians(longitude);
+		double cosLat = Math.cos(lat);
+
+		double angle = radiusMeters / EARTH_RADIUS_METERS;
+		int[] result = new int[targets.size];
+		int count = 0;
+
+		if (angle >= Math.PI) {
+			for (int i = 0; i < targets.size; i++) {
+				result[i] = i;
+			}
+			return result;
+		}
+
+		// distance <= radius exactly when the haversine term is at most this
+		double sinHalf = Math.sin(angle / 2);
+		double threshold = sinHalf * sinHalf;
+
+		double[] latitudes = targets.latitudes;
+		double[] longitudes = targets.longitudes;
+		double[] cosLatitudes = targets.cosLatitudes;
+		for (int i = 0; i < targets.size; i++) {
+			double latDistance = latitudes[i] - lat;
+			if (Math.abs(latDistance) > angle) {
+				continue;
+			}
+
+			double sinLat = Math.sin(latDistance / 2);
+			double sinLon = Math.sin((longitudes[i] - lng) / 2);
+			double a = sinLat * sinLat + cosLat * cosLatitudes[i] * sinLon * sinLon;
+			if (a <= threshold) {
+				result[count++] = i;
+			}
+		}
+
+		int[] trimmed = new int[count];
+		System.arraycopy(result, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	private static void distances(double lat, double lng, double cosLat, Points targets, int from, int to,
+			double[] result, int offset) {
+		double[] latitudes = targets.latitudes;
+		double[] longitudes = targets.longitudes;
+		double[] cosLatitudes = targets.cosLatitudes;
+
+		for (int i = from; i < to; i++) {
+			double sinLat = Math.sin((latitudes[i] - lat) / 2);
+			double sinLon = Math.sin((longitudes[i] - lng) / 2);
+			double a = sinLat * sinLat + cosLat * cosLatitudes[i] * sinLon * sinLon;
+			result[offset + i] = EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+		}
+	}
+}
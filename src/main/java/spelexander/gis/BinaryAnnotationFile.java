@@ -0,0 +1,197 @@
+package spelexander.gis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A layer of annotations in a compact binary file, memory mapped so opening it
+ * costs nothing and each annotation is decoded only when it is read.
+ *
+ * The file is little endian: a 32 byte header (magic, version, count, offset of
+ * the offset table), one record per annotation, then a table of record offsets.
+ * A record is point count, stride and name length as ints, a reserved int, the
+ * packed coordinates as doubles and the UTF-8 name, padded to 8 bytes.
+ *
+ * Only the exterior ring, altitude and name are kept, as with {@link PackedRing}.
+ * Files are limited to 2GB, the most a single mapping can hold. The list is
+ * read-only and safe to read from several threads.
+ */
+public class BinaryAnnotationFile extends AbstractList<GisGridAnnotation> implements RandomAccess {
+
+	static final int MAGIC = 0x53494754; // "TGIS"
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 32;
+
+	static final int RECORD_HEADER_SIZE = 16;
+
+	private final MappedByteBuffer buffer;
+
+	private final int count;
+
+	private final int tableOffset;
+
+	private BinaryAnnotationFile(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a binary annotation file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported binary annotation file version " + buffer.getInt(4));
+		}
+
+		long count = buffer.getLong(8);
+		long tableOffset = buffer.getLong(16);
+		if (count < 0 || tableOffset < HEADER_SIZE || tableOffset + count * 8 > buffer.capacity()) {
+			throw new IOException("Binary annotation file is truncated");
+		}
+		this.count = (int) count;
+		this.tableOffset = (int) tableOffset;
+	}
+
+	/**
+	 * Map a file written by {@link BinaryAnnotationWriter}
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static BinaryAnnotationFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Binary annotation files over 2GB are not supported");
+			}
+			// The mapping stays valid after the channel is closed
+			return new BinaryAnnotationFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Write annotations to a binary file
+	 * @param annotations
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void write(Iterable<? extends GisGridAnnotation> annotations, Path path) throws IOException {
+		try (BinaryAnnotationWriter writer = new BinaryAnnotationWriter(path)) {
+			writer.writeAll(annotations);
+		}
+	}
+
+	/**
+	 * Convert a GeoJson file to a binary file, streaming one annotation at a time
+	 * @param json
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void fromGeoJson(File json, Path path) throws IOException {
+		try (GeoJsonAnnotationIterator iterator = new MapGisGridAnnotationReader().openGeoJson(json);
+				BinaryAnnotationWriter writer = new BinaryAnnotationWriter(path)) {
+			try {
+				while (iterator.hasNext()) {
+					writer.write(iterator.next());
+				}
+			} catch (UncheckedIOException e) {
+				writer.abort();
+				throw e.getCause();
+			} catch (RuntimeException e) {
+				writer.abort();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Convert a binary file to GeoJson, streaming one annotation at a time
+	 * @param path
+	 * @param json
+	 * @param gzip
+	 * @throws IOException
+	 */
+	public static void toGeoJson(Path path, Path json, boolean gzip) throws IOException {
+		new MapGisGridAnnotationReader().writeGeoJson(open(path), json, gzip);
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Decode an annotation
+	 */
+	@Override
+	public GisGridAnnotation get(int index) {
+		return getRing(index).toAnnotation();
+	}
+
+	/**
+	 * Decode the packed ring of an annotation, without creating any LngLatAlt
+	 * @param index
+	 * @return
+	 */
+	public PackedRing getRing(int index) {
+		int offset = offset(index);
+		int size = buffer.getInt(offset);
+		int stride = buffer.getInt(offset + 4);
+		int nameLength = buffer.getInt(offset + 8);
+
+		double[] coordinates = new double[size * stride];
+		ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		view.position(offset + RECORD_HEADER_SIZE);
+		view.asDoubleBuffer().get(coordinates);
+
+		PackedRing ring = new PackedRing(coordinates, stride);
+		ring.setName(readName(view, offset + RECORD_HEADER_SIZE + coordinates.length * 8, nameLength));
+		return ring;
+	}
+
+	/**
+	 * The name of an annotation, without decoding its coordinates
+	 * @param index
+	 * @return
+	 */
+	public String getName(int index) {
+		int offset = offset(index);
+		int length = buffer.getInt(offset) * buffer.getInt(offset + 4);
+		return readName(buffer.duplicate(), offset + RECORD_HEADER_SIZE + length * 8, buffer.getInt(offset + 8));
+	}
+
+	/**
+	 * Number of points in an annotation, without decoding it
+	 * @param index
+	 * @return
+	 */
+	public int getPointCount(int index) {
+		return buffer.getInt(offset(index));
+	}
+
+	private int offset(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		}
+		return (int) buffer.getLong(tableOffset + index * 8);
+	}
+
+	private static String readName(ByteBuffer view, int position, int length) {
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		view.position(position);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
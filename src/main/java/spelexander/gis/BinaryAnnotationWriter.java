@@ -0,0 +1,204 @@
+package spelexander.gis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes annotations to the binary format read by {@link BinaryAnnotationFile},
+ * one record at a time through a staging buffer. The offset table and the header
+ * are written on close, so the number of annotations need not be known up front.
+ *
+ * Files are limited to 2GB, as the reader maps them whole. Once a write has thrown,
+ * including for going over that limit, close leaves the header empty so the partial
+ * file is rejected rather than read as complete.
+ */
+public class BinaryAnnotationWriter implements Closeable {
+
+	private static final int STAGING_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private long position = BinaryAnnotationFile.HEADER_SIZE;
+
+	private long[] offsets = new long[1024];
+
+	private int written = 0;
+
+	private boolean closed = false;
+
+	private boolean failed = false;
+
+	/**
+	 * Create or truncate a file
+	 * @param path
+	 * @throws IOException
+	 */
+	public BinaryAnnotationWriter(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		// Header is filled in on close
+		staging.put(new byte[BinaryAnnotationFile.HEADER_SIZE]);
+	}
+
+	public void write(GisGridAnnotation annotation) throws IOException {
+		PackedRing ring;
+		try {
+			ring = PackedRing.fromAnnotation(annotation);
+		} catch (RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+		write(ring);
+	}
+
+	public void write(PackedRing ring) throws IOException {
+		if (closed) {
+			throw new IOException("Writer has been closed");
+		}
+		if (failed) {
+			throw new IOException("An earlier write failed, the file is incomplete");
+		}
+
+		try {
+			writeRecord(ring);
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	private void writeRecord(PackedRing ring) throws IOException {
+		double[] coordinates = ring.getCoordinates();
+		byte[] name = ring.getName() == null ? null : ring.getName().getBytes(StandardCharsets.UTF_8);
+		long recordLength = BinaryAnnotationFile.RECORD_HEADER_SIZE + coordinates.length * 8L + (name == null ? 0 : name.length);
+		long recordPadded = (recordLength + 7) & ~7L;
+
+		// The record and every offset, including its own, must end within the 2GB the reader maps
+		if (position + recordPadded + (written + 1L) * 8 > Integer.MAX_VALUE) {
+			throw new IOException("Binary annotation files over 2GB are not supported");
+		}
+		int length = (int) recordLength;
+		int padded = (int) recordPadded;
+
+		if (written == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[written++] = position;
+		position += padded;
+
+		ByteBuffer buffer = reserve(padded);
+		buffer.putInt(ring.size());
+		buffer.putInt(ring.getStride());
+		buffer.putInt(name == null ? -1 : name.length);
+		buffer.putInt(0);
+		buffer.asDoubleBuffer().put(coordinates);
+		buffer.position(buffer.position() + coordinates.length * 8);
+		if (name != null) {
+			buffer.put(name);
+		}
+		for (int i = length; i < padded; i++) {
+			buffer.put((byte) 0);
+		}
+
+		if (buffer != staging) {
+			buffer.flip();
+			writeFully(buffer);
+		}
+	}
+
+	public void writeAll(Iterable<? extends GisGridAnnotation> annotations) throws IOException {
+		try {
+			for (GisGridAnnotation annotation : annotations) {
+				write(annotation);
+			}
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Mark the file as incomplete, for a failure outside the writer such as its source
+	 * throwing. Close then leaves the header empty.
+	 */
+	void abort() {
+		failed = true;
+	}
+
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Writes the offset table and the header, then closes the file. After a failed write
+	 * only closes it, leaving the header empty.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (failed) {
+			channel.close();
+			return;
+		}
+
+		try {
+			long tableOffset = position;
+			for (int i = 0; i < written; i++) {
+				reserve(8).putLong(offsets[i]);
+			}
+			flushStaging();
+
+			ByteBuffer header = ByteBuffer.allocate(BinaryAnnotationFile.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(BinaryAnnotationFile.MAGIC);
+			header.putInt(BinaryAnnotationFile.VERSION);
+			header.putLong(written);
+			header.putLong(tableOffset);
+			header.putLong(0L);
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * The staging buffer with room for some bytes, or a buffer of its own for a record
+	 * larger than the staging buffer
+	 */
+	private ByteBuffer reserve(int bytes) throws IOException {
+		if (staging.remaining() < bytes) {
+			flushStaging();
+		}
+		if (staging.remaining() < bytes) {
+			return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return staging;
+	}
+
+	private void flushStaging() throws IOException {
+		staging.flip();
+		writeFully(staging);
+		staging.clear();
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package spelexander.gis;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Flat distances using the cosine of one reference latitude for every pair, so a
+ * distance costs a square root and no trigonometry. Only suited to annotations close
+ * to the reference latitude, the error grows with the distance from it. Longitude
+ * differences are taken the short way round, across the antimeridian when that is
+ * shorter. Moves follow a constant bearing and are not covered by
+ * {@link #getMaxError(double, double)}.
+ */
+public class CachedCosineDistanceModel implements DistanceModel {
+
+	private static final double EARTH_RADIUS_METERS = EquirectangularDistanceModel.EARTH_RADIUS_METERS;
+
+	private final double referenceLatitude;
+
+	private final double cosLat;
+
+	/**
+	 * @param referenceLatitude in degrees, e.g. of the center point of the annotations
+	 */
+	public CachedCosineDistanceModel(double referenceLatitude) {
+		this.referenceLatitude = referenceLatitude;
+		this.cosLat = Math.cos(Math.toRadians(referenceLatitude));
+	}
+
+	public double getReferenceLatitude() {
+		return referenceLatitude;
+	}
+
+	@Override
+	public double distance(double lon1, double lat1, double lon2, double lat2) {
+		return EquirectangularDistanceModel.planar(lon1, lat1, lon2, lat2, cosLat);
+	}
+
+	@Override
+	public LngLatAlt move(LngLatAlt point, double distanceInMetres, double bearing) {
+		double brngRad = Math.toRadians(bearing);
+		double latitude = point.getLatitude() + Math.toDegrees(distanceInMetres * Math.cos(brngRad) / EARTH_RADIUS_METERS);
+		double longitude = point.getLongitude() + Math.toDegrees(distanceInMetres * Math.sin(brngRad) / (EARTH_RADIUS_METERS * cosLat));
+
+		return new LngLatAlt(EquirectangularDistanceModel.wrapLongitude(longitude), latitude);
+	}
+
+	/**
+	 * The equirectangular error plus the east-west scale error from using the cosine
+	 * of the reference rather than the pair's own latitude
+	 */
+	@Override
+	public double getMaxError(double extentMeters, double latitude) {
+		double angle = extentMeters / EARTH_RADIUS_METERS;
+		double offset = Math.abs(Math.toRadians(latitude - referenceLatitude)) + angle;
+		double extreme = EquirectangularDistanceModel.poleward(Math.max(Math.abs(latitude), Math.abs(referenceLatitude)), angle);
+
+		return DistanceModel.EQUIRECTANGULAR.getMaxError(extentMeters, latitude) + extentMeters * Math.tan(extreme) * offset;
+	}
+
+	@Override
+	public String toString() {
+		return "CachedCosineDistanceModel{referenceLatitude=" + referenceLatitude + "}";
+	}
+}
@@ -0,0 +1,53 @@
+package spelexander.gis;
+
+/**
+ * Running sum with Kahan-Babuska (Neumaier) compensation, so summing millions of
+ * coordinates keeps close to full double precision. Partial sums can be merged,
+ * which keeps chunked and parallel reductions accurate.
+ */
+public class CompensatedSum {
+
+	private double sum = 0.0;
+
+	private double compensation = 0.0;
+
+	public CompensatedSum add(double value) {
+		double total = sum + value;
+		if (Math.abs(sum) >= Math.abs(value)) {
+			compensation += (sum - total) + value;
+		} else {
+			compensation += (value - total) + sum;
+		}
+		sum = total;
+		return this;
+	}
+
+	/**
+	 * Remove a value previously added
+	 * @param value
+	 * @return
+	 */
+	public CompensatedSum subtract(double value) {
+		return add(-value);
+	}
+
+	/**
+	 * Merge another partial sum into this one
+	 * @param other
+	 * @return
+	 */
+	public CompensatedSum add(CompensatedSum other) {
+		add(other.sum);
+		compensation += other.compensation;
+		return this;
+	}
+
+	public double value() {
+		return sum + compensation;
+	}
+
+	public void reset() {
+		sum = 0.0;
+		compensation = 0.0;
+	}
+}
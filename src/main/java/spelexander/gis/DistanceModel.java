@@ -0,0 +1,68 @@
+package spelexander.gis;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Distance and move math used by {@link MapGisGridUtil}.
+ *
+ * {@link #HAVERSINE} is the reference and the default. The flat models trade a
+ * bounded error for speed, {@link #getMaxError(double, double)} reports that error
+ * against haversine so a model can be picked for a tolerance with
+ * {@link #forTolerance(double, double, double)}.
+ */
+public interface DistanceModel {
+
+	DistanceModel HAVERSINE = new HaversineDistanceModel();
+
+	DistanceModel EQUIRECTANGULAR = new EquirectangularDistanceModel();
+
+	/**
+	 * @param lon1
+	 * @param lat1
+	 * @param lon2
+	 * @param lat2
+	 * @return Distance in Meters
+	 */
+	double distance(double lon1, double lat1, double lon2, double lat2);
+
+	/**
+	 * Move point a specified distance according to some bearing
+	 * @param point
+	 * @param distanceInMetres
+	 * @param bearing in degrees clockwise from north
+	 * @return
+	 */
+	LngLatAlt move(LngLatAlt point, double distanceInMetres, double bearing);
+
+	/**
+	 * Upper bound in meters on the difference from haversine, for points at most
+	 * extent meters apart and within extent meters of the given latitude.
+	 *
+	 * Bounds {@link #distance} only. The flat models move along a constant bearing, which
+	 * drifts from the great circle move by up to about d^2 * tan(|lat|) / (2 * R) meters
+	 * for a move of d meters.
+	 * @param extentMeters
+	 * @param latitude in degrees
+	 * @return
+	 */
+	double getMaxError(double extentMeters, double latitude);
+
+	/**
+	 * The cheapest model whose error stays within a tolerance over some extent: a cached
+	 * cosine at the latitude, then equirectangular, then haversine
+	 * @param toleranceMeters
+	 * @param extentMeters
+	 * @param latitude in degrees, e.g. of the center point of the annotations
+	 * @return
+	 */
+	static DistanceModel forTolerance(double toleranceMeters, double extentMeters, double latitude) {
+		DistanceModel cached = new CachedCosineDistanceModel(latitude);
+		if (cached.getMaxError(extentMeters, latitude) <= toleranceMeters) {
+			return cached;
+		}
+		if (EQUIRECTANGULAR.getMaxError(extentMeters, latitude) <= toleranceMeters) {
+			return EQUIRECTANGULAR;
+		}
+		return HAVERSINE;
+	}
+}
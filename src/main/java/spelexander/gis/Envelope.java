@@ -0,0 +1,229 @@
+package spelexander.gis;
+
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * An axis aligned longitude/latitude bounding box. Longitudes are treated as
+ * plain numbers, boxes do not wrap around the antimeridian.
+ */
+public class Envelope {
+
+	/**
+	 * Envelope of nothing, it intersects and contains nothing
+	 */
+	public static final Envelope EMPTY = new Envelope(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+	private final double minLongitude;
+
+	private final double minLatitude;
+
+	private final double maxLongitude;
+
+	private final double maxLatitude;
+
+	public Envelope(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+		this.minLongitude = minLongitude;
+		this.minLatitude = minLatitude;
+		this.maxLongitude = maxLongitude;
+		this.maxLatitude = maxLatitude;
+	}
+
+	/**
+	 * Envelope of the exterior ring of an annotation
+	 * @param annotation
+	 * @return
+	 */
+	public static Envelope of(GisGridAnnotation annotation) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		if (ring.isEmpty()) {
+			return EMPTY;
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (LngLatAlt point : ring) {
+			double x = point.getLongitude();
+			double y = point.getLatitude();
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+
+		return new Envelope(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Envelope of a packed ring
+	 * @param ring
+	 * @return
+	 */
+	public static Envelope of(PackedRing ring) {
+		if (ring.size() == 0) {
+			return EMPTY;
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		double[] coordinates = ring.getCoordinates();
+		int stride = ring.getStride();
+		for (int index = 0; index < coordinates.length; index += stride) {
+			double x = coordinates[index];
+			double y = coordinates[index + 1];
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+
+		return new Envelope(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Envelope of a quantized ring, from the bounds kept while encoding
+	 * @param ring
+	 * @return
+	 */
+	public static Envelope of(QuantizedRing ring) {
+		if (ring.size() == 0) {
+			return EMPTY;
+		}
+
+		double scale = ring.getScale();
+		return new Envelope(ring.minLongitude / scale, ring.minLatitude / scale, ring.maxLongitude / scale,
+				ring.maxLatitude / scale);
+	}
+
+	public double getMinLongitude() {
+		return minLongitude;
+	}
+
+	public double getMinLatitude() {
+		return minLatitude;
+	}
+
+	public double getMaxLongitude() {
+		return maxLongitude;
+	}
+
+	public double getMaxLatitude() {
+		return maxLatitude;
+	}
+
+	public boolean isEmpty() {
+		return minLongitude > maxLongitude || minLatitude > maxLatitude;
+	}
+
+	public boolean contains(double longitude, double latitude) {
+		return longitude >= minLongitude && longitude <= maxLongitude
+				&& latitude >= minLatitude && latitude <= maxLatitude;
+	}
+
+	public boolean contains(LngLatAlt point) {
+		return contains(point.getLongitude(), point.getLatitude());
+	}
+
+	public boolean contains(Envelope other) {
+		return !other.isEmpty() && other.minLongitude >= minLongitude && other.maxLongitude <= maxLongitude
+				&& other.minLatitude >= minLatitude && other.maxLatitude <= maxLatitude;
+	}
+
+	public boolean intersects(Envelope other) {
+		return other.minLongitude <= maxLongitude && other.maxLongitude >= minLongitude
+				&& other.minLatitude <= maxLatitude && other.maxLatitude >= minLatitude;
+	}
+
+	/**
+	 * Whether the segment between two points touches this envelope (Liang-Barsky)
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return
+	 */
+	public boolean intersectsSegment(double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double[] t = { 0.0, 1.0 };
+
+		return clip(-dx, x1 - minLongitude, t) && clip(dx, maxLongitude - x1, t)
+				&& clip(-dy, y1 - minLatitude, t) && clip(dy, maxLatitude - y1, t);
+	}
+
+	private static boolean clip(double p, double q, double[] t) {
+		if (p == 0) {
+			return q >= 0;
+		}
+
+		double r = q / p;
+		if (p < 0) {
+			if (r > t[1]) {
+				return false;
+			}
+			if (r > t[0]) {
+				t[0] = r;
+			}
+		} else {
+			if (r < t[0]) {
+				return false;
+			}
+			if (r < t[1]) {
+				t[1] = r;
+			}
+		}
+		return true;
+	}
+
+	public Envelope union(Envelope other) {
+		return new Envelope(Math.min(minLongitude, other.minLongitude), Math.min(minLatitude, other.minLatitude),
+				Math.max(maxLongitude, other.maxLongitude), Math.max(maxLatitude, other.maxLatitude));
+	}
+
+	/**
+	 * @return area in square degrees, 0 when empty
+	 */
+	public double getArea() {
+		return isEmpty() ? 0.0 : (maxLongitude - minLongitude) * (maxLatitude - minLatitude);
+	}
+
+	public LngLatAlt getCenter() {
+		return new LngLatAlt((minLongitude + maxLongitude) / 2.0, (minLatitude + maxLatitude) / 2.0);
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(minLongitude);
+		bits = 31 * bits + Double.doubleToLongBits(minLatitude);
+		bits = 31 * bits + Double.doubleToLongBits(maxLongitude);
+		bits = 31 * bits + Double.doubleToLongBits(maxLatitude);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Envelope)) {
+			return false;
+		}
+		Envelope other = (Envelope) obj;
+		return Double.compare(minLongitude, other.minLongitude) == 0 && Double.compare(minLatitude, other.minLatitude) == 0
+				&& Double.compare(maxLongitude, other.maxLongitude) == 0 && Double.compare(maxLatitude, other.maxLatitude) == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Envelope{minLongitude=" + minLongitude + ", minLatitude=" + minLatitude + ", maxLongitude="
+				+ maxLongitude + ", maxLatitude=" + maxLatitude + "}";
+	}
+}
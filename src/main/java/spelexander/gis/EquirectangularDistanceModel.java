@@ -0,0 +1,73 @@
+package spelexander.gis;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Flat distances on the local tangent plane, scaling longitude by the cosine of
+ * the mean latitude of each pair. One cosine and one square root per distance,
+ * accurate to millimetres over fields a few kilometres across. Longitude differences
+ * are taken the short way round, across the antimeridian when that is shorter. Moves
+ * follow a constant bearing rather than the great circle, and are not covered by
+ * {@link #getMaxError(double, double)}.
+ */
+public class EquirectangularDistanceModel implements DistanceModel {
+
+	static final double EARTH_RADIUS_METERS = 6371000.0;
+
+	/**
+	 * Keeps the tangent of the latitude finite near the poles
+	 */
+	private static final double MAX_LATITUDE_RADIANS = Math.toRadians(89.0);
+
+	@Override
+	public double distance(double lon1, double lat1, double lon2, double lat2) {
+		double cosLat = Math.cos(Math.toRadians((lat1 + lat2) / 2.0));
+		return planar(lon1, lat1, lon2, lat2, cosLat);
+	}
+
+	@Override
+	public LngLatAlt move(LngLatAlt point, double distanceInMetres, double bearing) {
+		double brngRad = Math.toRadians(bearing);
+		double latitude = point.getLatitude() + Math.toDegrees(distanceInMetres * Math.cos(brngRad) / EARTH_RADIUS_METERS);
+		double cosLat = Math.cos(Math.toRadians((point.getLatitude() + latitude) / 2.0));
+		double longitude = point.getLongitude() + Math.toDegrees(distanceInMetres * Math.sin(brngRad) / (EARTH_RADIUS_METERS * cosLat));
+
+		return new LngLatAlt(wrapLongitude(longitude), latitude);
+	}
+
+	/**
+	 * The curvature of the parallels, growing with the cube of the extent and the
+	 * square of the tangent of the latitude
+	 */
+	@Override
+	public double getMaxError(double extentMeters, double latitude) {
+		double angle = extentMeters / EARTH_RADIUS_METERS;
+		double tan = Math.tan(poleward(latitude, angle));
+		return extentMeters * angle * angle * (1.0 + tan * tan) / 8.0;
+	}
+
+	static double planar(double lon1, double lat1, double lon2, double lat2, double cosLat) {
+		double x = Math.toRadians(wrapLongitude(lon2 - lon1)) * cosLat;
+		double y = Math.toRadians(lat2 - lat1);
+		return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * A longitude or longitude difference in degrees brought into -180 to 180
+	 */
+	static double wrapLongitude(double degrees) {
+		return degrees - 360.0 * Math.rint(degrees / 360.0);
+	}
+
+	/**
+	 * Latitude in radians furthest from the equator within an angle of a latitude
+	 */
+	static double poleward(double latitude, double angle) {
+		return Math.min(Math.abs(Math.toRadians(latitude)) + angle, MAX_LATITUDE_RADIANS);
+	}
+
+	@Override
+	public String toString() {
+		return "EquirectangularDistanceModel";
+	}
+}
@@ -0,0 +1,236 @@
+package spelexander.gis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.geojson.GeoJsonObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Reads annotations out of a GeoJson document one feature at a time using
+ * Jackson's token level parser. Only the feature currently being read is ever
+ * bound to objects, so memory use depends on the largest single feature rather
+ * than on the size of the whole document.
+ *
+ * Documents which are not a FeatureCollection (a single Feature or Geometry)
+ * are bound whole, as they are a single feature anyway.
+ */
+public class GeoJsonAnnotationIterator implements Iterator<GisGridAnnotation>, Closeable {
+
+	private final JsonParser parser;
+
+	private final ObjectMapper mapper;
+
+	private final MapGisGridAnnotationReader reader;
+
+	private final List<GisGridAnnotation> pending = new ArrayList<>();
+
+	private int pendingIndex = 0;
+
+	/**
+	 * Top level fields other than "features", used when the document is not a collection
+	 */
+	private ObjectNode rootFields;
+
+	private boolean started = false;
+
+	private boolean inFeatures = false;
+
+	private boolean sawFeatures = false;
+
+	private boolean finished = false;
+
+	/**
+	 * Reused to collect each feature's raw properties
+	 */
+	private final ByteArrayOutputStream propertiesBuffer = new ByteArrayOutputStream();
+
+	/**
+	 * Name property of the feature being read
+	 */
+	private String projectedName;
+
+	public GeoJsonAnnotationIterator(JsonParser parser, ObjectMapper mapper, MapGisGridAnnotationReader reader) {
+		this.parser = parser;
+		this.mapper = mapper;
+		this.reader = reader;
+		this.rootFields = mapper.createObjectNode();
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			advance();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return pendingIndex < pending.size();
+	}
+
+	@Override
+	public GisGridAnnotation next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		GisGridAnnotation next = pending.get(pendingIndex);
+		pending.set(pendingIndex, null);
+		pendingIndex++;
+		return next;
+	}
+
+	@Override
+	public void close() throws IOException {
+		finished = true;
+		parser.close();
+	}
+
+	/**
+	 * Read tokens until at least one annotation is pending or the document ends
+	 * @throws IOException
+	 */
+	private void advance() throws IOException {
+		if (pendingIndex < pending.size()) {
+			return;
+		}
+		pending.clear();
+		pendingIndex = 0;
+
+		if (!started) {
+			started = true;
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				finished = true;
+			}
+		}
+
+		while (pending.isEmpty() && !finished) {
+			JsonToken token = parser.nextToken();
+
+			if (inFeatures) {
+				if (token == JsonToken.END_ARRAY) {
+					inFeatures = false;
+				} else if (token == JsonToken.START_OBJECT) {
+					readFeature();
+				} else {
+					parser.skipChildren();
+				}
+
+			} else if (token == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+
+				if ("features".equals(field) && value == JsonToken.START_ARRAY) {
+					inFeatures = true;
+					sawFeatures = true;
+				} else if (sawFeatures) {
+					// Collection level members are of no use to us
+					parser.skipChildren();
+				} else {
+					rootFields.set(field, mapper.readTree(parser));
+				}
+
+			} else {
+				// End of the root object (or of the input)
+				finished = true;
+				if (!sawFeatures && rootFields.size() > 0) {
+					GeoJsonObject object = mapper.treeToValue(rootFields, GeoJsonObject.class);
+					reader.annotationFromGeoJsonObject(object, pending);
+				}
+				rootFields = null;
+			}
+		}
+	}
+
+	/**
+	 * Read a single feature object, the parser must be positioned on its START_OBJECT
+	 * @throws IOException
+	 */
+	private void readFeature() throws IOException {
+		GeoJsonObject geometry = null;
+		LazyProperties properties = null;
+		projectedName = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+
+			if ("geometry".equals(field)) {
+				geometry = mapper.readValue(parser, GeoJsonObject.class);
+			} else if ("properties".equals(field) && reader.readsProperties()) {
+				properties = readProperties();
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		int first = pending.size();
+		reader.annotationFromGeoJsonObject(geometry, pending);
+
+		for (GisGridAnnotation annotation : pending.subList(first, pending.size())) {
+			if (properties != null) {
+				annotation.setProperties(properties);
+			}
+			if (projectedName != null) {
+				annotation.setName(projectedName);
+			}
+		}
+	}
+
+	/**
+	 * Copy a properties object's tokens out as raw JSON without binding them, picking
+	 * out the name property on the way. The parser must be positioned on its value.
+	 * @return null when properties are not kept
+	 * @throws IOException
+	 */
+	private LazyProperties readProperties() throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return null;
+		}
+
+		String nameProperty = reader.getNameProperty();
+		JsonGenerator generator = null;
+		if (reader.isLazyProperties()) {
+			propertiesBuffer.reset();
+			generator = mapper.getFactory().createGenerator(propertiesBuffer);
+			generator.writeStartObject();
+		}
+
+		int fields = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			fields++;
+
+			if (key.equals(nameProperty) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+				projectedName = parser.getText();
+			}
+
+			if (generator != null) {
+				generator.writeFieldName(key);
+				generator.copyCurrentStructure(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (generator == null) {
+			return null;
+		}
+		generator.writeEndObject();
+		generator.close();
+
+		return fields == 0 ? LazyProperties.EMPTY : LazyProperties.fromJson(propertiesBuffer.toByteArray());
+	}
+}
@@ -0,0 +1,191 @@
+package spelexander.gis;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes annotations as a GeoJson FeatureCollection straight to a JsonGenerator,
+ * one feature at a time. Nothing is buffered beyond the generator itself, so
+ * export memory stays flat regardless of how many annotations are written.
+ *
+ * The output matches {@link MapGisGridAnnotationReader#toGeoJson(List)}. If a write
+ * fails the collection is left unclosed, so a truncated export fails to parse rather
+ * than reading as a complete collection missing features.
+ */
+public class GeoJsonAnnotationWriter implements Closeable, Flushable {
+
+	/**
+	 * Default number of features written between flushes
+	 */
+	public static final int DEFAULT_FLUSH_BATCH = 1000;
+
+	private final JsonGenerator generator;
+
+	private final int flushBatch;
+
+	private int sinceFlush = 0;
+
+	private long written = 0;
+
+	private boolean started = false;
+
+	private boolean closed = false;
+
+	private boolean failed = false;
+
+	/**
+	 * @param generator the generator to write to, closed along with this writer
+	 * @param flushBatch flush the generator every this many features, 0 to only flush on close
+	 */
+	public GeoJsonAnnotationWriter(JsonGenerator generator, int flushBatch) {
+		if (flushBatch < 0) {
+			throw new IllegalArgumentException("Flush batch must not be negative");
+		}
+		this.generator = generator;
+		this.flushBatch = flushBatch;
+	}
+
+	public GeoJsonAnnotationWriter(JsonGenerator generator) {
+		this(generator, DEFAULT_FLUSH_BATCH);
+	}
+
+	/**
+	 * Write a single annotation as a Feature
+	 * @param annotation
+	 * @throws IOException
+	 */
+	public void write(GisGridAnnotation annotation) throws IOException {
+		try {
+			writeFeature(annotation);
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	private void writeFeature(GisGridAnnotation annotation) throws IOException {
+		start();
+
+		generator.writeStartObject();
+		generator.writeStringField("type", "Feature");
+		generator.writeObjectFieldStart("properties");
+		generator.writeEndObject();
+
+		generator.writeObjectFieldStart("geometry");
+		generator.writeStringField("type", "Polygon");
+		generator.writeArrayFieldStart("coordinates");
+		generator.writeStartArray();
+		for (LngLatAlt point : annotation.getExteriorRing()) {
+			writePoint(point);
+		}
+		generator.writeEndArray();
+		generator.writeEndArray();
+		generator.writeEndObject();
+
+		generator.writeEndObject();
+
+		written++;
+		if (flushBatch > 0 && ++sinceFlush >= flushBatch) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write every annotation, in order
+	 * @param annotations
+	 * @throws IOException
+	 */
+	public void writeAll(Iterable<? extends GisGridAnnotation> annotations) throws IOException {
+		try {
+			for (GisGridAnnotation annotation : annotations) {
+				write(annotation);
+			}
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of features written so far
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		sinceFlush = 0;
+		generator.flush();
+	}
+
+	/**
+	 * Closes the FeatureCollection and the underlying generator. After a failed write
+	 * only the generator is closed, leaving the output unterminated.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		if (failed) {
+			closed = true;
+			// The generator would otherwise close the open arrays and objects itself
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+			generator.close();
+			return;
+		}
+
+		try {
+			start();
+			generator.writeEndArray();
+			generator.writeEndObject();
+		} finally {
+			closed = true;
+			generator.close();
+		}
+	}
+
+	private void start() throws IOException {
+		if (closed) {
+			throw new IOException("Writer has been closed");
+		}
+		if (failed) {
+			throw new IOException("An earlier write failed, the output is incomplete");
+		}
+		if (started) {
+			return;
+		}
+		started = true;
+
+		generator.writeStartObject();
+		generator.writeStringField("type", "FeatureCollection");
+		generator.writeArrayFieldStart("features");
+	}
+
+	/**
+	 * Same layout as geojson-jackson's LngLatAltSerializer
+	 * @param point
+	 * @throws IOException
+	 */
+	private void writePoint(LngLatAlt point) throws IOException {
+		generator.writeStartArray();
+		generator.writeNumber(point.getLongitude());
+		generator.writeNumber(point.getLatitude());
+		if (point.hasAltitude()) {
+			generator.writeNumber(point.getAltitude());
+
+			for (double element : point.getAdditionalElements()) {
+				generator.writeNumber(element);
+			}
+		}
+		generator.writeEndArray();
+	}
+}
@@ -0,0 +1,279 @@
+package spelexander.gis;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads many GeoJson files concurrently, such as a directory with a file per field.
+ *
+ * Each file is read on its own thread, a virtual thread when the runtime has them
+ * (Java 21 and later) and otherwise one from a pool, so slow reads overlap. At most a
+ * given number of files are in flight at once, and parsing, which is CPU bound, is
+ * limited to a smaller number of files at once. A file stays in flight from its read
+ * until its parse finishes, so at most ioParallelism files' raw bytes are held at
+ * once, on top of the annotations already parsed. Failures are reported per file
+ * rather than printed.
+ */
+public class GeoJsonBulkLoader {
+
+	public static final int DEFAULT_IO_PARALLELISM = 64;
+
+	private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+	private final MapGisGridAnnotationReader reader;
+
+	private final int ioParallelism;
+
+	private final Semaphore openFiles;
+
+	private final Semaphore parsing;
+
+	/**
+	 * Parses as many files at once as there are processors
+	 */
+	public GeoJsonBulkLoader() {
+		this(new MapGisGridAnnotationReader(), DEFAULT_IO_PARALLELISM, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param reader
+	 * @param ioParallelism most files being read or waiting to be parsed at once, which bounds memory
+	 * @param parseParallelism most files being parsed at once
+	 */
+	public GeoJsonBulkLoader(MapGisGridAnnotationReader reader, int ioParallelism, int parseParallelism) {
+		if (ioParallelism < 1 || parseParallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.reader = Objects.requireNonNull(reader);
+		this.ioParallelism = ioParallelism;
+		this.openFiles = new Semaphore(ioParallelism);
+		this.parsing = new Semaphore(parseParallelism);
+	}
+
+	/**
+	 * @return whether reads run on virtual threads
+	 */
+	public static boolean isUsingVirtualThreads() {
+		return VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * Load every .json and .geojson file (optionally .gz) in a directory, not recursing
+	 * @param directory
+	 * @return results in file name order
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public LoadResult load(Path directory) throws IOException {
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path path : files) {
+				if (isGeoJson(path) && Files.isRegularFile(path)) {
+					paths.add(path);
+				}
+			}
+		}
+		Collections.sort(paths);
+
+		return load(paths);
+	}
+
+	/**
+	 * Load the given files, .gz files are decompressed
+	 * @param paths
+	 * @return results in the given order
+	 * @throws InterruptedIOException if interrupted while waiting for the files
+	 */
+	public LoadResult load(List<Path> paths) throws InterruptedIOException {
+		ExecutorService executor = newExecutor();
+		try {
+			List<Future<FileResult>> futures = new ArrayList<>(paths.size());
+			for (Path path : paths) {
+				futures.add(executor.submit(() -> loadFile(path)));
+			}
+
+			List<FileResult> results = new ArrayList<>(paths.size());
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					results.add(new FileResult(paths.get(i), null, e.getCause()));
+				}
+			}
+			return new LoadResult(results);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading GeoJson files");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private FileResult loadFile(Path path) throws InterruptedException {
+		// Held until parsed so files waiting for a parse permit count against ioParallelism
+		openFiles.acquire();
+		try {
+			byte[] bytes = Files.readAllBytes(path);
+
+			parsing.acquire();
+			try {
+				InputStream inputStream = new ByteArrayInputStream(bytes);
+				if (path.toString().endsWith(".gz")) {
+					inputStream = new GZIPInputStream(inputStream);
+				}
+				return new FileResult(path, reader.fromGeoJson(inputStream), null);
+			} finally {
+				parsing.release();
+			}
+		} catch (IOException | RuntimeException e) {
+			return new FileResult(path, null, e);
+		} finally {
+			openFiles.release();
+		}
+	}
+
+	private ExecutorService newExecutor() {
+		if (VIRTUAL_EXECUTOR != null) {
+			try {
+				return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// Fall back to platform threads
+			}
+		}
+
+		return Executors.newFixedThreadPool(ioParallelism, runnable -> {
+			Thread thread = new Thread(runnable, "geojson-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor, looked up so the library still runs on Java 8
+	 */
+	private static Method findVirtualExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static boolean isGeoJson(Path path) {
+		String name = path.getFileName().toString().toLowerCase();
+		if (name.endsWith(".gz")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		return name.endsWith(".json") || name.endsWith(".geojson");
+	}
+
+	/**
+	 * The annotations read from one file, or why it could not be read
+	 */
+	public static final class FileResult {
+
+		private final Path path;
+
+		private final List<GisGridAnnotation> annotations;
+
+		private final Throwable error;
+
+		FileResult(Path path, List<GisGridAnnotation> annotations, Throwable error) {
+			this.path = path;
+			this.annotations = annotations;
+			this.error = error;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		public boolean isSuccessful() {
+			return error == null;
+		}
+
+		/**
+		 * @return the file's annotations, empty when it failed
+		 */
+		public List<GisGridAnnotation> getAnnotations() {
+			return annotations == null ? Collections.emptyList() : annotations;
+		}
+
+		/**
+		 * @return null when the file was read
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return "FileResult{path=" + path + (error == null ? ", annotations=" + annotations.size() : ", error=" + error) + "}";
+		}
+	}
+
+	/**
+	 * Results of every file in a load
+	 */
+	public static final class LoadResult {
+
+		private final List<FileResult> files;
+
+		LoadResult(List<FileResult> files) {
+			this.files = Collections.unmodifiableList(files);
+		}
+
+		public List<FileResult> getFiles() {
+			return files;
+		}
+
+		/**
+		 * @return the files which could not be read
+		 */
+		public List<FileResult> getFailures() {
+			List<FileResult> failures = new ArrayList<>();
+			for (FileResult file : files) {
+				if (!file.isSuccessful()) {
+					failures.add(file);
+				}
+			}
+			return failures;
+		}
+
+		public boolean isSuccessful() {
+			return getFailures().isEmpty();
+		}
+
+		/**
+		 * @return every annotation read, file by file in order
+		 */
+		public List<GisGridAnnotation> merge() {
+			int size = 0;
+			for (FileResult file : files) {
+				size += file.getAnnotations().size();
+			}
+
+			List<GisGridAnnotation> result = new ArrayList<>(size);
+			for (FileResult file : files) {
+				result.addAll(file.getAnnotations());
+			}
+			return result;
+		}
+	}
+}
@@ -12,6 +12,8 @@ import org.geojson.Polygon;
 public class GisGridAnnotation extends Polygon {
 	
 	private String name = "";
+
+	private LazyProperties properties = LazyProperties.EMPTY;
 	
 	public GisGridAnnotation(List<LngLatAlt> list) {
 		super(list);
@@ -47,6 +49,69 @@ public class GisGridAnnotation extends Polygon {
 		return new Point(avg_x, avg_y);
 	}
 
+	/**
+	 * Exact point in polygon test (crossing number) of the exterior ring in longitude/latitude
+	 * @param longitude
+	 * @param latitude
+	 * @return
+	 */
+	public boolean contains(double longitude, double latitude) {
+		List<LngLatAlt> ring = this.getExteriorRing();
+		int size = ring.size();
+		if (size < 3) {
+			return false;
+		}
+
+		boolean inside = false;
+		LngLatAlt previous = ring.get(size - 1);
+		for (LngLatAlt current : ring) {
+			double x1 = previous.getLongitude();
+			double y1 = previous.getLatitude();
+			double x2 = current.getLongitude();
+			double y2 = current.getLatitude();
+
+			if ((y2 > latitude) != (y1 > latitude)
+					&& longitude < (x1 - x2) * (latitude - y2) / (y1 - y2) + x2) {
+				inside = !inside;
+			}
+			previous = current;
+		}
+
+		return inside;
+	}
+
+	public boolean contains(LngLatAlt point) {
+		return contains(point.getLongitude(), point.getLatitude());
+	}
+
+	/**
+	 * Whether the exterior ring (its area, or its points and lines when it cannot be used
+	 * as a polygon) touches the window
+	 * @param window
+	 * @return
+	 */
+	public boolean intersects(Envelope window) {
+		List<LngLatAlt> ring = this.getExteriorRing();
+		if (ring.isEmpty() || window.isEmpty()) {
+			return false;
+		}
+
+		LngLatAlt previous = ring.get(ring.size() - 1);
+		for (LngLatAlt current : ring) {
+			if (window.contains(current)) {
+				return true;
+			}
+			if (window.intersectsSegment(previous.getLongitude(), previous.getLatitude(),
+					current.getLongitude(), current.getLatitude())) {
+				return true;
+			}
+			previous = current;
+		}
+
+		// No edge touches the window, so it is either wholly inside the polygon or outside it
+		return contains(window.getMinLongitude(), window.getMinLatitude());
+	}
+
 	public Feature toFeature() {
 		Feature feature = new Feature();	
 		Polygon polygon = new Polygon(this.getExteriorRing());
@@ -63,4 +128,15 @@ public class GisGridAnnotation extends Polygon {
 		name = value;
 	}
 
+	/**
+	 * @return the feature's properties when read with {@link MapGisGridAnnotationReader#setLazyProperties(boolean)}, otherwise empty
+	 */
+	public LazyProperties getProperties() {
+		return properties;
+	}
+
+	public void setProperties(LazyProperties value) {
+		properties = value == null ? LazyProperties.EMPTY : value;
+	}
+
 }
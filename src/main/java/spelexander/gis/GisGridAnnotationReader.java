@@ -1,7 +1,13 @@
 package spelexander.gis;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.geojson.Polygon;
 
@@ -16,9 +22,52 @@ public interface GisGridAnnotationReader<E extends Polygon> {
 	 * read geo object from file 
 	 * @param json
 	 * @return
+	 * @throws java.io.UncheckedIOException if the file cannot be read
 	 */
 	public List<E> fromGeoJson(File json);
 
+	/**
+	 * Lazily read geo objects from file one feature at a time, the stream must be closed
+	 * @param json
+	 * @return
+	 * @throws IOException
+	 */
+	public Stream<E> streamGeoJson(File json) throws IOException;
+
+	/**
+	 * Read geo objects from file one feature at a time, handing each to the consumer
+	 * @param json
+	 * @param consumer
+	 * @throws IOException
+	 */
+	public void readGeoJson(File json, Consumer<? super E> consumer) throws IOException;
+
 	String toGeoJson(List<E> entity);
+
+	/**
+	 * Stream geo objects to an output stream as they are iterated, the stream is left open
+	 * @param entities
+	 * @param outputStream
+	 * @param gzip
+	 * @throws IOException
+	 */
+	void writeGeoJson(Iterable<? extends E> entities, OutputStream outputStream, boolean gzip) throws IOException;
+
+	/**
+	 * Stream geo objects to a writer as they are iterated, the writer is left open
+	 * @param entities
+	 * @param writer
+	 * @throws IOException
+	 */
+	void writeGeoJson(Iterable<? extends E> entities, Writer writer) throws IOException;
+
+	/**
+	 * Stream geo objects to a file, replacing any existing content
+	 * @param entities
+	 * @param path
+	 * @param gzip
+	 * @throws IOException
+	 */
+	void writeGeoJson(Iterable<? extends E> entities, Path path, boolean gzip) throws IOException;
 	
 }
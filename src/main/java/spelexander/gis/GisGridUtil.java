@@ -3,16 +3,101 @@ package spelexander.gis;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Shape;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Function;
 
 import org.geojson.LngLatAlt;
 import org.geojson.Polygon;
 
+/**
+ * Grid operations over annotations. Methods added since the first release have
+ * default implementations built on the original ones, so existing implementations
+ * keep compiling; {@link MapGisGridUtil} overrides the ones it can do faster.
+ */
 public interface GisGridUtil<E extends Polygon> {
 	
 	public LngLatAlt getCenterPoint(@SuppressWarnings("unchecked") E... annotations);
 	public LngLatAlt getCenterPoint(List<E> annotations);
+
+	/**
+	 * Same as {@link #getCenterPoint(List)} over packed rings
+	 * @param rings
+	 * @return
+	 */
+	public default LngLatAlt getCenterPoint(PackedRing... rings) {
+		return getPackedCenterPoint(Arrays.asList(rings));
+	}
+
+	public default LngLatAlt getPackedCenterPoint(List<PackedRing> rings) {
+		Objects.requireNonNull(rings, "Must provide an actual list of rings");
+		if (rings.isEmpty()) {
+			return null;
+		}
+
+		double avg_long = 0;
+		double avg_lat = 0;
+		double avg_alt = 0;
+
+		int count = 0;
+		for (PackedRing ring : rings) {
+			if (!ring.canUse()) {
+				continue;
+			}
+
+			double[] coordinates = ring.getCoordinates();
+			int stride = ring.getStride();
+			for (int index = 0; index < coordinates.length; index += stride) {
+				avg_long += coordinates[index];
+				avg_lat += coordinates[index + 1];
+				if (stride == 3 && !Double.isNaN(coordinates[index + 2])) {
+					avg_alt += coordinates[index + 2];
+				}
+			}
+			count += ring.size();
+		}
+
+		avg_long = avg_long / count;
+		avg_lat = avg_lat / count;
+		avg_alt = avg_alt / count;
+
+		return new LngLatAlt(avg_long, avg_lat, avg_alt);
+	}
+
+	public default LngLatAlt getQuantizedCenterPoint(List<QuantizedRing> rings) {
+		Objects.requireNonNull(rings, "Must provide an actual list of rings");
+		if (rings.isEmpty()) {
+			return null;
+		}
+
+		double avg_long = 0;
+		double avg_lat = 0;
+		double avg_alt = 0;
+
+		int count = 0;
+		for (QuantizedRing ring : rings) {
+			if (!ring.canUse()) {
+				continue;
+			}
+
+			QuantizedRing.Cursor cursor = ring.cursor();
+			while (cursor.next()) {
+				avg_long += cursor.getLongitude();
+				avg_lat += cursor.getLatitude();
+				if (!Double.isNaN(cursor.getAltitude())) {
+					avg_alt += cursor.getAltitude();
+				}
+			}
+			count += ring.size();
+		}
+
+		avg_long = avg_long / count;
+		avg_lat = avg_lat / count;
+		avg_alt = avg_alt / count;
+
+		return new LngLatAlt(avg_long, avg_lat, avg_alt);
+	}
 	
 	/**
 	 * Defaults to meters.. can change units outside of this
@@ -31,16 +116,192 @@ public interface GisGridUtil<E extends Polygon> {
 		
 	Point transformToXY(LngLatAlt point, LngLatAlt topLeftPoint, Dimension fieldSize, ScaleRotation rotation,
 			WidthHeightProvider params);
+
+	/**
+	 * Transform every point of a packed ring into the xs/ys arrays, which must hold ring.size() values
+	 */
+	default void transformToXY(PackedRing ring, LngLatAlt topLeftPoint, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params, int[] xs, int[] ys) {
+		for (int i = 0; i < ring.size(); i++) {
+			Point p = transformToXY(new LngLatAlt(ring.getLongitude(i), ring.getLatitude(i)), topLeftPoint, fieldSize, rotation, params);
+			xs[i] = p.x;
+			ys[i] = p.y;
+		}
+	}
+
+	/**
+	 * Same as the packed ring version, decoding the ring as it goes
+	 */
+	default void transformToXY(QuantizedRing ring, LngLatAlt topLeftPoint, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params, int[] xs, int[] ys) {
+		QuantizedRing.Cursor cursor = ring.cursor();
+		while (cursor.next()) {
+			Point p = transformToXY(new LngLatAlt(cursor.getLongitude(), cursor.getLatitude()), topLeftPoint, fieldSize, rotation, params);
+			xs[cursor.getIndex()] = p.x;
+			ys[cursor.getIndex()] = p.y;
+		}
+	}
+	
+	/**
+	 * Precompute the transformToXY/transformToLongLat factors for repeated or batch projection
+	 */
+	default ProjectionContext getProjectionContext(LngLatAlt topLeft, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params) {
+		return new ProjectionContext(topLeft, fieldSize, rotation, params);
+	}
 	
 	LngLatAlt getTopLeftPoint(List<GisGridAnnotation> annotations, Dimension fieldSize, ScaleRotation rotation,
 			WidthHeightProvider params);
 	
+	/**
+	 * Top left of a field of some size around a known center point, moving with
+	 * haversine unless overridden
+	 */
+	default LngLatAlt getTopLeftPoint(LngLatAlt center, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params) {
+		double width = params.getMetersForUnitX(fieldSize.getWidth() / 2.0);
+		double height = params.getMetersForUnitY(fieldSize.getHeight() / 2.0);
+
+		LngLatAlt x_move = DistanceModel.HAVERSINE.move(center, width, rotation.do180());
+		LngLatAlt y_move = DistanceModel.HAVERSINE.move(center, height, rotation.doMinus90());
+
+		return new LngLatAlt(x_move.getLongitude(), y_move.getLatitude());
+	}
+	
 	Shape getPolygonShape(GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize,
 			ScaleRotation rotation, WidthHeightProvider params);
 	
+	default Shape getPolygonShape(PackedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		transformToXY(ring, topLeft, fieldSize, rotation, params, xs, ys);
+		return new java.awt.Polygon(xs, ys, ring.size());
+	}
+	
+	default Shape getPolygonShape(QuantizedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		transformToXY(ring, topLeft, fieldSize, rotation, params, xs, ys);
+		return new java.awt.Polygon(xs, ys, ring.size());
+	}
+	
+	default Shape getPolygonShape(GisGridAnnotation annotation, ProjectionContext context) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		int size = ring.size();
+		int[] xs = new int[size];
+		int[] ys = new int[size];
+
+		int count = 0;
+		for (LngLatAlt point : ring) {
+			xs[count] = context.toX(point.getLongitude());
+			ys[count] = context.toY(point.getLatitude());
+			count++;
+		}
+
+		return new java.awt.Polygon(xs, ys, size);
+	}
+	
+	/**
+	 * Shape simplified to within twice a tolerance in grid units with {@link PolygonSimplifier},
+	 * for drawing at low zoom
+	 */
+	default Shape getPolygonShape(GisGridAnnotation annotation, ProjectionContext context, double tolerance) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		int size = ring.size();
+		double[] gridXs = new double[size];
+		double[] gridYs = new double[size];
+
+		int count = 0;
+		for (LngLatAlt point : ring) {
+			gridXs[count] = context.toGridX(point.getLongitude());
+			gridYs[count] = context.toGridY(point.getLatitude());
+			count++;
+		}
+
+		int[] kept = new int[size];
+		count = PolygonSimplifier.simplify(gridXs, gridYs, size, tolerance, kept);
+
+		int[] xs = new int[count];
+		int[] ys = new int[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = (int) Math.round(gridXs[kept[i]]);
+			ys[i] = (int) Math.round(gridYs[kept[i]]);
+		}
+
+		return new java.awt.Polygon(xs, ys, count);
+	}
+	
+	default Shape getPolygonShape(PackedRing ring, ProjectionContext context) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		context.toXY(ring, xs, ys);
+		return new java.awt.Polygon(xs, ys, ring.size());
+	}
+	
+	default Shape getPolygonShape(QuantizedRing ring, ProjectionContext context) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		context.toXY(ring, xs, ys);
+		return new java.awt.Polygon(xs, ys, ring.size());
+	}
+	
 	Boolean doesPointIntersect(Point point, GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize,
 			ScaleRotation rotation, WidthHeightProvider params);
 	
+	default Boolean doesPointIntersect(Point point, PackedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		transformToXY(ring, topLeft, fieldSize, rotation, params, xs, ys);
+		return PreparedAnnotation.contains(xs, ys, ring.size(), point.x, point.y);
+	}
+	
+	default Boolean doesPointIntersect(Point point, QuantizedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		transformToXY(ring, topLeft, fieldSize, rotation, params, xs, ys);
+		return PreparedAnnotation.contains(xs, ys, ring.size(), point.x, point.y);
+	}
+	
+	/**
+	 * Project an annotation once for repeated exact doesPointIntersect style queries
+	 */
+	default PreparedAnnotation prepare(GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		double[] xs = new double[ring.size()];
+		double[] ys = new double[ring.size()];
+
+		int count = 0;
+		for (LngLatAlt point : ring) {
+			Point p = transformToXY(point, topLeft, fieldSize, rotation, params);
+			xs[count] = p.x;
+			ys[count] = p.y;
+			count++;
+		}
+
+		return new PreparedAnnotation(annotation, xs, ys);
+	}
+	
+	default PreparedAnnotation prepare(PackedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		transformToXY(ring, topLeft, fieldSize, rotation, params, xs, ys);
+		return PreparedAnnotation.of(xs, ys, ring.size());
+	}
+	
+	default PreparedAnnotation prepare(QuantizedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+		transformToXY(ring, topLeft, fieldSize, rotation, params, xs, ys);
+		return PreparedAnnotation.of(xs, ys, ring.size());
+	}
+	
 	List<LngLatAlt> getLongestLine(List<GisGridAnnotation> annotations);
 	
 	double getBearing(LngLatAlt first, LngLatAlt second);
@@ -50,6 +311,18 @@ public interface GisGridUtil<E extends Polygon> {
 	GisGridAnnotation rotateTo(GisGridAnnotation annotation, LngLatAlt centerPoint, ScaleRotation rot,
 			RotationType type);
 	
+	default PackedRing rotateTo(PackedRing ring, LngLatAlt centerPoint, ScaleRotation rot, RotationType type) {
+		return getRotationTransform(centerPoint, rot, type).apply(ring);
+	}
+	
+	/**
+	 * Precomputed rotation for applying rotateTo to many points, arrays or rings in place.
+	 * NORTH turns the bearing to point north and REVERT undoes it
+	 */
+	default RotationTransform getRotationTransform(LngLatAlt centerPoint, ScaleRotation rot, RotationType type) {
+		return RotationTransform.of(centerPoint, rot, type);
+	}
+	
 	List<GisGridAnnotation> rotateTo(List<GisGridAnnotation> annotations, ScaleRotation rot,
 			RotationType type);
 	
@@ -69,6 +342,38 @@ public interface GisGridUtil<E extends Polygon> {
 			WidthHeightProvider params);
 	
 	ScaleRotation getBestFieldBearing(List<GisGridAnnotation> annotations);
+	
+	/**
+	 * Smallest rectangle, at any bearing, holding every point of the annotations
+	 * @param annotations
+	 * @return
+	 */
+	default OrientedRectangle getMinimumAreaRectangle(List<GisGridAnnotation> annotations) {
+		Objects.requireNonNull(annotations, "Must provide an actual list of annotations");
+		return OrientedRectangle.minimumArea(annotations);
+	}
+	
+	/**
+	 * Bearing of the rectangle's long side, so the annotations fill the field once rotated to it
+	 * @param rectangle
+	 * @return
+	 */
+	default ScaleRotation getBestFieldBearing(OrientedRectangle rectangle) {
+		return rectangle.toScaleRotation();
+	}
+	
+	/**
+	 * Field size holding the rectangle once rotated to its bearing
+	 * @param rectangle
+	 * @param params
+	 * @return
+	 */
+	default Dimension getFieldSizeToUse(OrientedRectangle rectangle, WidthHeightProvider params) {
+		int plotsX = (int) params.getUnitXForMeters(rectangle.getWidth());
+		int plotsY = (int) params.getUnitYForMeters(rectangle.getHeight());
+
+		return new Dimension(plotsX + params.getAdditionalX(), plotsY + params.getAdditionalY());
+	}
 
 	
 	Shape getPolygonShape(GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize,
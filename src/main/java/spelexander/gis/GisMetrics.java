@@ -0,0 +1,386 @@
+package spelexander.gis;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Optional counters and latency histograms for the library's hot operations.
+ *
+ * Off by default. While off every instrumented call costs one volatile read and
+ * records nothing. While on each operation adds to striped counters (no locking
+ * between threads) and a log2 histogram of its latency, and is passed to any
+ * listeners on the calling thread. The totals are available from
+ * {@link #getStats(Operation)} and, once {@link #registerMBean()} is called, over JMX.
+ *
+ * Allocation per operation is not tracked here, use the JMH benchmarks with the gc
+ * profiler for that.
+ */
+public final class GisMetrics {
+
+	/**
+	 * Instrumented operations. Items are features for the GeoJson operations and
+	 * vertices for the projections. Each public call is recorded once, under its own
+	 * operation only, never again for the steps it is built from.
+	 */
+	public enum Operation {
+		FROM_GEOJSON,
+		TO_GEOJSON,
+		TRANSFORM_TO_XY,
+		POLYGON_SHAPE,
+		/**
+		 * Calls to MapGisGridUtil.distance, and to getDistanceBetween with the haversine
+		 * model. Counted but not timed, a call is cheaper than reading the clock
+		 */
+		HAVERSINE
+	}
+
+	/**
+	 * Told about every recorded operation, on the thread that ran it
+	 */
+	public interface Listener {
+		/**
+		 * @param operation
+		 * @param nanos elapsed time, 0 for counted only operations
+		 * @param items
+		 */
+		void onOperation(Operation operation, long nanos, long items);
+	}
+
+	public static final String OBJECT_NAME = "spelexander.gis:type=GisMetrics";
+
+	/**
+	 * Latency buckets, bucket b holds times in [2^(b-1), 2^b) nanoseconds
+	 */
+	static final int BUCKETS = 64;
+
+	/**
+	 * Returned by {@link #start()} while disabled
+	 */
+	private static final long DISABLED = Long.MIN_VALUE;
+
+	private static volatile boolean enabled = false;
+
+	private static final OperationMetrics[] METRICS = new OperationMetrics[Operation.values().length];
+
+	private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+	static {
+		for (int i = 0; i < METRICS.length; i++) {
+			METRICS[i] = new OperationMetrics();
+		}
+	}
+
+	private GisMetrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	public static void addListener(Listener listener) {
+		LISTENERS.add(listener);
+	}
+
+	public static void removeListener(Listener listener) {
+		LISTENERS.remove(listener);
+	}
+
+	/**
+	 * Start timing an operation, pass the result to {@link #stop(Operation, long, long)}
+	 * @return
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : DISABLED;
+	}
+
+	/**
+	 * Record an operation started with {@link #start()}, nothing if metrics were
+	 * disabled when it started
+	 * @param operation
+	 * @param start
+	 * @param items
+	 */
+	static void stop(Operation operation, long start, long items) {
+		if (start == DISABLED) {
+			return;
+		}
+		record(operation, System.nanoTime() - start, items);
+	}
+
+	/**
+	 * Count an operation without timing it
+	 * @param operation
+	 * @param items
+	 */
+	static void count(Operation operation, long items) {
+		if (!enabled) {
+			return;
+		}
+		OperationMetrics metrics = METRICS[operation.ordinal()];
+		metrics.count.increment();
+		metrics.items.add(items);
+
+		if (!LISTENERS.isEmpty()) {
+			notify(operation, 0L, items);
+		}
+	}
+
+	static void record(Operation operation, long nanos, long items) {
+		OperationMetrics metrics = METRICS[operation.ordinal()];
+		metrics.count.increment();
+		metrics.items.add(items);
+		metrics.nanos.add(nanos);
+		metrics.maxNanos.accumulate(nanos);
+		metrics.histogram[bucketOf(nanos)].increment();
+
+		if (!LISTENERS.isEmpty()) {
+			notify(operation, nanos, items);
+		}
+	}
+
+	private static void notify(Operation operation, long nanos, long items) {
+		for (Listener listener : LISTENERS) {
+			listener.onOperation(operation, nanos, items);
+		}
+	}
+
+	static int bucketOf(long nanos) {
+		return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * Zero every counter and histogram
+	 */
+	public static void reset() {
+		for (OperationMetrics metrics : METRICS) {
+			metrics.reset();
+		}
+	}
+
+	/**
+	 * Totals for an operation, read without stopping writers so they may be off by
+	 * operations in progress
+	 * @param operation
+	 * @return
+	 */
+	public static OperationStats getStats(Operation operation) {
+		OperationMetrics metrics = METRICS[operation.ordinal()];
+		long[] histogram = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = metrics.histogram[i].sum();
+		}
+		return new OperationStats(operation.name(), metrics.count.sum(), metrics.items.sum(), metrics.nanos.sum(),
+				metrics.maxNanos.get(), histogram);
+	}
+
+	public static List<OperationStats> getStats() {
+		List<OperationStats> result = new ArrayList<>();
+		for (Operation operation : Operation.values()) {
+			result.add(getStats(operation));
+		}
+		return result;
+	}
+
+	/**
+	 * Register with the platform MBean server as {@link #OBJECT_NAME}
+	 * @return
+	 * @throws JMException if it is already registered
+	 */
+	public static ObjectName registerMBean() throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+		return name;
+	}
+
+	public static void unregisterMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+	}
+
+	/**
+	 * Totals for one operation at some moment
+	 */
+	public static final class OperationStats {
+
+		private final String operation;
+
+		private final long count;
+
+		private final long items;
+
+		private final long totalNanos;
+
+		private final long maxNanos;
+
+		private final long[] histogram;
+
+		@ConstructorProperties({ "operation", "count", "items", "totalNanos", "maxNanos", "histogram" })
+		public OperationStats(String operation, long count, long items, long totalNanos, long maxNanos, long[] histogram) {
+			this.operation = operation;
+			this.count = count;
+			this.items = items;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			this.histogram = histogram.clone();
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return features or vertices processed
+		 */
+		public long getItems() {
+			return items;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * @return operations per latency bucket, bucket b counting times below 2^b nanoseconds
+		 */
+		public long[] getHistogram() {
+			return histogram.clone();
+		}
+
+		public double getMeanNanos() {
+			return count == 0 ? 0.0 : (double) totalNanos / count;
+		}
+
+		/**
+		 * @return items per second of time spent in the operation, 0 for untimed operations
+		 */
+		public double getItemsPerSecond() {
+			return totalNanos == 0 ? 0.0 : items * 1e9 / totalNanos;
+		}
+
+		/**
+		 * Upper bound of the bucket holding a percentile, so within a factor of two
+		 * @param percentile 0 to 100
+		 * @return nanoseconds, 0 with no timed operations
+		 */
+		public long getPercentileNanos(double percentile) {
+			long timed = 0;
+			for (long value : histogram) {
+				timed += value;
+			}
+			if (timed == 0) {
+				return 0L;
+			}
+
+			long rank = Math.max(1, (long) Math.ceil(timed * percentile / 100.0));
+			long seen = 0;
+			for (int b = 0; b < histogram.length; b++) {
+				seen += histogram[b];
+				if (seen >= rank) {
+					return b == 0 ? 0L : Math.min(maxNanos, b >= 63 ? Long.MAX_VALUE : (1L << b) - 1);
+				}
+			}
+			return maxNanos;
+		}
+
+		public long getMedianNanos() {
+			return getPercentileNanos(50.0);
+		}
+
+		public long getP99Nanos() {
+			return getPercentileNanos(99.0);
+		}
+
+		@Override
+		public String toString() {
+			return "OperationStats{operation=" + operation + ", count=" + count + ", items=" + items
+					+ ", meanNanos=" + getMeanNanos() + ", p99Nanos=" + getP99Nanos() + "}";
+		}
+	}
+
+	/**
+	 * Striped counters for one operation
+	 */
+	private static final class OperationMetrics {
+
+		final LongAdder count = new LongAdder();
+
+		final LongAdder items = new LongAdder();
+
+		final LongAdder nanos = new LongAdder();
+
+		final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+		final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+		OperationMetrics() {
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = new LongAdder();
+			}
+		}
+
+		void reset() {
+			count.reset();
+			items.reset();
+			nanos.reset();
+			maxNanos.reset();
+			for (LongAdder bucket : histogram) {
+				bucket.reset();
+			}
+		}
+	}
+
+	/**
+	 * The MXBean view of the static metrics
+	 */
+	private static final class Bean implements GisMetricsMXBean {
+
+		@Override
+		public boolean isEnabled() {
+			return GisMetrics.isEnabled();
+		}
+
+		@Override
+		public void setEnabled(boolean enabled) {
+			GisMetrics.setEnabled(enabled);
+		}
+
+		@Override
+		public List<OperationStats> getOperations() {
+			return GisMetrics.getStats();
+		}
+
+		@Override
+		public OperationStats getOperation(String operation) {
+			return GisMetrics.getStats(Operation.valueOf(operation));
+		}
+
+		@Override
+		public void reset() {
+			GisMetrics.reset();
+		}
+	}
+}
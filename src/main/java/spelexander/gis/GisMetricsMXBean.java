@@ -0,0 +1,25 @@
+package spelexander.gis;
+
+import java.util.List;
+
+import spelexander.gis.GisMetrics.OperationStats;
+
+/**
+ * JMX view of {@link GisMetrics}, registered with {@link GisMetrics#registerMBean()}
+ */
+public interface GisMetricsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	List<OperationStats> getOperations();
+
+	/**
+	 * @param operation a {@link GisMetrics.Operation} name
+	 * @return
+	 */
+	OperationStats getOperation(String operation);
+
+	void reset();
+}
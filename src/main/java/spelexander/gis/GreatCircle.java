@@ -0,0 +1,182 @@
+package spelexander.gis;
+
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Distances on the sphere from a point to boxes and rings, in meters with the same
+ * radius as {@link MapGisGridUtil#distance(double, double, double, double)}.
+ * Ring edges are great circle arcs.
+ */
+final class GreatCircle {
+
+	private static final double EARTH_RADIUS_METERS = 6371 * 1000.0;
+
+	/**
+	 * Shrinks box distances so rounding never lifts them above an exact distance
+	 */
+	private static final double BOUND_SCALE = 1.0 - 1e-9;
+
+	private GreatCircle() {
+	}
+
+	/**
+	 * Least distance from a point to any point of a longitude/latitude box
+	 * @return meters, slightly under the exact value
+	 */
+	static double distanceToBox(double longitude, double latitude, double minLongitude, double minLatitude,
+			double maxLongitude, double maxLatitude) {
+
+		double width = maxLongitude - minLongitude;
+		double offset = ((longitude - minLongitude) % 360.0 + 360.0) % 360.0;
+
+		if (width >= 360.0 || offset <= width) {
+			// Within the box's meridians the nearest point is straight north or south
+			if (latitude > maxLatitude) {
+				return Math.toRadians(latitude - maxLatitude) * EARTH_RADIUS_METERS * BOUND_SCALE;
+			}
+			if (latitude < minLatitude) {
+				return Math.toRadians(minLatitude - latitude) * EARTH_RADIUS_METERS * BOUND_SCALE;
+			}
+			return 0.0;
+		}
+
+		// Otherwise it is on one of the two meridian edges
+		double west = distanceToMeridian(longitude, latitude, minLongitude, minLatitude, maxLatitude);
+		double east = distanceToMeridian(longitude, latitude, maxLongitude, minLatitude, maxLatitude);
+		return Math.min(west, east) * EARTH_RADIUS_METERS * BOUND_SCALE;
+	}
+
+	/**
+	 * Least angle from a point to a stretch of meridian
+	 */
+	private static double distanceToMeridian(double longitude, double latitude, double meridian,
+			double minLatitude, double maxLatitude) {
+		double lat = Math.toRadians(latitude);
+		double lng = Math.toRadians(longitude - meridian);
+
+		// Latitude on the meridian's great circle nearest the point, the distance grows away from it
+		double nearest = Math.toDegrees(Math.atan2(Math.sin(lat), Math.cos(lat) * Math.cos(lng)));
+
+		double best = Math.min(angle(longitude, latitude, meridian, minLatitude),
+				angle(longitude, latitude, meridian, maxLatitude));
+		if (nearest > minLatitude && nearest < maxLatitude) {
+			best = Math.min(best, angle(longitude, latitude, meridian, nearest));
+		}
+		return best;
+	}
+
+	/**
+	 * Furthest latitude towards the pole reached by an arc between two points in a box
+	 * at most width degrees apart, always at or beyond the given latitude
+	 * @param latitude the box edge nearest the pole
+	 * @param width in degrees
+	 * @return
+	 */
+	static double arcLatitude(double latitude, double width) {
+		if (latitude == 0.0 || latitude >= 90.0 || latitude <= -90.0) {
+			return latitude;
+		}
+		if (width >= 180.0) {
+			return latitude > 0 ? 90.0 : -90.0;
+		}
+
+		// The worst arc joins two points on the edge, its vertex is midway between them
+		double peak = Math.atan(Math.tan(Math.toRadians(latitude)) / Math.cos(Math.toRadians(width / 2.0)));
+		return Math.toDegrees(peak);
+	}
+
+	/**
+	 * Distance from a point to a ring, zero inside it
+	 * @param ring
+	 * @param inside whether the point is inside the ring
+	 * @return meters, infinite for an empty ring
+	 */
+	static double distanceToRing(double longitude, double latitude, List<LngLatAlt> ring, boolean inside) {
+		int size = ring.size();
+		if (size == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (inside) {
+			return 0.0;
+		}
+
+		double[] p = toVector(longitude, latitude);
+		double best = Double.POSITIVE_INFINITY;
+
+		LngLatAlt previous = ring.get(size - 1);
+		double[] a = toVector(previous.getLongitude(), previous.getLatitude());
+		for (LngLatAlt current : ring) {
+			double[] b = toVector(current.getLongitude(), current.getLatitude());
+			best = Math.min(best, segmentAngle(p, a, b));
+			a = b;
+		}
+
+		return best * EARTH_RADIUS_METERS;
+	}
+
+	/**
+	 * Angle from p to the shorter arc a-b, all unit vectors
+	 */
+	private static double segmentAngle(double[] p, double[] a, double[] b) {
+		double endpoints = Math.min(vectorAngle(p, a), vectorAngle(p, b));
+
+		// Normal of the arc's great circle
+		double nx = a[1] * b[2] - a[2] * b[1];
+		double ny = a[2] * b[0] - a[0] * b[2];
+		double nz = a[0] * b[1] - a[1] * b[0];
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length < 1e-15) {
+			return endpoints;
+		}
+		nx /= length;
+		ny /= length;
+		nz /= length;
+
+		// Foot of p on the great circle, only useful when it falls between a and b
+		double across = p[0] * nx + p[1] * ny + p[2] * nz;
+		double fx = p[0] - across * nx;
+		double fy = p[1] - across * ny;
+		double fz = p[2] - across * nz;
+		double along = Math.sqrt(fx * fx + fy * fy + fz * fz);
+		if (along < 1e-15) {
+			return endpoints;
+		}
+
+		// a x f and f x b both along n when f is on the arc
+		double afn = (a[1] * fz - a[2] * fy) * nx + (a[2] * fx - a[0] * fz) * ny + (a[0] * fy - a[1] * fx) * nz;
+		double fbn = (fy * b[2] - fz * b[1]) * nx + (fz * b[0] - fx * b[2]) * ny + (fx * b[1] - fy * b[0]) * nz;
+		if (afn < 0 || fbn < 0) {
+			return endpoints;
+		}
+
+		return Math.min(endpoints, Math.atan2(Math.abs(across), along));
+	}
+
+	private static double[] toVector(double longitude, double latitude) {
+		double lat = Math.toRadians(latitude);
+		double lng = Math.toRadians(longitude);
+		double cos = Math.cos(lat);
+		return new double[] { cos * Math.cos(lng), cos * Math.sin(lng), Math.sin(lat) };
+	}
+
+	private static double vectorAngle(double[] a, double[] b) {
+		double cx = a[1] * b[2] - a[2] * b[1];
+		double cy = a[2] * b[0] - a[0] * b[2];
+		double cz = a[0] * b[1] - a[1] * b[0];
+		return Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), a[0] * b[0] + a[1] * b[1] + a[2] * b[2]);
+	}
+
+	/**
+	 * Haversine central angle, as {@link MapGisGridUtil#distance(double, double, double, double)}
+	 */
+	private static double angle(double lon1, double lat1, double lon2, double lat2) {
+		double latDistance = Math.toRadians(lat2 - lat1);
+		double lonDistance = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+				* Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+		return 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+}
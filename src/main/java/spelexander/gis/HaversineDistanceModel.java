@@ -0,0 +1,43 @@
+package spelexander.gis;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Great circle distances on a sphere, the reference for the other models
+ */
+public class HaversineDistanceModel implements DistanceModel {
+
+	@Override
+	public double distance(double lon1, double lat1, double lon2, double lat2) {
+		return MapGisGridUtil.haversine(lon1, lat1, lon2, lat2);
+	}
+
+	@Override
+	public LngLatAlt move(LngLatAlt point, double distanceInMetres, double bearing) {
+
+		double longitude = point.getLongitude();
+		double latitude = point.getLatitude();
+
+		double brngRad = Math.toRadians(bearing);
+		double latRad = Math.toRadians(latitude);
+		double lonRad = Math.toRadians(longitude);
+		int earthRadiusInMetres = 6371000;
+		double distFrac = distanceInMetres / earthRadiusInMetres;
+
+		double latitudeResult = Math.asin(Math.sin(latRad) * Math.cos(distFrac) + Math.cos(latRad) * Math.sin(distFrac) * Math.cos(brngRad));
+		double a = Math.atan2(Math.sin(brngRad) * Math.sin(distFrac) * Math.cos(latRad), Math.cos(distFrac) - Math.sin(latRad) * Math.sin(latitudeResult));
+		double longitudeResult = (lonRad + a + 3 * Math.PI) % (2 * Math.PI) - Math.PI;
+
+		return new LngLatAlt(Math.toDegrees(longitudeResult), Math.toDegrees(latitudeResult));
+	}
+
+	@Override
+	public double getMaxError(double extentMeters, double latitude) {
+		return 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "HaversineDistanceModel";
+	}
+}
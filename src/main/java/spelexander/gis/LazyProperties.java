@@ -0,0 +1,126 @@
+package spelexander.gis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A feature's GeoJson properties, kept as the raw JSON object and only parsed into
+ * a map the first time a value is asked for. Immutable and safe to share between
+ * threads, concurrent first reads may parse more than once.
+ */
+public final class LazyProperties {
+
+	public static final LazyProperties EMPTY = new LazyProperties(null, Collections.emptyMap());
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<LinkedHashMap<String, Object>>() {
+	};
+
+	private final byte[] json;
+
+	private volatile Map<String, Object> values;
+
+	private LazyProperties(byte[] json, Map<String, Object> values) {
+		this.json = json;
+		this.values = values;
+	}
+
+	/**
+	 * @param json a UTF-8 JSON object, not copied
+	 * @return
+	 */
+	public static LazyProperties fromJson(byte[] json) {
+		return new LazyProperties(json, null);
+	}
+
+	/**
+	 * Properties which are already parsed
+	 * @param values copied
+	 * @return
+	 */
+	public static LazyProperties of(Map<String, Object> values) {
+		if (values == null || values.isEmpty()) {
+			return EMPTY;
+		}
+		return new LazyProperties(null, Collections.unmodifiableMap(new LinkedHashMap<>(values)));
+	}
+
+	/**
+	 * @return whether the properties have been parsed
+	 */
+	public boolean isParsed() {
+		return values != null;
+	}
+
+	/**
+	 * @return bytes of raw JSON held, 0 when built from a map
+	 */
+	public int getRawSize() {
+		return json == null ? 0 : json.length;
+	}
+
+	public boolean isEmpty() {
+		return json == null ? values.isEmpty() : json.length <= 2;
+	}
+
+	/**
+	 * @param key
+	 * @return the value, a String, Number, Boolean, List or Map, null if missing
+	 */
+	public Object get(String key) {
+		return asMap().get(key);
+	}
+
+	/**
+	 * @param key
+	 * @return the value as text, null if missing or null
+	 */
+	public String getString(String key) {
+		Object value = get(key);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Parse if needed
+	 * @return unmodifiable, in document order
+	 */
+	public Map<String, Object> asMap() {
+		Map<String, Object> result = values;
+		if (result == null) {
+			try {
+				result = Collections.unmodifiableMap(MAPPER.readValue(json, MAP_TYPE));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			values = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the properties as a JSON object
+	 */
+	public String toJson() {
+		if (json != null) {
+			return new String(json, StandardCharsets.UTF_8);
+		}
+		try {
+			return MAPPER.writeValueAsString(values);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LazyProperties" + toJson();
+	}
+}
@@ -0,0 +1,157 @@
+package spelexander.gis;
+
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+import org.geojson.LngLatAlt;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Simplified versions of each annotation's projected ring at several tolerances,
+ * for one {@link ProjectionContext}, so drawing at low zoom picks a precomputed
+ * coarse outline instead of projecting and filling every vertex.
+ *
+ * Level 0 is the full ring, exactly as {@link MapGisGridUtil#getPolygonShape(GisGridAnnotation, ProjectionContext)}.
+ * Level k simplifies with a tolerance of finestTolerance * 2^(k - 1) grid units.
+ * Levels are built together the first time an annotation is drawn and held with
+ * weak, identity compared keys, so dropped annotations are released. Call
+ * {@link #invalidate(GisGridAnnotation)} after editing an annotation in place.
+ * Safe to share between threads.
+ */
+public class LevelOfDetailCache {
+
+	/**
+	 * Largest deviation in pixels that still draws the same as the full ring
+	 */
+	public static final double VISUAL_TOLERANCE_PIXELS = 0.5;
+
+	private final ProjectionContext context;
+
+	private final double finestTolerance;
+
+	private final int levels;
+
+	private final ConcurrentMap<GisGridAnnotation, Polygon[]> cache = new MapMaker().weakKeys().makeMap();
+
+	/**
+	 * @param context projection the levels are built for
+	 * @param finestTolerance tolerance of level 1 in grid units
+	 * @param levels number of simplified levels, each doubling the tolerance
+	 */
+	public LevelOfDetailCache(ProjectionContext context, double finestTolerance, int levels) {
+		if (finestTolerance <= 0.0) {
+			throw new IllegalArgumentException("Tolerance must be positive");
+		}
+		if (levels < 0) {
+			throw new IllegalArgumentException("Levels must not be negative");
+		}
+		this.context = Objects.requireNonNull(context);
+		this.finestTolerance = finestTolerance;
+		this.levels = levels;
+	}
+
+	/**
+	 * Levels from a quarter of a grid unit, enough for drawing down to 1/64 pixel per grid unit
+	 * @param context
+	 */
+	public LevelOfDetailCache(ProjectionContext context) {
+		this(context, 0.25, 8);
+	}
+
+	public ProjectionContext getContext() {
+		return context;
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * @param level 0 for the full ring
+	 * @return tolerance in grid units
+	 */
+	public double getTolerance(int level) {
+		return level == 0 ? 0.0 : finestTolerance * Math.pow(2.0, level - 1);
+	}
+
+	/**
+	 * The coarsest level whose deviation stays within {@link #VISUAL_TOLERANCE_PIXELS}
+	 * @param pixelsPerUnit drawing scale, pixels per grid unit
+	 * @return
+	 */
+	public int getLevel(double pixelsPerUnit) {
+		double allowed = VISUAL_TOLERANCE_PIXELS / pixelsPerUnit;
+		int level = 0;
+		while (level < levels && PolygonSimplifier.getMaxDeviation(getTolerance(level + 1)) <= allowed) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * The annotation's outline at the coarsest level that draws exactly at this scale
+	 * @param annotation
+	 * @param pixelsPerUnit drawing scale, pixels per grid unit
+	 * @return
+	 */
+	public Shape getPolygonShape(GisGridAnnotation annotation, double pixelsPerUnit) {
+		return getPolygonShapeAtLevel(annotation, getLevel(pixelsPerUnit));
+	}
+
+	/**
+	 * @param annotation
+	 * @param level 0 to {@link #getLevels()}
+	 * @return a new polygon, free to modify
+	 */
+	public Shape getPolygonShapeAtLevel(GisGridAnnotation annotation, int level) {
+		if (level < 0 || level > levels) {
+			throw new IllegalArgumentException("Level must be between 0 and " + levels);
+		}
+
+		Polygon polygon = cache.computeIfAbsent(annotation, this::build)[level];
+		return new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints);
+	}
+
+	public void invalidate(GisGridAnnotation annotation) {
+		cache.remove(annotation);
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	private Polygon[] build(GisGridAnnotation annotation) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		int size = ring.size();
+		double[] xs = new double[size];
+		double[] ys = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			LngLatAlt point = ring.get(i);
+			xs[i] = context.toGridX(point.getLongitude());
+			ys[i] = context.toGridY(point.getLatitude());
+		}
+
+		Polygon[] result = new Polygon[levels + 1];
+		int[] kept = new int[size];
+		for (int level = 0; level <= levels; level++) {
+			int count = PolygonSimplifier.simplify(xs, ys, size, getTolerance(level), kept);
+			result[level] = toPolygon(xs, ys, kept, count);
+		}
+		return result;
+	}
+
+	private static Polygon toPolygon(double[] xs, double[] ys, int[] kept, int count) {
+		int[] x = new int[count];
+		int[] y = new int[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = (int) Math.round(xs[kept[i]]);
+			y[i] = (int) Math.round(ys[kept[i]]);
+		}
+		return new Polygon(x, y, count);
+	}
+}
@@ -1,12 +1,27 @@
 package spelexander.gis;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPOutputStream;
 
 import org.geojson.Feature;
 import org.geojson.FeatureCollection;
@@ -16,28 +31,157 @@ import org.geojson.LngLatAlt;
 import org.geojson.Point;
 import org.geojson.Polygon;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class MapGisGridAnnotationReader implements GisGridAnnotationReader<GisGridAnnotation> {
 
+	/**
+	 * Shared between calls, ObjectMapper is thread safe once configured
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private boolean lazyProperties = false;
+
+	private String nameProperty = null;
+
+	/**
+	 * Keep each feature's properties as raw JSON, parsed only when first read
+	 * through {@link GisGridAnnotation#getProperties()}. Off by default, when
+	 * properties are dropped.
+	 * @param value
+	 */
+	public void setLazyProperties(boolean value) {
+		lazyProperties = value;
+	}
+
+	public boolean isLazyProperties() {
+		return lazyProperties;
+	}
+
+	/**
+	 * Set each annotation's name from a top level property while reading, whether or
+	 * not properties are kept
+	 * @param key property to use, null for none
+	 */
+	public void setNameProperty(String key) {
+		nameProperty = key;
+	}
+
+	public String getNameProperty() {
+		return nameProperty;
+	}
+
+	/**
+	 * @return whether features' properties are needed at all
+	 */
+	boolean readsProperties() {
+		return lazyProperties || nameProperty != null;
+	}
+
+	/**
+	 * Read every annotation in a GeoJson file
+	 * @param json
+	 * @return
+	 * @throws UncheckedIOException if the file cannot be read or is not GeoJson
+	 * @deprecated use {@link #fromGeoJson(InputStream)}, which throws a checked exception,
+	 * or {@link GeoJsonBulkLoader} for many files
+	 */
+	@Deprecated
 	@Override
 	public List<GisGridAnnotation> fromGeoJson(File json) {
+		try (InputStream inputStream = new FileInputStream(json)) {
+			return fromGeoJson(inputStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Read every annotation in a GeoJson stream, closing it
+	 * @param inputStream
+	 * @return
+	 * @throws IOException if the stream cannot be read or is not GeoJson
+	 */
+	public List<GisGridAnnotation> fromGeoJson(InputStream inputStream) throws IOException {
+		long start = GisMetrics.start();
 
 		List<GisGridAnnotation> result = new ArrayList<>();
+		if (readsProperties()) {
+			// Streaming keeps properties as raw bytes rather than binding them to maps
+			try (GeoJsonAnnotationIterator iterator = openGeoJson(inputStream)) {
+				while (iterator.hasNext()) {
+					result.add(iterator.next());
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		} else {
+			GeoJsonObject object = MAPPER.readValue(inputStream, GeoJsonObject.class);
+			annotationFromGeoJsonObject(object, result);
+		}
+
+		GisMetrics.stop(GisMetrics.Operation.FROM_GEOJSON, start, result.size());
+		return result;
+	}
 
+	/**
+	 * Open a streaming iterator over the annotations in a GeoJson file. The caller
+	 * must close it.
+	 * @param json
+	 * @return
+	 * @throws IOException
+	 */
+	public GeoJsonAnnotationIterator openGeoJson(File json) throws IOException {
+		InputStream inputStream = new FileInputStream(json);
 		try {
-			InputStream inputStream = new FileInputStream(json);
+			return openGeoJson(inputStream);
+		} catch (IOException | RuntimeException e) {
+			// No iterator to close it
+			try {
+				inputStream.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
 
-			GeoJsonObject object = new ObjectMapper().readValue(inputStream, GeoJsonObject.class);
-			annotationFromGeoJsonObject(object, result);
+	/**
+	 * Open a streaming iterator over the annotations in a GeoJson stream. Closing the
+	 * iterator closes the stream.
+	 * @param inputStream
+	 * @return
+	 * @throws IOException
+	 */
+	public GeoJsonAnnotationIterator openGeoJson(InputStream inputStream) throws IOException {
+		return new GeoJsonAnnotationIterator(MAPPER.getFactory().createParser(inputStream), MAPPER, this);
+	}
 
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+	@Override
+	public Stream<GisGridAnnotation> streamGeoJson(File json) throws IOException {
+		GeoJsonAnnotationIterator iterator = openGeoJson(json);
 
-		return result;
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						iterator.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	@Override
+	public void readGeoJson(File json, Consumer<? super GisGridAnnotation> consumer) throws IOException {
+		try (GeoJsonAnnotationIterator iterator = openGeoJson(json)) {
+			while (iterator.hasNext()) {
+				consumer.accept(iterator.next());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 	}
 
 	public void annotationFromGeoJsonObject(GeoJsonObject object, final List<GisGridAnnotation> list) {
@@ -54,15 +198,29 @@ public class MapGisGridAnnotationReader implements GisGridAnnotationReader<GisGr
 			GeoJsonObject geo = feature.getGeometry();
 
 			// recursive for features inside of features..
+			int first = list.size();
 			annotationFromGeoJsonObject(geo, list);
 
+			if (readsProperties()) {
+				Map<String, Object> properties = feature.getProperties() == null ? Collections.<String, Object>emptyMap() : feature.getProperties();
+				Object name = nameProperty == null ? null : properties.get(nameProperty);
+				for (GisGridAnnotation annotation : list.subList(first, list.size())) {
+					if (lazyProperties) {
+						annotation.setProperties(LazyProperties.of(properties));
+					}
+					if (name != null && !(name instanceof Map) && !(name instanceof List)) {
+						annotation.setName(name.toString());
+					}
+				}
+			}
+
 		} else if (object instanceof FeatureCollection) {
 			// Feature
 			FeatureCollection feature = (FeatureCollection) object;
 			List<Feature> features = feature.getFeatures();
 			for (Feature feat: features) {
 				// recursive for features inside of features..
-				annotationFromGeoJsonObject(feat.getGeometry(), list);
+				annotationFromGeoJsonObject(feat, list);
 			}					
 		} else if (object instanceof Point) {
 			// Long Lat Alt point
@@ -85,6 +243,7 @@ public class MapGisGridAnnotationReader implements GisGridAnnotationReader<GisGr
 
 	@Override
 	public String toGeoJson(List<GisGridAnnotation> entity) {
+		long start = GisMetrics.start();
 		String json;
 		try {
 			FeatureCollection featureCollection = new FeatureCollection();
@@ -92,7 +251,8 @@ public class MapGisGridAnnotationReader implements GisGridAnnotationReader<GisGr
 				featureCollection.add(annotation.toFeature());
 			}
 
-			json = new ObjectMapper().writeValueAsString(featureCollection);
+			json = MAPPER.writeValueAsString(featureCollection);
+			GisMetrics.stop(GisMetrics.Operation.TO_GEOJSON, start, entity.size());
 			return json;
 
 		} catch (JsonProcessingException e) {
@@ -102,5 +262,90 @@ public class MapGisGridAnnotationReader implements GisGridAnnotationReader<GisGr
 		return null;
 	}
 
+	/**
+	 * Open a streaming writer onto an output stream. Closing the writer finishes the
+	 * FeatureCollection (and gzip trailer) but leaves the output stream open.
+	 * @param outputStream
+	 * @param gzip
+	 * @param flushBatch features between flushes, 0 to only flush on close
+	 * @return
+	 * @throws IOException
+	 */
+	public GeoJsonAnnotationWriter openGeoJsonWriter(OutputStream outputStream, boolean gzip, int flushBatch) throws IOException {
+		OutputStream target = new FilterOutputStream(outputStream) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+
+		if (gzip) {
+			target = new GZIPOutputStream(target, 8192);
+		}
+
+		return new GeoJsonAnnotationWriter(MAPPER.getFactory().createGenerator(target), flushBatch);
+	}
+
+	/**
+	 * Open a streaming writer onto a character writer, which is left open on close
+	 * @param writer
+	 * @param flushBatch features between flushes, 0 to only flush on close
+	 * @return
+	 * @throws IOException
+	 */
+	public GeoJsonAnnotationWriter openGeoJsonWriter(Writer writer, int flushBatch) throws IOException {
+		JsonGenerator generator = MAPPER.getFactory().createGenerator(writer);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		return new GeoJsonAnnotationWriter(generator, flushBatch);
+	}
+
+	/**
+	 * Open a streaming writer onto a file, replacing any existing content
+	 * @param path
+	 * @param gzip
+	 * @param flushBatch features between flushes, 0 to only flush on close
+	 * @return
+	 * @throws IOException
+	 */
+	public GeoJsonAnnotationWriter openGeoJsonWriter(Path path, boolean gzip, int flushBatch) throws IOException {
+		OutputStream target = new BufferedOutputStream(Files.newOutputStream(path), 65536);
+
+		try {
+			if (gzip) {
+				target = new GZIPOutputStream(target, 65536);
+			}
+			return new GeoJsonAnnotationWriter(MAPPER.getFactory().createGenerator(target), flushBatch);
+		} catch (IOException e) {
+			target.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void writeGeoJson(Iterable<? extends GisGridAnnotation> entities, OutputStream outputStream, boolean gzip) throws IOException {
+		try (GeoJsonAnnotationWriter writer = openGeoJsonWriter(outputStream, gzip, GeoJsonAnnotationWriter.DEFAULT_FLUSH_BATCH)) {
+			writer.writeAll(entities);
+		}
+	}
+
+	@Override
+	public void writeGeoJson(Iterable<? extends GisGridAnnotation> entities, Writer writer) throws IOException {
+		try (GeoJsonAnnotationWriter annotationWriter = openGeoJsonWriter(writer, GeoJsonAnnotationWriter.DEFAULT_FLUSH_BATCH)) {
+			annotationWriter.writeAll(entities);
+		}
+	}
+
+	@Override
+	public void writeGeoJson(Iterable<? extends GisGridAnnotation> entities, Path path, boolean gzip) throws IOException {
+		try (GeoJsonAnnotationWriter writer = openGeoJsonWriter(path, gzip, GeoJsonAnnotationWriter.DEFAULT_FLUSH_BATCH)) {
+			writer.writeAll(entities);
+		}
+	}
 
 }
@@ -13,6 +13,30 @@ import org.geojson.LngLatAlt;
 
 public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 
+	/**
+	 * Volatile as a util may be shared between threads, e.g. by {@link ParallelGisGridUtil}
+	 */
+	private volatile DistanceModel distanceModel;
+
+	public MapGisGridUtil() {
+		this(DistanceModel.HAVERSINE);
+	}
+
+	/**
+	 * @param distanceModel used for every distance and move, see {@link DistanceModel#forTolerance(double, double, double)}
+	 */
+	public MapGisGridUtil(DistanceModel distanceModel) {
+		this.distanceModel = Objects.requireNonNull(distanceModel);
+	}
+
+	public DistanceModel getDistanceModel() {
+		return distanceModel;
+	}
+
+	public void setDistanceModel(DistanceModel distanceModel) {
+		this.distanceModel = Objects.requireNonNull(distanceModel);
+	}
+
 	@Override
 	public ScaleRotation getBestFieldBearing(List<GisGridAnnotation> annotations) {
 		List<LngLatAlt> coords = getLongestLine(annotations);
@@ -74,7 +98,11 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 		Objects.requireNonNull(a);
 		Objects.requireNonNull(b);
 
-		return distance(a, b);
+		DistanceModel model = distanceModel;
+		if (model instanceof HaversineDistanceModel) {
+			GisMetrics.count(GisMetrics.Operation.HAVERSINE, 1);
+		}
+		return model.distance(a.getLongitude(), a.getLatitude(), b.getLongitude(), b.getLatitude());
 	}
 
 	@Override
@@ -95,17 +123,74 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 	@Override
 	public Point transformToXY(LngLatAlt point, LngLatAlt topLeftPoint, Dimension fieldSize, ScaleRotation rotation,
 			WidthHeightProvider params) {
+		long start = GisMetrics.start();
+
+		Point result = toXY(point, topLeftPoint, params);
+
+		GisMetrics.stop(GisMetrics.Operation.TRANSFORM_TO_XY, start, 1);
+		return result;
+	}
+
+	/**
+	 * transformToXY without recording metrics, for the operations built on it
+	 */
+	private Point toXY(LngLatAlt point, LngLatAlt topLeftPoint, WidthHeightProvider params) {
+		DistanceModel model = distanceModel;
+		double topLong = topLeftPoint.getLongitude();
+		double topLat = topLeftPoint.getLatitude();
+
+		return new Point(toX(model, topLong, topLat, point.getLongitude(), params),
+				toY(model, topLong, topLat, point.getLatitude(), params));
+	}
+
+	private static int toX(DistanceModel model, double topLong, double topLat, double longitude, WidthHeightProvider params) {
+		return (int) Math.round(params.getUnitXForMeters(model.distance(topLong, topLat, longitude, topLat)));
+	}
+
+	private static int toY(DistanceModel model, double topLong, double topLat, double latitude, WidthHeightProvider params) {
+		return (int) Math.round(params.getUnitYForMeters(model.distance(topLong, topLat, topLong, latitude)));
+	}
+
+	@Override
+	public void transformToXY(PackedRing ring, LngLatAlt topLeftPoint, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params, int[] xs, int[] ys) {
+		long start = GisMetrics.start();
+		toXY(ring, topLeftPoint, params, xs, ys);
+		GisMetrics.stop(GisMetrics.Operation.TRANSFORM_TO_XY, start, ring.size());
+	}
 
-		LngLatAlt y_change = new LngLatAlt(topLeftPoint.getLongitude(), point.getLatitude());
-		LngLatAlt x_change = new LngLatAlt(point.getLongitude(), topLeftPoint.getLatitude());
+	private void toXY(PackedRing ring, LngLatAlt topLeftPoint, WidthHeightProvider params, int[] xs, int[] ys) {
+		double topLong = topLeftPoint.getLongitude();
+		double topLat = topLeftPoint.getLatitude();
+		double[] coordinates = ring.getCoordinates();
+		int stride = ring.getStride();
+		DistanceModel model = distanceModel;
+
+		for (int i = 0, index = 0; i < ring.size(); i++, index += stride) {
+			xs[i] = toX(model, topLong, topLat, coordinates[index], params);
+			ys[i] = toY(model, topLong, topLat, coordinates[index + 1], params);
+		}
+	}
 
-		double x_distance = this.getDistanceBetween(topLeftPoint, x_change);
-		double y_distance = this.getDistanceBetween(topLeftPoint, y_change);
+	@Override
+	public void transformToXY(QuantizedRing ring, LngLatAlt topLeftPoint, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params, int[] xs, int[] ys) {
+		long start = GisMetrics.start();
+		toXY(ring, topLeftPoint, params, xs, ys);
+		GisMetrics.stop(GisMetrics.Operation.TRANSFORM_TO_XY, start, ring.size());
+	}
 
-		Double x = params.getUnitXForMeters(x_distance);
-		Double y = params.getUnitYForMeters(y_distance);	
+	private void toXY(QuantizedRing ring, LngLatAlt topLeftPoint, WidthHeightProvider params, int[] xs, int[] ys) {
+		double topLong = topLeftPoint.getLongitude();
+		double topLat = topLeftPoint.getLatitude();
+		DistanceModel model = distanceModel;
 
-		return new Point((int) Math.round(x), (int) Math.round(y));
+		QuantizedRing.Cursor cursor = ring.cursor();
+		while (cursor.next()) {
+			int i = cursor.getIndex();
+			xs[i] = toX(model, topLong, topLat, cursor.getLongitude(), params);
+			ys[i] = toY(model, topLong, topLat, cursor.getLatitude(), params);
+		}
 	}
 
 	@Override
@@ -124,12 +209,14 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 				LngLatAlt y_change = new LngLatAlt(centerPoint.getLongitude(), p.getLatitude());
 				LngLatAlt x_change = new LngLatAlt(p.getLongitude(), centerPoint.getLatitude());
 
-				double x = this.getDistanceBetween(x_change, centerPoint);
+				double x = this.distanceModel.distance(x_change.getLongitude(), x_change.getLatitude(),
+						centerPoint.getLongitude(), centerPoint.getLatitude());
 				if (x > max_x) {
 					max_x = x;
 				}
 
-				double y = this.getDistanceBetween(y_change, centerPoint);
+				double y = this.distanceModel.distance(y_change.getLongitude(), y_change.getLatitude(),
+						centerPoint.getLongitude(), centerPoint.getLatitude());
 				if (y > max_y) {
 					max_y = y;
 				}
@@ -142,17 +229,120 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 		return new Dimension(plotsX + params.getAdditionalX(), plotsY + params.getAdditionalY());
 	}
 
+	/**
+	 * Exact test against the projected polygon, without building an index. For repeated
+	 * queries against the same annotation use
+	 * {@link #prepare(GisGridAnnotation, LngLatAlt, Dimension, ScaleRotation, WidthHeightProvider)}
+	 */
 	@Override
 	public Boolean doesPointIntersect(Point point, GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize,
 			ScaleRotation rotation, WidthHeightProvider params) {
 
-		Shape shape = getPolygonShape(annotation, topLeft, fieldSize, rotation, params);
-		return shape.getBounds2D().contains(point.x, point.y);
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		int[] xs = new int[ring.size()];
+		int[] ys = new int[ring.size()];
+
+		int count = 0;
+		for (LngLatAlt vertex : ring) {
+			Point p = this.toXY(vertex, topLeft, params);
+			xs[count] = p.x;
+			ys[count] = p.y;
+			count++;
+		}
+
+		return PreparedAnnotation.contains(xs, ys, count, point.x, point.y);
+	}
+
+	@Override
+	public PreparedAnnotation prepare(GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		double[] xs = new double[ring.size()];
+		double[] ys = new double[ring.size()];
+
+		int count = 0;
+		for (LngLatAlt point : ring) {
+			Point p = this.toXY(point, topLeft, params);
+			xs[count] = p.x;
+			ys[count] = p.y;
+			count++;
+		}
+
+		return new PreparedAnnotation(annotation, xs, ys);
+	}
+
+	@Override
+	public Shape getPolygonShape(GisGridAnnotation annotation, ProjectionContext context) {
+		long start = GisMetrics.start();
+		Shape shape = GisGridUtil.super.getPolygonShape(annotation, context);
+
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, annotation.getExteriorRing().size());
+		return shape;
+	}
+
+	/**
+	 * Simplified with {@link PolygonSimplifier}, for repeated drawing use a {@link LevelOfDetailCache}
+	 */
+	@Override
+	public Shape getPolygonShape(GisGridAnnotation annotation, ProjectionContext context, double tolerance) {
+		long start = GisMetrics.start();
+		Shape shape = GisGridUtil.super.getPolygonShape(annotation, context, tolerance);
+
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, annotation.getExteriorRing().size());
+		return shape;
+	}
+
+	@Override
+	public Shape getPolygonShape(PackedRing ring, ProjectionContext context) {
+		long start = GisMetrics.start();
+		Shape shape = GisGridUtil.super.getPolygonShape(ring, context);
+
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, ring.size());
+		return shape;
+	}
+
+	@Override
+	public Shape getPolygonShape(QuantizedRing ring, ProjectionContext context) {
+		long start = GisMetrics.start();
+		Shape shape = GisGridUtil.super.getPolygonShape(ring, context);
+
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, ring.size());
+		return shape;
+	}
+
+	@Override
+	public Shape getPolygonShape(QuantizedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		long start = GisMetrics.start();
+
+		int size = ring.size();
+		int[] xs = new int[size];
+		int[] ys = new int[size];
+		this.toXY(ring, topLeft, params, xs, ys);
+
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, size);
+		return new java.awt.Polygon(xs, ys, size);
+	}
+
+	@Override
+	public Shape getPolygonShape(PackedRing ring, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		long start = GisMetrics.start();
+
+		int size = ring.size();
+		int[] xs = new int[size];
+		int[] ys = new int[size];
+		this.toXY(ring, topLeft, params, xs, ys);
+
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, size);
+		return new java.awt.Polygon(xs, ys, size);
 	}
 
 	@Override
 	public Shape getPolygonShape(GisGridAnnotation annotation, LngLatAlt topLeft, Dimension fieldSize, 
 			ScaleRotation rotation, WidthHeightProvider params, Function<Point,Point> pointMutator) {
+		long start = GisMetrics.start();
 
 		int size = annotation.getExteriorRing().size();
 		int[] xs = new int[size];
@@ -160,7 +350,7 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 
 		int count = 0;
 		for (LngLatAlt point : annotation.getExteriorRing()) {
-			Point p = this.transformToXY(point, topLeft, fieldSize, rotation, params);
+			Point p = this.toXY(point, topLeft, params);
 
 			if (pointMutator != null) {
 				p = pointMutator.apply(p);
@@ -173,6 +363,7 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 			count++;
 		}
 
+		GisMetrics.stop(GisMetrics.Operation.POLYGON_SHAPE, start, size);
 		return new java.awt.Polygon(xs, ys, size);
 	}
 
@@ -186,13 +377,27 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 	 * @returns Distance in Meters
 	 */
 	public static double distance(LngLatAlt first, LngLatAlt second) {
+		return distance(first.getLongitude(), first.getLatitude(), second.getLongitude(), second.getLatitude());
+	}
 
-		double lon1 = first.getLongitude();
-		double lon2 = second.getLongitude();
-
-		double lat1 = first.getLatitude();
-		double lat2 = second.getLatitude();
+	/**
+	 * Haversine distance in meters between two longitude/latitude pairs, see
+	 * {@link #distance(LngLatAlt, LngLatAlt)}
+	 * @param lon1
+	 * @param lat1
+	 * @param lon2
+	 * @param lat2
+	 * @return Distance in Meters
+	 */
+	public static double distance(double lon1, double lat1, double lon2, double lat2) {
+		GisMetrics.count(GisMetrics.Operation.HAVERSINE, 1);
+		return haversine(lon1, lat1, lon2, lat2);
+	}
 
+	/**
+	 * {@link #distance(double, double, double, double)} without recording metrics, for loops inside the library
+	 */
+	static double haversine(double lon1, double lat1, double lon2, double lat2) {
 		final int R = 6371; // Radius of the earth
 
 		double latDistance = Math.toRadians(lat2 - lat1);
@@ -268,9 +473,13 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 	public List<GisGridAnnotation> rotateTo(List<GisGridAnnotation> annotations, ScaleRotation rot, RotationType type) {
 		LngLatAlt centerPoint = this.getCenterPoint(annotations);
 		List<GisGridAnnotation> result = new ArrayList<>();
+		if (centerPoint == null) {
+			return result;
+		}
 
+		RotationTransform transform = getRotationTransform(centerPoint, rot, type);
 		for (GisGridAnnotation annotation : annotations) {
-			result.add(this.rotateTo(annotation, centerPoint, rot, type));
+			result.add(transform.apply(annotation));
 		}
 
 		return result;
@@ -278,48 +487,12 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 
 	@Override
 	public GisGridAnnotation rotateTo(GisGridAnnotation annotation, LngLatAlt centerPoint, ScaleRotation rot, RotationType type) {
-		List<LngLatAlt> points = new ArrayList<>();
-
-		for (LngLatAlt point : annotation.getExteriorRing()) {
-			points.add(rotateTo(point, centerPoint, rot, type));
-		}
-
-		GisGridAnnotation poly = new GisGridAnnotation(points);
-		return poly;
+		return getRotationTransform(centerPoint, rot, type).apply(annotation);
 	}
 
 	@Override
 	public LngLatAlt rotateTo(LngLatAlt point, LngLatAlt centerPoint, ScaleRotation rot, RotationType type) {
-
-		double angle = 0.0;
-
-		switch (type) {
-		case NORTH:
-			if (rot.bearing == 0.0) {
-				return point;
-			} else {
-				// Negative bearing for clockwise rotation
-				angle = -rot.bearing;
-			}
-			break;
-		case REVERT:			
-			if (rot.bearing == 0.0) {
-				return point;
-			} else {
-				angle = rot.bearing - 360.0;
-			}
-			break;
-		default:
-			break;	
-		}
-
-		double newX = centerPoint.getLongitude() + (point.getLongitude() - centerPoint.getLongitude()) 
-				* Math.cos(angle) - (point.getLatitude() - centerPoint.getLatitude()) * Math.sin(angle);
-
-		double newY = centerPoint.getLatitude() + (point.getLongitude() - centerPoint.getLongitude()) 
-				* Math.sin(angle) + (point.getLatitude() - centerPoint.getLatitude()) * Math.cos(angle);
-
-		return new LngLatAlt(newX, newY);
+		return getRotationTransform(centerPoint, rot, type).apply(point);
 	}
 
 
@@ -331,21 +504,7 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 	 * @return
 	 */
 	public LngLatAlt movePoint(LngLatAlt point, double distanceInMetres, double bearing) {
-
-		double longitude = point.getLongitude();
-		double latitude = point.getLatitude();
-
-		double brngRad = Math.toRadians(bearing);
-		double latRad = Math.toRadians(latitude);
-		double lonRad = Math.toRadians(longitude);
-		int earthRadiusInMetres = 6371000;
-		double distFrac = distanceInMetres / earthRadiusInMetres;
-
-		double latitudeResult = Math.asin(Math.sin(latRad) * Math.cos(distFrac) + Math.cos(latRad) * Math.sin(distFrac) * Math.cos(brngRad));
-		double a = Math.atan2(Math.sin(brngRad) * Math.sin(distFrac) * Math.cos(latRad), Math.cos(distFrac) - Math.sin(latRad) * Math.sin(latitudeResult));
-		double longitudeResult = (lonRad + a + 3 * Math.PI) % (2 * Math.PI) - Math.PI;
-
-		return new LngLatAlt(Math.toDegrees(longitudeResult), Math.toDegrees(latitudeResult));
+		return distanceModel.move(point, distanceInMetres, bearing);
 	}
 
 	@Override
@@ -355,6 +514,13 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 		LngLatAlt center = this.getCenterPoint(annotations);
 		//		annotations = this.rotateToNorth(annotations, rotation);
 
+		return getTopLeftPoint(center, fieldSize, rotation, params);
+	}
+
+	@Override
+	public LngLatAlt getTopLeftPoint(LngLatAlt center, Dimension fieldSize, ScaleRotation rotation,
+			WidthHeightProvider params) {
+
 		double width = params.getMetersForUnitX(fieldSize.getWidth() / 2.0);
 		double height = params.getMetersForUnitY(fieldSize.getHeight() / 2.0);
 
@@ -388,7 +554,8 @@ public class MapGisGridUtil implements GisGridUtil<GisGridAnnotation> {
 
 				LngLatAlt point2 = points.get(count);
 
-				double distance = this.getDistanceBetween(point, point2);
+				double distance = this.distanceModel.distance(point.getLongitude(), point.getLatitude(),
+						point2.getLongitude(), point2.getLatitude());
 				if (distance > max_distance) {
 					max_distance = distance;
 					a = point;
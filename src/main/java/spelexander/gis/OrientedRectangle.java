@@ -0,0 +1,277 @@
+package spelexander.gis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * A rectangle of some width and height in meters, centered on a point and turned
+ * so its width runs along a bearing.
+ *
+ * {@link #minimumArea(List)} finds the smallest such rectangle around a set of
+ * annotations (convex hull then rotating calipers, O(n log n)), which gives the
+ * field bearing and size that fit the annotations most tightly.
+ */
+public class OrientedRectangle {
+
+	private final LngLatAlt center;
+
+	private final double bearing;
+
+	private final double width;
+
+	private final double height;
+
+	/**
+	 * @param center
+	 * @param bearing direction of the width in degrees, 0 to 180
+	 * @param width in meters, the longer side
+	 * @param height in meters
+	 */
+	public OrientedRectangle(LngLatAlt center, double bearing, double width, double height) {
+		this.center = center;
+		this.bearing = bearing;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Minimum area rectangle around every point of the annotations' exterior rings,
+	 * measured on the local tangent plane at their mean point
+	 * @param annotations
+	 * @return null when there are no points
+	 */
+	public static OrientedRectangle minimumArea(List<GisGridAnnotation> annotations) {
+		int count = 0;
+		double sumLong = 0;
+		double sumLat = 0;
+		for (GisGridAnnotation annotation : annotations) {
+			for (LngLatAlt point : annotation.getExteriorRing()) {
+				sumLong += point.getLongitude();
+				sumLat += point.getLatitude();
+				count++;
+			}
+		}
+		if (count == 0) {
+			return null;
+		}
+
+		double originLong = sumLong / count;
+		double originLat = sumLat / count;
+		double metersPerDegreeLat = ProjectionContext.EARTH_RADIUS_METERS * Math.PI / 180.0;
+		double metersPerDegreeLong = metersPerDegreeLat * Math.cos(Math.toRadians(originLat));
+
+		double[] xs = new double[count];
+		double[] ys = new double[count];
+		int index = 0;
+		for (GisGridAnnotation annotation : annotations) {
+			for (LngLatAlt point : annotation.getExteriorRing()) {
+				xs[index] = (point.getLongitude() - originLong) * metersPerDegreeLong;
+				ys[index] = (point.getLatitude() - originLat) * metersPerDegreeLat;
+				index++;
+			}
+		}
+
+		// x east, y north in meters from the origin
+		double[] rect = minimumArea(xs, ys);
+
+		LngLatAlt center = new LngLatAlt(originLong + rect[0] / metersPerDegreeLong, originLat + rect[1] / metersPerDegreeLat);
+		return new OrientedRectangle(center, rect[2], rect[3], rect[4]);
+	}
+
+	/**
+	 * Minimum area rectangle around planar points
+	 * @param xs
+	 * @param ys
+	 * @return center x, center y, bearing of the long side (0 to 180, clockwise from +y), long side, short side
+	 */
+	static double[] minimumArea(double[] xs, double[] ys) {
+		int[] hull = convexHull(xs, ys);
+		int h = hull.length;
+
+		if (h == 1) {
+			return new double[] { xs[hull[0]], ys[hull[0]], 0.0, 0.0, 0.0 };
+		}
+		if (h == 2) {
+			double dx = xs[hull[1]] - xs[hull[0]];
+			double dy = ys[hull[1]] - ys[hull[0]];
+			return new double[] { (xs[hull[0]] + xs[hull[1]]) / 2.0, (ys[hull[0]] + ys[hull[1]]) / 2.0,
+					toBearing(dx, dy), Math.hypot(dx, dy), 0.0 };
+		}
+
+		double bestArea = Double.POSITIVE_INFINITY;
+		double[] best = null;
+
+		// Calipers: far is the furthest point from the edge, max/min the extremes along it
+		int far = -1;
+		int max = -1;
+		int min = -1;
+
+		for (int i = 0; i < h; i++) {
+			int a = hull[i];
+			int b = hull[(i + 1) % h];
+			double length = Math.hypot(xs[b] - xs[a], ys[b] - ys[a]);
+			double ux = (xs[b] - xs[a]) / length;
+			double uy = (ys[b] - ys[a]) / length;
+			// Left normal, the hull is counter clockwise so it points inwards
+			double nx = -uy;
+			double ny = ux;
+
+			if (far < 0) {
+				far = max = min = i;
+				for (int k = 0; k < h; k++) {
+					int p = hull[k];
+					if (dot(nx, ny, xs[p], ys[p]) > dot(nx, ny, xs[hull[far]], ys[hull[far]])) {
+						far = k;
+					}
+					if (dot(ux, uy, xs[p], ys[p]) > dot(ux, uy, xs[hull[max]], ys[hull[max]])) {
+						max = k;
+					}
+					if (dot(ux, uy, xs[p], ys[p]) < dot(ux, uy, xs[hull[min]], ys[hull[min]])) {
+						min = k;
+					}
+				}
+			} else {
+				far = advance(hull, xs, ys, far, nx, ny);
+				max = advance(hull, xs, ys, max, ux, uy);
+				min = advance(hull, xs, ys, min, -ux, -uy);
+			}
+
+			double base = dot(nx, ny, xs[a], ys[a]);
+			double top = dot(nx, ny, xs[hull[far]], ys[hull[far]]);
+			double right = dot(ux, uy, xs[hull[max]], ys[hull[max]]);
+			double left = dot(ux, uy, xs[hull[min]], ys[hull[min]]);
+
+			double along = right - left;
+			double across = top - base;
+			double area = along * across;
+
+			if (area < bestArea) {
+				bestArea = area;
+
+				double midAlong = (right + left) / 2.0;
+				double midAcross = (top + base) / 2.0;
+				double centerX = ux * midAlong + nx * midAcross;
+				double centerY = uy * midAlong + ny * midAcross;
+
+				if (along >= across) {
+					best = new double[] { centerX, centerY, toBearing(ux, uy), along, across };
+				} else {
+					best = new double[] { centerX, centerY, toBearing(nx, ny), across, along };
+				}
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Move a caliper forward around the hull while that increases its projection on (dx, dy)
+	 */
+	private static int advance(int[] hull, double[] xs, double[] ys, int index, double dx, double dy) {
+		int h = hull.length;
+		for (int steps = 0; steps < h; steps++) {
+			int next = (index + 1) % h;
+			if (dot(dx, dy, xs[hull[next]], ys[hull[next]]) < dot(dx, dy, xs[hull[index]], ys[hull[index]])) {
+				break;
+			}
+			index = next;
+		}
+		return index;
+	}
+
+	private static double dot(double ax, double ay, double bx, double by) {
+		return ax * bx + ay * by;
+	}
+
+	/**
+	 * Bearing of a direction, folded into 0 to 180 as in getBestFieldBearing
+	 */
+	private static double toBearing(double dx, double dy) {
+		double bearing = (Math.toDegrees(Math.atan2(dx, dy)) + 360.0) % 360.0;
+		if (bearing >= 180.0) {
+			bearing = bearing - 180.0;
+		}
+		return bearing;
+	}
+
+	/**
+	 * Andrew's monotone chain, counter clockwise with collinear points dropped
+	 * @param xs
+	 * @param ys
+	 * @return indices of the hull points
+	 */
+	static int[] convexHull(double[] xs, double[] ys) {
+		int n = xs.length;
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> xs[a] != xs[b] ? Double.compare(xs[a], xs[b]) : Double.compare(ys[a], ys[b]));
+
+		int[] hull = new int[2 * n];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			while (k >= 2 && cross(xs, ys, hull[k - 2], hull[k - 1], order[i]) <= 0) {
+				k--;
+			}
+			hull[k++] = order[i];
+		}
+		for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+			while (k >= lower && cross(xs, ys, hull[k - 2], hull[k - 1], order[i]) <= 0) {
+				k--;
+			}
+			hull[k++] = order[i];
+		}
+
+		// The last point repeats the first, a set of identical points collapses to one
+		int size = Math.max(1, k - 1);
+		if (size == 2 && xs[hull[0]] == xs[hull[1]] && ys[hull[0]] == ys[hull[1]]) {
+			size = 1;
+		}
+		return Arrays.copyOf(hull, size);
+	}
+
+	private static double cross(double[] xs, double[] ys, int o, int a, int b) {
+		return (xs[a] - xs[o]) * (ys[b] - ys[o]) - (ys[a] - ys[o]) * (xs[b] - xs[o]);
+	}
+
+	public LngLatAlt getCenter() {
+		return center;
+	}
+
+	/**
+	 * @return direction of the width in degrees, 0 to 180
+	 */
+	public double getBearing() {
+		return bearing;
+	}
+
+	/**
+	 * @return length of the longer side in meters
+	 */
+	public double getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return length of the shorter side in meters
+	 */
+	public double getHeight() {
+		return height;
+	}
+
+	public double getArea() {
+		return width * height;
+	}
+
+	public ScaleRotation toScaleRotation() {
+		return new ScaleRotation(bearing);
+	}
+
+	@Override
+	public String toString() {
+		return "OrientedRectangle{center=" + center + ", bearing=" + bearing + ", width=" + width + ", height=" + height + "}";
+	}
+}
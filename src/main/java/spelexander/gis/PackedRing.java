@@ -0,0 +1,169 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * An annotation's exterior ring stored as one contiguous array of doubles
+ * (lng, lat[, alt] per vertex) instead of a list of LngLatAlt objects.
+ *
+ * Converting to and from {@link GisGridAnnotation} keeps longitude, latitude,
+ * altitude and name. Interior rings and LngLatAlt additional elements are not
+ * used by the grid utilities and are not kept.
+ */
+public class PackedRing {
+
+	private final double[] coordinates;
+
+	private final int stride;
+
+	private final int size;
+
+	private String name = "";
+
+	/**
+	 * @param coordinates interleaved lng, lat (and alt when stride is 3) values, used directly
+	 * @param stride 2 for lng/lat or 3 for lng/lat/alt
+	 */
+	public PackedRing(double[] coordinates, int stride) {
+		if (stride != 2 && stride != 3) {
+			throw new IllegalArgumentException("Stride must be 2 or 3");
+		}
+		if (coordinates.length % stride != 0) {
+			throw new IllegalArgumentException("Coordinates length must be a multiple of the stride");
+		}
+
+		this.coordinates = coordinates;
+		this.stride = stride;
+		this.size = coordinates.length / stride;
+	}
+
+	/**
+	 * Pack the exterior ring of an annotation, altitude is only stored if a point has one
+	 * @param annotation
+	 * @return
+	 */
+	public static PackedRing fromAnnotation(GisGridAnnotation annotation) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+
+		int stride = 2;
+		for (LngLatAlt point : ring) {
+			if (point.hasAltitude()) {
+				stride = 3;
+				break;
+			}
+		}
+
+		double[] coordinates = new double[ring.size() * stride];
+		int index = 0;
+		for (LngLatAlt point : ring) {
+			coordinates[index] = point.getLongitude();
+			coordinates[index + 1] = point.getLatitude();
+			if (stride == 3) {
+				coordinates[index + 2] = point.getAltitude();
+			}
+			index += stride;
+		}
+
+		PackedRing packed = new PackedRing(coordinates, stride);
+		packed.setName(annotation.getName());
+		return packed;
+	}
+
+	/**
+	 * Unpack into a new annotation
+	 * @return
+	 */
+	public GisGridAnnotation toAnnotation() {
+		List<LngLatAlt> ring = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			ring.add(getPoint(i));
+		}
+
+		GisGridAnnotation annotation = new GisGridAnnotation(ring);
+		annotation.setName(name);
+		return annotation;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	public boolean hasAltitude() {
+		return stride == 3;
+	}
+
+	public boolean canUse() {
+		return size >= 3;
+	}
+
+	public double getLongitude(int index) {
+		return coordinates[index * stride];
+	}
+
+	public double getLatitude(int index) {
+		return coordinates[index * stride + 1];
+	}
+
+	/**
+	 * @param index
+	 * @return altitude of the point, NaN if it has none
+	 */
+	public double getAltitude(int index) {
+		return stride == 3 ? coordinates[index * stride + 2] : Double.NaN;
+	}
+
+	/**
+	 * Allocates, prefer the primitive getters in loops
+	 * @param index
+	 * @return
+	 */
+	public LngLatAlt getPoint(int index) {
+		return new LngLatAlt(getLongitude(index), getLatitude(index), getAltitude(index));
+	}
+
+	/**
+	 * The backing array, not a copy. Vertex i starts at i * stride.
+	 * @return
+	 */
+	public double[] getCoordinates() {
+		return coordinates;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String value) {
+		name = value;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(coordinates) + stride;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PackedRing)) {
+			return false;
+		}
+		PackedRing other = (PackedRing) obj;
+		return stride == other.stride && Arrays.equals(coordinates, other.coordinates);
+	}
+
+	@Override
+	public String toString() {
+		return "PackedRing{size=" + size + ", stride=" + stride + ", name=" + name + "}";
+	}
+}
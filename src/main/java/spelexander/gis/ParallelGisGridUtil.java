@@ -0,0 +1,250 @@
+package spelexander.gis;
+
+import java.awt.Dimension;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+import org.geojson.LngLatAlt;
+
+import spelexander.gis.GisGridUtil.RotationType;
+
+/**
+ * Fork/join bulk versions of the per-layer operations of {@link MapGisGridUtil}.
+ *
+ * Work is split into chunks of a fixed number of annotations and always reduced in
+ * the same order, with compensated sums, so results depend only on the chunk size
+ * and never on the pool or its thread count. Without a pool the same chunks run on
+ * the calling thread, giving identical results.
+ */
+public class ParallelGisGridUtil {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	private final MapGisGridUtil util;
+
+	private final ForkJoinPool pool;
+
+	private final int chunkSize;
+
+	/**
+	 * @param util the operations to run on each annotation
+	 * @param pool pool to run on, null to run on the calling thread
+	 * @param chunkSize annotations per task, at least 1
+	 */
+	public ParallelGisGridUtil(MapGisGridUtil util, ForkJoinPool pool, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		}
+		this.util = Objects.requireNonNull(util);
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Runs on the common pool with the default chunk size
+	 * @param util
+	 */
+	public ParallelGisGridUtil(MapGisGridUtil util) {
+		this(util, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Same as {@link MapGisGridUtil#getCenterPoint(List)}, summed with compensation
+	 * @param annotations
+	 * @return
+	 */
+	public LngLatAlt getCenterPoint(List<GisGridAnnotation> annotations) {
+		Objects.requireNonNull(annotations, "Must provide an actual list of annotations");
+		if (annotations.isEmpty()) {
+			return null;
+		}
+
+		CenterSums task = new CenterSums(annotations, 0, annotations.size());
+		CenterSums sums = pool == null ? task.compute() : pool.invoke(task);
+
+		double count = sums.count;
+		return new LngLatAlt(sums.longitude.value() / count, sums.latitude.value() / count, sums.altitude.value() / count);
+	}
+
+	/**
+	 * Same as {@link MapGisGridUtil#rotateTo(List, ScaleRotation, RotationType)}, in order
+	 * @param annotations
+	 * @param rot
+	 * @param type
+	 * @return
+	 */
+	public List<GisGridAnnotation> rotateTo(List<GisGridAnnotation> annotations, ScaleRotation rot, RotationType type) {
+		LngLatAlt centerPoint = getCenterPoint(annotations);
+		GisGridAnnotation[] result = new GisGridAnnotation[annotations.size()];
+		if (centerPoint == null) {
+			return new ArrayList<>();
+		}
+
+		RotationTransform transform = util.getRotationTransform(centerPoint, rot, type);
+		map(annotations.size(), i -> transform.apply(annotations.get(i)), result);
+
+		return new ArrayList<>(Arrays.asList(result));
+	}
+
+	/**
+	 * {@link MapGisGridUtil#getPolygonShape(GisGridAnnotation, LngLatAlt, Dimension, ScaleRotation, WidthHeightProvider)}
+	 * of every annotation, in order
+	 */
+	public List<Shape> getPolygonShapes(List<GisGridAnnotation> annotations, LngLatAlt topLeft, Dimension fieldSize,
+			ScaleRotation rotation, WidthHeightProvider params) {
+		Shape[] result = new Shape[annotations.size()];
+
+		map(annotations.size(), i -> util.getPolygonShape(annotations.get(i), topLeft, fieldSize, rotation, params), result);
+
+		return new ArrayList<>(Arrays.asList(result));
+	}
+
+	/**
+	 * {@link MapGisGridUtil#getPolygonShape(GisGridAnnotation, ProjectionContext)} of every annotation, in order
+	 */
+	public List<Shape> getPolygonShapes(List<GisGridAnnotation> annotations, ProjectionContext context) {
+		Shape[] result = new Shape[annotations.size()];
+
+		map(annotations.size(), i -> util.getPolygonShape(annotations.get(i), context), result);
+
+		return new ArrayList<>(Arrays.asList(result));
+	}
+
+	private <T> void map(int size, IntFunction<T> function, T[] result) {
+		MapChunks<T> task = new MapChunks<>(function, result, 0, size);
+		if (pool == null) {
+			task.compute();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	/**
+	 * Split point of a range, on a chunk boundary so splits depend only on the chunk size
+	 */
+	private int split(int from, int to) {
+		int chunks = (to - from + chunkSize - 1) / chunkSize;
+		return from + (chunks / 2) * chunkSize;
+	}
+
+	private final class MapChunks<T> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IntFunction<T> function;
+
+		private final T[] result;
+
+		private final int from;
+
+		private final int to;
+
+		MapChunks(IntFunction<T> function, T[] result, int from, int to) {
+			this.function = function;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				for (int i = from; i < to; i++) {
+					result[i] = function.apply(i);
+				}
+				return;
+			}
+
+			int mid = split(from, to);
+			MapChunks<T> left = new MapChunks<>(function, result, from, mid);
+			MapChunks<T> right = new MapChunks<>(function, result, mid, to);
+			if (pool == null) {
+				left.compute();
+				right.compute();
+			} else {
+				invokeAll(left, right);
+			}
+		}
+	}
+
+	private final class CenterSums extends RecursiveTask<CenterSums> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<GisGridAnnotation> annotations;
+
+		private final int from;
+
+		private final int to;
+
+		final CompensatedSum longitude = new CompensatedSum();
+
+		final CompensatedSum latitude = new CompensatedSum();
+
+		final CompensatedSum altitude = new CompensatedSum();
+
+		long count = 0;
+
+		CenterSums(List<GisGridAnnotation> annotations, int from, int to) {
+			this.annotations = annotations;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected CenterSums compute() {
+			if (to - from <= chunkSize) {
+				for (int i = from; i < to; i++) {
+					GisGridAnnotation annotation = annotations.get(i);
+					if (!annotation.canUse()) {
+						continue;
+					}
+
+					for (LngLatAlt point : annotation.getExteriorRing()) {
+						longitude.add(point.getLongitude());
+						latitude.add(point.getLatitude());
+						if (point.hasAltitude()) {
+							altitude.add(point.getAltitude());
+						}
+						count++;
+					}
+				}
+				return this;
+			}
+
+			int mid = split(from, to);
+			CenterSums left = new CenterSums(annotations, from, mid);
+			CenterSums right = new CenterSums(annotations, mid, to);
+			if (pool == null) {
+				left.compute();
+				right.compute();
+			} else {
+				right.fork();
+				left.compute();
+				right.join();
+			}
+
+			// Always left then right, whichever finished first
+			longitude.add(left.longitude).add(right.longitude);
+			latitude.add(left.latitude).add(right.latitude);
+			altitude.add(left.altitude).add(right.altitude);
+			count = left.count + right.count;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package spelexander.gis;
+
+/**
+ * Simplifies rings in grid space for drawing at low zoom: a radial pass drops
+ * vertices within the tolerance of the last kept vertex (collapsing runs that land
+ * on one pixel), then Douglas-Peucker drops vertices within the tolerance of the
+ * simplified outline.
+ *
+ * Each pass moves the outline by at most the tolerance, so the result stays within
+ * {@link #getMaxDeviation(double)} of the original. The first and last vertices are
+ * always kept, so closed rings stay closed.
+ */
+public final class PolygonSimplifier {
+
+	private PolygonSimplifier() {
+	}
+
+	/**
+	 * Largest distance between the original and the simplified outline
+	 * @param tolerance
+	 * @return
+	 */
+	public static double getMaxDeviation(double tolerance) {
+		return 2.0 * tolerance;
+	}
+
+	/**
+	 * @param xs
+	 * @param ys
+	 * @param count number of vertices
+	 * @param tolerance in grid units
+	 * @param kept receives the ascending indices of the kept vertices, at least count long
+	 * @return number of kept vertices
+	 */
+	public static int simplify(double[] xs, double[] ys, int count, double tolerance, int[] kept) {
+		if (count <= 2 || tolerance <= 0.0) {
+			for (int i = 0; i < count; i++) {
+				kept[i] = i;
+			}
+			return count;
+		}
+
+		// Radial pass, the last vertex is always kept
+		double squared = tolerance * tolerance;
+		int[] radial = new int[count];
+		int size = 0;
+		radial[size++] = 0;
+		for (int i = 1; i < count - 1; i++) {
+			int last = radial[size - 1];
+			double dx = xs[i] - xs[last];
+			double dy = ys[i] - ys[last];
+			if (dx * dx + dy * dy > squared) {
+				radial[size++] = i;
+			}
+		}
+		radial[size++] = count - 1;
+
+		// Douglas-Peucker over the radial vertices, with an explicit stack of ranges
+		boolean[] keep = new boolean[size];
+		keep[0] = true;
+		keep[size - 1] = true;
+
+		int[] stack = new int[2 * size];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = size - 1;
+
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+
+			double worst = squared;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double distance = segmentDistanceSquared(xs, ys, radial[i], radial[first], radial[last]);
+				if (distance > worst) {
+					worst = distance;
+					index = i;
+				}
+			}
+
+			if (index >= 0) {
+				keep[index] = true;
+				stack[top++] = first;
+				stack[top++] = index;
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+
+		int result = 0;
+		for (int i = 0; i < size; i++) {
+			if (keep[i]) {
+				kept[result++] = radial[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Squared distance from a point to a segment, or to its start when the segment is a
+	 * point, as for the closing segment of a ring
+	 */
+	private static double segmentDistanceSquared(double[] xs, double[] ys, int point, int start, int end) {
+		double x = xs[point] - xs[start];
+		double y = ys[point] - ys[start];
+		double dx = xs[end] - xs[start];
+		double dy = ys[end] - ys[start];
+
+		double length = dx * dx + dy * dy;
+		if (length > 0.0) {
+			double t = Math.max(0.0, Math.min(1.0, (x * dx + y * dy) / length));
+			x -= t * dx;
+			y -= t * dy;
+		}
+		return x * x + y * y;
+	}
+}
@@ -0,0 +1,259 @@
+package spelexander.gis;
+
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * An annotation's ring projected once and indexed for repeated exact point in
+ * polygon tests.
+ *
+ * Queries first reject against the cached bounds, then run a crossing number
+ * test against only the edges in the horizontal band holding the query y, so a
+ * query costs roughly the number of edges crossing that band rather than the
+ * whole ring. An edge is listed in every band it spans, so the band count is
+ * lowered when needed to keep the index within {@link #MAX_BAND_ENTRIES_PER_EDGE}
+ * entries per edge; rings of long zigzag edges then scan more edges per query
+ * instead of growing quadratically. Immutable and safe to share between threads.
+ */
+public class PreparedAnnotation {
+
+	/**
+	 * Average number of bands an edge may be listed in
+	 */
+	public static final int MAX_BAND_ENTRIES_PER_EDGE = 8;
+
+	private final GisGridAnnotation annotation;
+
+	private final double[] xs;
+
+	private final double[] ys;
+
+	private final int size;
+
+	private final double minX;
+
+	private final double minY;
+
+	private final double maxX;
+
+	private final double maxY;
+
+	private final double bandScale;
+
+	private final int bandCount;
+
+	/**
+	 * Edges of band b are bandEdges[bandStart[b]] until bandEdges[bandStart[b + 1]]
+	 */
+	private final int[] bandStart;
+
+	private final int[] bandEdges;
+
+	/**
+	 * @param annotation the annotation the coordinates came from
+	 * @param xs ring x coordinates, used directly
+	 * @param ys ring y coordinates, used directly
+	 */
+	public PreparedAnnotation(GisGridAnnotation annotation, double[] xs, double[] ys) {
+		if (xs.length != ys.length) {
+			throw new IllegalArgumentException("Must provide the same number of x and y coordinates");
+		}
+
+		this.annotation = annotation;
+		this.xs = xs;
+		this.ys = ys;
+		this.size = xs.length;
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+
+		// Around two edges per band on average, fewer bands when edges span many of them
+		double height = maxY - minY;
+		int bands = size < 3 ? 1 : Math.max(1, size / 2);
+		long budget = (long) MAX_BAND_ENTRIES_PER_EDGE * size;
+		long entries = countEntries(bands, height);
+		while (entries > budget && bands > 1) {
+			bands = (int) Math.max(1, Math.min(bands - 1, bands * budget / entries));
+			entries = countEntries(bands, height);
+		}
+		this.bandCount = bands;
+		this.bandScale = height > 0 ? bandCount / height : 0.0;
+
+		this.bandStart = new int[bandCount + 1];
+		if (size < 3) {
+			this.bandEdges = new int[0];
+			return;
+		}
+
+		// Count then fill (compressed rows) so the index is two flat arrays
+		for (int edge = 0; edge < size; edge++) {
+			int from = band(Math.min(ys[edge], ys[next(edge)]));
+			int to = band(Math.max(ys[edge], ys[next(edge)]));
+			for (int b = from; b <= to; b++) {
+				bandStart[b + 1]++;
+			}
+		}
+		for (int b = 0; b < bandCount; b++) {
+			bandStart[b + 1] += bandStart[b];
+		}
+
+		this.bandEdges = new int[bandStart[bandCount]];
+		int[] fill = new int[bandCount];
+		for (int edge = 0; edge < size; edge++) {
+			int from = band(Math.min(ys[edge], ys[next(edge)]));
+			int to = band(Math.max(ys[edge], ys[next(edge)]));
+			for (int b = from; b <= to; b++) {
+				bandEdges[bandStart[b] + fill[b]++] = edge;
+			}
+		}
+	}
+
+	/**
+	 * Prepare integer grid coordinates, e.g. from transformToXY of a ring
+	 */
+	static PreparedAnnotation of(int[] xs, int[] ys, int size) {
+		double[] preparedXs = new double[size];
+		double[] preparedYs = new double[size];
+		for (int i = 0; i < size; i++) {
+			preparedXs[i] = xs[i];
+			preparedYs[i] = ys[i];
+		}
+		return new PreparedAnnotation(null, preparedXs, preparedYs);
+	}
+
+	/**
+	 * Index entries all edges would need with some number of bands
+	 */
+	private long countEntries(int bands, double height) {
+		if (size < 3 || height <= 0) {
+			return size;
+		}
+
+		double scale = bands / height;
+		long entries = 0;
+		for (int edge = 0; edge < size; edge++) {
+			int from = band(Math.min(ys[edge], ys[next(edge)]), scale, bands);
+			int to = band(Math.max(ys[edge], ys[next(edge)]), scale, bands);
+			entries += to - from + 1;
+		}
+		return entries;
+	}
+
+	/**
+	 * Crossing number test over a ring without building an index, for one off queries
+	 * @param xs
+	 * @param ys
+	 * @param size number of ring points
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	static boolean contains(int[] xs, int[] ys, int size, double x, double y) {
+		if (size < 3) {
+			return false;
+		}
+
+		boolean inside = false;
+		for (int edge = 0, other = size - 1; edge < size; other = edge++) {
+			double x1 = xs[edge];
+			double y1 = ys[edge];
+			double x2 = xs[other];
+			double y2 = ys[other];
+
+			if ((y2 > y) != (y1 > y) && x < (x1 - x2) * (y - y2) / (y1 - y2) + x2) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * @return the source annotation, null when prepared from a packed ring
+	 */
+	public GisGridAnnotation getAnnotation() {
+		return annotation;
+	}
+
+	/**
+	 * @return number of ring points
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return bounds of the prepared coordinates, empty when there are none
+	 */
+	public Rectangle2D getBounds2D() {
+		if (size == 0) {
+			return new Rectangle2D.Double();
+		}
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	public boolean contains(Point point) {
+		return contains(point.x, point.y);
+	}
+
+	/**
+	 * Exact crossing number test. Rings with fewer than 3 points contain nothing.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public boolean contains(double x, double y) {
+		if (size < 3 || x < minX || x > maxX || y < minY || y > maxY) {
+			return false;
+		}
+
+		int b = band(y);
+		boolean inside = false;
+		for (int i = bandStart[b]; i < bandStart[b + 1]; i++) {
+			int edge = bandEdges[i];
+			int other = next(edge);
+
+			double x1 = xs[edge];
+			double y1 = ys[edge];
+			double x2 = xs[other];
+			double y2 = ys[other];
+
+			if ((y2 > y) != (y1 > y) && x < (x1 - x2) * (y - y2) / (y1 - y2) + x2) {
+				inside = !inside;
+			}
+		}
+
+		return inside;
+	}
+
+	/**
+	 * @return edge entries in the band index
+	 */
+	int getIndexSize() {
+		return bandEdges.length;
+	}
+
+	private int next(int edge) {
+		return edge + 1 == size ? 0 : edge + 1;
+	}
+
+	private int band(double y) {
+		return band(y, bandScale, bandCount);
+	}
+
+	private int band(double y, double scale, int bands) {
+		int b = (int) ((y - minY) * scale);
+		return b < 0 ? 0 : (b >= bands ? bands - 1 : b);
+	}
+}
@@ -0,0 +1,311 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ObjDoubleConsumer;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Hashed grid of cells over the positions of annotations, for radius queries.
+ *
+ * An annotation is placed by its single vertex when it is a point (as read from a
+ * GeoJson Point) and by the mean of its exterior ring otherwise, as
+ * {@link GisGridAnnotation#getCenterPoint()}. Only occupied cells are stored.
+ * A radius query visits just the cells overlapping the circle's bounding box on the
+ * sphere (wrapping the antimeridian and covering the poles) and runs exact
+ * haversine, as {@link MapGisGridUtil#distance(double, double, double, double)},
+ * on the positions in them.
+ *
+ * Cells should be about the size of a typical query radius: much smaller means many
+ * empty cells are looked up, much larger means many positions are measured.
+ * Annotations are tracked by identity. Not thread safe.
+ */
+public class ProximityIndex {
+
+	private static final double EARTH_RADIUS_METERS = ProjectionContext.EARTH_RADIUS_METERS;
+
+	private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180.0;
+
+	private static final double PADDING_DEGREES = 1e-9;
+
+	private final double cellSizeMeters;
+
+	private final double cellLatitude;
+
+	private final double cellLongitude;
+
+	private final int columns;
+
+	private final Map<Long, Cell> cells = new HashMap<>();
+
+	private final Map<GisGridAnnotation, Long> keys = new IdentityHashMap<>();
+
+	/**
+	 * Cells square at the equator
+	 * @param cellSizeMeters
+	 */
+	public ProximityIndex(double cellSizeMeters) {
+		this(cellSizeMeters, 0.0);
+	}
+
+	/**
+	 * @param cellSizeMeters height of a cell, and its width at the reference latitude
+	 * @param referenceLatitude typical latitude of the data, in degrees
+	 */
+	public ProximityIndex(double cellSizeMeters, double referenceLatitude) {
+		if (!(cellSizeMeters > 0)) {
+			throw new IllegalArgumentException("Cell size must be positive");
+		}
+		this.cellSizeMeters = cellSizeMeters;
+		this.cellLatitude = Math.min(180.0, cellSizeMeters / METERS_PER_DEGREE);
+		double cos = Math.max(0.01, Math.cos(Math.toRadians(referenceLatitude)));
+		this.cellLongitude = Math.min(360.0, cellLatitude / cos);
+		this.columns = (int) Math.ceil(360.0 / cellLongitude);
+	}
+
+	/**
+	 * Index annotations with cells sized for a dataset
+	 * @param annotations
+	 * @param cellSizeMeters
+	 * @param referenceLatitude
+	 */
+	public ProximityIndex(Collection<? extends GisGridAnnotation> annotations, double cellSizeMeters, double referenceLatitude) {
+		this(cellSizeMeters, referenceLatitude);
+		for (GisGridAnnotation annotation : annotations) {
+			insert(annotation);
+		}
+	}
+
+	public double getCellSizeMeters() {
+		return cellSizeMeters;
+	}
+
+	/**
+	 * Index an annotation at its point or centroid, moving it if it is already indexed
+	 * @param annotation with at least one vertex
+	 */
+	public void insert(GisGridAnnotation annotation) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		if (ring.isEmpty()) {
+			throw new IllegalArgumentException("Annotation has no position");
+		}
+
+		if (ring.size() == 1) {
+			insert(annotation, ring.get(0).getLongitude(), ring.get(0).getLatitude());
+		} else {
+			org.geojson.Point center = annotation.getCenterPoint();
+			insert(annotation, center.getCoordinates().getLongitude(), center.getCoordinates().getLatitude());
+		}
+	}
+
+	/**
+	 * Index an annotation at a given position, moving it if it is already indexed
+	 * @param annotation
+	 * @param longitude
+	 * @param latitude
+	 */
+	public void insert(GisGridAnnotation annotation, double longitude, double latitude) {
+		Objects.requireNonNull(annotation, "Annotation must not be null");
+		remove(annotation);
+
+		long key = key(row(latitude), column(longitude));
+		cells.computeIfAbsent(key, k -> new Cell()).add(annotation, longitude, latitude);
+		keys.put(annotation, key);
+	}
+
+	/**
+	 * @param annotation
+	 * @return false if the annotation was not indexed
+	 */
+	public boolean remove(GisGridAnnotation annotation) {
+		Long key = keys.remove(annotation);
+		if (key == null) {
+			return false;
+		}
+
+		Cell cell = cells.get(key);
+		cell.remove(annotation);
+		if (cell.size == 0) {
+			cells.remove(key);
+		}
+		return true;
+	}
+
+	public boolean contains(GisGridAnnotation annotation) {
+		return keys.containsKey(annotation);
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	public void clear() {
+		cells.clear();
+		keys.clear();
+	}
+
+	/**
+	 * @return occupied cells
+	 */
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	/**
+	 * Annotations positioned within a radius of a point, nearest first
+	 * @param center
+	 * @param radiusMeters
+	 * @return
+	 */
+	public List<GisGridAnnotation> withinRadius(LngLatAlt center, double radiusMeters) {
+		List<GisGridAnnotation> found = new ArrayList<>();
+		List<Double> distances = new ArrayList<>();
+		withinRadius(center.getLongitude(), center.getLatitude(), radiusMeters, (annotation, distance) -> {
+			found.add(annotation);
+			distances.add(distance);
+		});
+
+		Integer[] order = new Integer[found.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(distances.get(a), distances.get(b)));
+
+		List<GisGridAnnotation> result = new ArrayList<>(order.length);
+		for (Integer index : order) {
+			result.add(found.get(index));
+		}
+		return result;
+	}
+
+	/**
+	 * Visit every annotation positioned within a radius of a point, in no particular order
+	 * @param longitude
+	 * @param latitude
+	 * @param radiusMeters
+	 * @param visitor receives each annotation and its distance in meters
+	 */
+	public void withinRadius(double longitude, double latitude, double radiusMeters,
+			ObjDoubleConsumer<GisGridAnnotation> visitor) {
+		if (cells.isEmpty() || !(radiusMeters >= 0)) {
+			return;
+		}
+
+		// Padded slightly so rounding never drops a position right on the radius
+		double angle = radiusMeters / EARTH_RADIUS_METERS;
+		double minLatitude = latitude - Math.toDegrees(angle) - PADDING_DEGREES;
+		double maxLatitude = latitude + Math.toDegrees(angle) + PADDING_DEGREES;
+
+		// Widest longitude difference on the circle, everything if it covers a pole
+		double spread = 180.0;
+		if (minLatitude > -90.0 && maxLatitude < 90.0) {
+			double sin = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+			if (sin < 1.0) {
+				spread = Math.toDegrees(Math.asin(sin)) + PADDING_DEGREES;
+			}
+		}
+
+		int firstRow = row(Math.max(-90.0, minLatitude));
+		int lastRow = row(Math.min(90.0, maxLatitude));
+		int firstColumn;
+		int columnCount;
+		if (2 * spread + cellLongitude >= 360.0) {
+			firstColumn = 0;
+			columnCount = columns;
+		} else {
+			firstColumn = column(longitude - spread);
+			columnCount = Math.min(columns, Math.floorMod(column(longitude + spread) - firstColumn, columns) + 1);
+		}
+
+		long visits = (long) (lastRow - firstRow + 1) * columnCount;
+		if (visits > cells.size()) {
+			// Cheaper to go over the occupied cells, keeping those in the rows
+			for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+				int row = (int) (entry.getKey() >> 32);
+				int column = (int) (long) entry.getKey();
+				if (row < firstRow || row > lastRow || Math.floorMod(column - firstColumn, columns) >= columnCount) {
+					continue;
+				}
+				entry.getValue().visit(longitude, latitude, radiusMeters, visitor);
+			}
+			return;
+		}
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int c = 0; c < columnCount; c++) {
+				Cell cell = cells.get(key(row, (firstColumn + c) % columns));
+				if (cell != null) {
+					cell.visit(longitude, latitude, radiusMeters, visitor);
+				}
+			}
+		}
+	}
+
+	private int row(double latitude) {
+		return (int) Math.floor((latitude + 90.0) / cellLatitude);
+	}
+
+	private int column(double longitude) {
+		double wrapped = ((longitude + 180.0) % 360.0 + 360.0) % 360.0;
+		return Math.min(columns - 1, (int) Math.floor(wrapped / cellLongitude));
+	}
+
+	private static long key(int row, int column) {
+		return ((long) row << 32) | (column & 0xffffffffL);
+	}
+
+	/**
+	 * Positions in one cell, in parallel arrays
+	 */
+	private static final class Cell {
+
+		GisGridAnnotation[] annotations = new GisGridAnnotation[4];
+
+		double[] longitudes = new double[4];
+
+		double[] latitudes = new double[4];
+
+		int size = 0;
+
+		void add(GisGridAnnotation annotation, double longitude, double latitude) {
+			if (size == annotations.length) {
+				annotations = Arrays.copyOf(annotations, size * 2);
+				longitudes = Arrays.copyOf(longitudes, size * 2);
+				latitudes = Arrays.copyOf(latitudes, size * 2);
+			}
+			annotations[size] = annotation;
+			longitudes[size] = longitude;
+			latitudes[size] = latitude;
+			size++;
+		}
+
+		void remove(GisGridAnnotation annotation) {
+			for (int i = 0; i < size; i++) {
+				if (annotations[i] == annotation) {
+					size--;
+					annotations[i] = annotations[size];
+					longitudes[i] = longitudes[size];
+					latitudes[i] = latitudes[size];
+					annotations[size] = null;
+					return;
+				}
+			}
+		}
+
+		void visit(double longitude, double latitude, double radiusMeters, ObjDoubleConsumer<GisGridAnnotation> visitor) {
+			for (int i = 0; i < size; i++) {
+				double distance = MapGisGridUtil.haversine(longitude, latitude, longitudes[i], latitudes[i]);
+				if (distance <= radiusMeters) {
+					visitor.accept(annotations[i], distance);
+				}
+			}
+		}
+	}
+}
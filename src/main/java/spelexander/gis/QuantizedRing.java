@@ -0,0 +1,377 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * An annotation's exterior ring in a few bytes per vertex: longitude and latitude
+ * are rounded to fixed point integers (degrees times the scale) and each vertex is
+ * stored as the zigzag varint difference from the one before, which for parcel sized
+ * rings is usually two or three bytes per coordinate.
+ *
+ * Decoded coordinates are within half a unit (0.5 / scale degrees) of the originals.
+ * Altitude, when any point has one, is kept to the millimeter. Read the vertices in
+ * order with a {@link Cursor}, which allocates nothing per vertex. Immutable apart
+ * from the name.
+ */
+public final class QuantizedRing {
+
+	/**
+	 * 1e-7 degrees, about a centimeter
+	 */
+	public static final double DEFAULT_SCALE = 1e7;
+
+	/**
+	 * Largest scale that keeps every longitude within an int
+	 */
+	public static final double MAX_SCALE = Integer.MAX_VALUE / 180.0;
+
+	static final double ALTITUDE_SCALE = 1000.0;
+
+	private final byte[] data;
+
+	private final int size;
+
+	private final double scale;
+
+	private final boolean altitude;
+
+	final int minLongitude;
+
+	final int minLatitude;
+
+	final int maxLongitude;
+
+	final int maxLatitude;
+
+	private String name = "";
+
+	private QuantizedRing(byte[] data, int size, double scale, boolean altitude, int minLongitude, int minLatitude,
+			int maxLongitude, int maxLatitude) {
+		this.data = data;
+		this.size = size;
+		this.scale = scale;
+		this.altitude = altitude;
+		this.minLongitude = minLongitude;
+		this.minLatitude = minLatitude;
+		this.maxLongitude = maxLongitude;
+		this.maxLatitude = maxLatitude;
+	}
+
+	public static QuantizedRing encode(GisGridAnnotation annotation) {
+		return encode(annotation, DEFAULT_SCALE);
+	}
+
+	/**
+	 * @param annotation
+	 * @param scale integer units per degree, at most {@link #MAX_SCALE}
+	 * @return
+	 */
+	public static QuantizedRing encode(GisGridAnnotation annotation, double scale) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		double[] coordinates = new double[ring.size() * 3];
+		boolean altitude = false;
+		int index = 0;
+		for (LngLatAlt point : ring) {
+			coordinates[index] = point.getLongitude();
+			coordinates[index + 1] = point.getLatitude();
+			coordinates[index + 2] = point.getAltitude();
+			altitude |= point.hasAltitude();
+			index += 3;
+		}
+
+		QuantizedRing quantized = encode(coordinates, 3, altitude, scale);
+		quantized.setName(annotation.getName());
+		return quantized;
+	}
+
+	public static QuantizedRing encode(PackedRing ring, double scale) {
+		QuantizedRing quantized = encode(ring.getCoordinates(), ring.getStride(), ring.hasAltitude(), scale);
+		quantized.setName(ring.getName());
+		return quantized;
+	}
+
+	private static QuantizedRing encode(double[] coordinates, int stride, boolean altitude, double scale) {
+		if (!(scale > 0 && scale <= MAX_SCALE)) {
+			throw new IllegalArgumentException("Scale must be positive and at most " + MAX_SCALE);
+		}
+
+		int size = coordinates.length / stride;
+		// Most deltas fit in three bytes
+		Encoder encoder = new Encoder(size * (altitude ? 9 : 6) + 8);
+
+		int minLongitude = Integer.MAX_VALUE;
+		int minLatitude = Integer.MAX_VALUE;
+		int maxLongitude = Integer.MIN_VALUE;
+		int maxLatitude = Integer.MIN_VALUE;
+
+		int lastLongitude = 0;
+		int lastLatitude = 0;
+		for (int i = 0, index = 0; i < size; i++, index += stride) {
+			int longitude = quantize(coordinates[index], scale, 180.0);
+			int latitude = quantize(coordinates[index + 1], scale, 90.0);
+
+			encoder.writeSigned((long) longitude - lastLongitude);
+			encoder.writeSigned((long) latitude - lastLatitude);
+			if (altitude) {
+				double value = stride == 3 ? coordinates[index + 2] : Double.NaN;
+				// 0 marks a point without altitude
+				encoder.writeUnsigned(Double.isNaN(value) ? 0L : zigzag(Math.round(value * ALTITUDE_SCALE)) + 1);
+			}
+
+			lastLongitude = longitude;
+			lastLatitude = latitude;
+			minLongitude = Math.min(minLongitude, longitude);
+			minLatitude = Math.min(minLatitude, latitude);
+			maxLongitude = Math.max(maxLongitude, longitude);
+			maxLatitude = Math.max(maxLatitude, latitude);
+		}
+
+		return new QuantizedRing(encoder.toByteArray(), size, scale, altitude, minLongitude, minLatitude, maxLongitude, maxLatitude);
+	}
+
+	private static int quantize(double value, double scale, double limit) {
+		if (!(Math.abs(value) <= limit)) {
+			throw new IllegalArgumentException("Coordinate out of range: " + value);
+		}
+		return (int) Math.round(value * scale);
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * A new cursor before the first vertex
+	 * @return
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	public boolean hasAltitude() {
+		return altitude;
+	}
+
+	public boolean canUse() {
+		return size >= 3;
+	}
+
+	/**
+	 * @return bytes used by the encoded vertices
+	 */
+	public int getEncodedSize() {
+		return data.length;
+	}
+
+	/**
+	 * Decode into a packed ring, with altitude when this has any
+	 * @return
+	 */
+	public PackedRing toPackedRing() {
+		int stride = altitude ? 3 : 2;
+		double[] coordinates = new double[size * stride];
+
+		Cursor cursor = cursor();
+		for (int index = 0; cursor.next(); index += stride) {
+			coordinates[index] = cursor.getLongitude();
+			coordinates[index + 1] = cursor.getLatitude();
+			if (altitude) {
+				coordinates[index + 2] = cursor.getAltitude();
+			}
+		}
+
+		PackedRing ring = new PackedRing(coordinates, stride);
+		ring.setName(name);
+		return ring;
+	}
+
+	/**
+	 * Decode into a new annotation
+	 * @return
+	 */
+	public GisGridAnnotation toAnnotation() {
+		List<LngLatAlt> ring = new ArrayList<>(size);
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			ring.add(new LngLatAlt(cursor.getLongitude(), cursor.getLatitude(), cursor.getAltitude()));
+		}
+
+		GisGridAnnotation annotation = new GisGridAnnotation(ring);
+		annotation.setName(name);
+		return annotation;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String value) {
+		name = value;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(data) + Double.hashCode(scale);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof QuantizedRing)) {
+			return false;
+		}
+		QuantizedRing other = (QuantizedRing) obj;
+		return size == other.size && scale == other.scale && altitude == other.altitude && Arrays.equals(data, other.data);
+	}
+
+	@Override
+	public String toString() {
+		return "QuantizedRing{size=" + size + ", bytes=" + data.length + ", scale=" + scale + ", name=" + name + "}";
+	}
+
+	/**
+	 * Reads the vertices in order. Call {@link #next()} before reading each one.
+	 */
+	public final class Cursor {
+
+		private int position = 0;
+
+		private int index = -1;
+
+		private int longitude = 0;
+
+		private int latitude = 0;
+
+		private double currentAltitude = Double.NaN;
+
+		private Cursor() {
+		}
+
+		/**
+		 * Move to the next vertex
+		 * @return false after the last
+		 */
+		public boolean next() {
+			if (index + 1 >= size) {
+				index = size;
+				return false;
+			}
+			index++;
+
+			longitude += (int) unzigzag(readUnsigned());
+			latitude += (int) unzigzag(readUnsigned());
+			if (altitude) {
+				long code = readUnsigned();
+				currentAltitude = code == 0 ? Double.NaN : unzigzag(code - 1) / ALTITUDE_SCALE;
+			}
+			return true;
+		}
+
+		/**
+		 * Back to before the first vertex
+		 */
+		public void reset() {
+			position = 0;
+			index = -1;
+			longitude = 0;
+			latitude = 0;
+			currentAltitude = Double.NaN;
+		}
+
+		/**
+		 * @return index of the current vertex
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public double getLongitude() {
+			return longitude / scale;
+		}
+
+		public double getLatitude() {
+			return latitude / scale;
+		}
+
+		/**
+		 * @return NaN when the vertex has none
+		 */
+		public double getAltitude() {
+			return currentAltitude;
+		}
+
+		/**
+		 * @return the fixed point longitude, degrees times the scale
+		 */
+		public int getQuantizedLongitude() {
+			return longitude;
+		}
+
+		public int getQuantizedLatitude() {
+			return latitude;
+		}
+
+		private long readUnsigned() {
+			long result = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[position++];
+				result |= (long) (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			return result;
+		}
+	}
+
+	/**
+	 * Growable buffer of varints
+	 */
+	private static final class Encoder {
+
+		private byte[] buffer;
+
+		private int length = 0;
+
+		Encoder(int capacity) {
+			buffer = new byte[Math.max(16, capacity)];
+		}
+
+		void writeSigned(long value) {
+			writeUnsigned(zigzag(value));
+		}
+
+		void writeUnsigned(long value) {
+			if (length + 10 > buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			while ((value & ~0x7fL) != 0) {
+				buffer[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte) value;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buffer, length);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.geojson.LngLatAlt;
+
+import spelexander.gis.GisGridUtil.RotationType;
+
+/**
+ * A rotation of longitude/latitude space about a center point, with its cosine
+ * and sine computed once so whole layers can be rotated cheaply.
+ *
+ * Angles are in degrees, counter clockwise positive. Rotating to north by a
+ * bearing (degrees clockwise from north) turns that bearing to point north, so it
+ * is a counter clockwise rotation by the bearing, and reverting is the inverse.
+ * As before the rotation is applied directly to degrees of longitude and latitude.
+ */
+public final class RotationTransform {
+
+	private final double centerLong;
+
+	private final double centerLat;
+
+	private final double angle;
+
+	private final double cos;
+
+	private final double sin;
+
+	/**
+	 * @param center
+	 * @param angle in degrees, counter clockwise
+	 */
+	public RotationTransform(LngLatAlt center, double angle) {
+		this.centerLong = center.getLongitude();
+		this.centerLat = center.getLatitude();
+		this.angle = angle;
+		this.cos = Math.cos(Math.toRadians(angle));
+		this.sin = Math.sin(Math.toRadians(angle));
+	}
+
+	/**
+	 * The rotation used by {@link MapGisGridUtil#rotateTo(LngLatAlt, LngLatAlt, ScaleRotation, RotationType)}
+	 * @param center
+	 * @param rot
+	 * @param type
+	 * @return
+	 */
+	public static RotationTransform of(LngLatAlt center, ScaleRotation rot, RotationType type) {
+		switch (type) {
+		case NORTH:
+			return new RotationTransform(center, rot.bearing);
+		case REVERT:
+			return new RotationTransform(center, -rot.bearing);
+		default:
+			return new RotationTransform(center, 0.0);
+		}
+	}
+
+	public RotationTransform inverse() {
+		return new RotationTransform(new LngLatAlt(centerLong, centerLat), -angle);
+	}
+
+	/**
+	 * Identity rotations leave coordinates untouched, not even rounded
+	 * @return
+	 */
+	public boolean isIdentity() {
+		return sin == 0.0 && cos == 1.0;
+	}
+
+	public double getAngle() {
+		return angle;
+	}
+
+	public LngLatAlt getCenter() {
+		return new LngLatAlt(centerLong, centerLat);
+	}
+
+	public double getLongitude(double longitude, double latitude) {
+		return centerLong + (longitude - centerLong) * cos - (latitude - centerLat) * sin;
+	}
+
+	public double getLatitude(double longitude, double latitude) {
+		return centerLat + (longitude - centerLong) * sin + (latitude - centerLat) * cos;
+	}
+
+	/**
+	 * A rotated copy of a point, keeping its altitude
+	 * @param point
+	 * @return the point itself for an identity rotation
+	 */
+	public LngLatAlt apply(LngLatAlt point) {
+		if (isIdentity()) {
+			return point;
+		}
+
+		double longitude = point.getLongitude();
+		double latitude = point.getLatitude();
+		return new LngLatAlt(getLongitude(longitude, latitude), getLatitude(longitude, latitude), point.getAltitude());
+	}
+
+	/**
+	 * A new annotation with the exterior ring rotated
+	 * @param annotation
+	 * @return
+	 */
+	public GisGridAnnotation apply(GisGridAnnotation annotation) {
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		List<LngLatAlt> points = new ArrayList<>(ring.size());
+
+		for (LngLatAlt point : ring) {
+			points.add(apply(point));
+		}
+
+		return new GisGridAnnotation(points);
+	}
+
+	/**
+	 * A rotated copy of a packed ring
+	 * @param ring
+	 * @return
+	 */
+	public PackedRing apply(PackedRing ring) {
+		double[] coordinates = ring.getCoordinates().clone();
+		apply(coordinates, 0, ring.getStride(), ring.size());
+
+		PackedRing result = new PackedRing(coordinates, ring.getStride());
+		result.setName(ring.getName());
+		return result;
+	}
+
+	/**
+	 * Rotate a point in place
+	 * @param point
+	 */
+	public void applyInPlace(LngLatAlt point) {
+		if (isIdentity()) {
+			return;
+		}
+
+		double longitude = point.getLongitude();
+		double latitude = point.getLatitude();
+		point.setLongitude(getLongitude(longitude, latitude));
+		point.setLatitude(getLatitude(longitude, latitude));
+	}
+
+	/**
+	 * Rotate every ring of an annotation in place, shared points are only rotated once
+	 * @param annotation
+	 */
+	public void applyInPlace(GisGridAnnotation annotation) {
+		Set<LngLatAlt> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (List<LngLatAlt> ring : annotation.getCoordinates()) {
+			for (LngLatAlt point : ring) {
+				if (seen.add(point)) {
+					applyInPlace(point);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rotate a packed ring in place
+	 * @param ring
+	 */
+	public void applyInPlace(PackedRing ring) {
+		apply(ring.getCoordinates(), 0, ring.getStride(), ring.size());
+	}
+
+	/**
+	 * Rotate interleaved coordinates in place
+	 * @param coordinates lng, lat(, ...) per point
+	 * @param offset index of the first longitude
+	 * @param stride values per point, at least 2
+	 * @param count number of points
+	 */
+	public void apply(double[] coordinates, int offset, int stride, int count) {
+		if (isIdentity()) {
+			return;
+		}
+
+		for (int i = 0, index = offset; i < count; i++, index += stride) {
+			double dx = coordinates[index] - centerLong;
+			double dy = coordinates[index + 1] - centerLat;
+
+			coordinates[index] = centerLong + dx * cos - dy * sin;
+			coordinates[index + 1] = centerLat + dx * sin + dy * cos;
+		}
+	}
+
+	/**
+	 * Rotate separate longitude and latitude arrays in place
+	 * @param longitudes
+	 * @param latitudes
+	 * @param count
+	 */
+	public void apply(double[] longitudes, double[] latitudes, int count) {
+		if (isIdentity()) {
+			return;
+		}
+
+		for (int i = 0; i < count; i++) {
+			double dx = longitudes[i] - centerLong;
+			double dy = latitudes[i] - centerLat;
+
+			longitudes[i] = centerLong + dx * cos - dy * sin;
+			latitudes[i] = centerLat + dx * sin + dy * cos;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RotationTransform{center=(" + centerLong + ", " + centerLat + "), angle=" + angle + "}";
+	}
+}
@@ -0,0 +1,154 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geojson.Crs;
+import org.geojson.Geometry;
+import org.geojson.LngLatAlt;
+
+/**
+ * Read-only copy of an annotation held by an {@link AnnotationStore}. Rings and
+ * points are copied and every mutator throws, so snapshots can be shared between
+ * threads without locking.
+ */
+final class SnapshotAnnotation extends GisGridAnnotation {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean frozen;
+
+	SnapshotAnnotation(GisGridAnnotation annotation) {
+		super(copy(annotation.getExteriorRing()));
+		super.setName(annotation.getName());
+		super.setProperties(annotation.getProperties());
+
+		List<List<LngLatAlt>> rings = new ArrayList<>(annotation.getCoordinates().size());
+		for (List<LngLatAlt> ring : annotation.getCoordinates()) {
+			rings.add(copy(ring));
+		}
+		coordinates = Collections.unmodifiableList(rings);
+		frozen = true;
+	}
+
+	/**
+	 * Already read-only annotations are shared rather than copied
+	 */
+	static GisGridAnnotation of(GisGridAnnotation annotation) {
+		return annotation instanceof SnapshotAnnotation ? annotation : new SnapshotAnnotation(annotation);
+	}
+
+	private static List<LngLatAlt> copy(List<LngLatAlt> ring) {
+		List<LngLatAlt> result = new ArrayList<>(ring.size());
+		for (LngLatAlt point : ring) {
+			result.add(new SnapshotPoint(point));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private void checkFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Snapshot annotations are read-only");
+		}
+	}
+
+	@Override
+	public void setName(String value) {
+		checkFrozen();
+		super.setName(value);
+	}
+
+	@Override
+	public void setProperties(LazyProperties value) {
+		checkFrozen();
+		super.setProperties(value);
+	}
+
+	@Override
+	public void setExteriorRing(List<LngLatAlt> points) {
+		checkFrozen();
+		super.setExteriorRing(points);
+	}
+
+	@Override
+	public void addInteriorRing(List<LngLatAlt> points) {
+		checkFrozen();
+		super.addInteriorRing(points);
+	}
+
+	@Override
+	public void addInteriorRing(LngLatAlt... points) {
+		checkFrozen();
+		super.addInteriorRing(points);
+	}
+
+	@Override
+	public Geometry<List<LngLatAlt>> add(List<LngLatAlt> elements) {
+		checkFrozen();
+		return super.add(elements);
+	}
+
+	@Override
+	public void setCoordinates(List<List<LngLatAlt>> coordinates) {
+		checkFrozen();
+		super.setCoordinates(coordinates);
+	}
+
+	@Override
+	public void setCrs(Crs crs) {
+		checkFrozen();
+		super.setCrs(crs);
+	}
+
+	@Override
+	public void setBbox(double[] bbox) {
+		checkFrozen();
+		super.setBbox(bbox);
+	}
+
+	/**
+	 * Read-only copy of a point
+	 */
+	private static final class SnapshotPoint extends LngLatAlt {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean frozen;
+
+		SnapshotPoint(LngLatAlt point) {
+			super(point.getLongitude(), point.getLatitude(), point.getAltitude(), point.getAdditionalElements().clone());
+			frozen = true;
+		}
+
+		private void checkFrozen() {
+			if (frozen) {
+				throw new UnsupportedOperationException("Snapshot points are read-only");
+			}
+		}
+
+		@Override
+		public void setLongitude(double longitude) {
+			checkFrozen();
+			super.setLongitude(longitude);
+		}
+
+		@Override
+		public void setLatitude(double latitude) {
+			checkFrozen();
+			super.setLatitude(latitude);
+		}
+
+		@Override
+		public void setAltitude(double altitude) {
+			checkFrozen();
+			super.setAltitude(altitude);
+		}
+
+		@Override
+		public void setAdditionalElements(double... additionalElements) {
+			checkFrozen();
+			super.setAdditionalElements(additionalElements);
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package spelexander.gis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Assigns batches of longitude/latitude points to the annotations containing them.
+ *
+ * The annotations are prepared once, in longitude/latitude, and listed in the cells
+ * of a uniform grid over their envelopes that they overlap. A batch of points is
+ * bucketed into the same cells, then the cells are joined in parallel, each point
+ * being tested only against the prepared annotations listed in its cell. Containment
+ * is exactly {@link GisGridAnnotation#contains(double, double)}.
+ *
+ * Where annotations overlap a point goes to the first containing annotation in the
+ * given order, so results never depend on the pool. Safe to share between threads
+ * once built; edit the annotations and a new join is needed.
+ */
+public class SpatialJoin {
+
+	/**
+	 * Most grid cells per side
+	 */
+	static final int MAX_CELLS_PER_SIDE = 1024;
+
+	public static final int DEFAULT_BATCH_SIZE = 65536;
+
+	private final List<GisGridAnnotation> annotations;
+
+	private final PreparedAnnotation[] prepared;
+
+	private final ForkJoinPool pool;
+
+	private final double minLongitude;
+
+	private final double minLatitude;
+
+	private final double maxLongitude;
+
+	private final double maxLatitude;
+
+	private final int columns;
+
+	private final int rows;
+
+	private final double columnScale;
+
+	private final double rowScale;
+
+	/**
+	 * Annotation indices of cell c are cellAnnotations[cellStart[c]] until cellAnnotations[cellStart[c + 1]], ascending
+	 */
+	private final int[] cellStart;
+
+	private final int[] cellAnnotations;
+
+	/**
+	 * Runs on the common pool
+	 * @param annotations
+	 */
+	public SpatialJoin(List<GisGridAnnotation> annotations) {
+		this(annotations, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param annotations the polygons points are assigned to, in order of preference
+	 * @param pool pool to run on, null to run on the calling thread
+	 */
+	public SpatialJoin(List<GisGridAnnotation> annotations, ForkJoinPool pool) {
+		this.annotations = new ArrayList<>(annotations);
+		this.pool = pool;
+		this.prepared = new PreparedAnnotation[this.annotations.size()];
+
+		Envelope bounds = Envelope.EMPTY;
+		Envelope[] envelopes = new Envelope[prepared.length];
+		for (int i = 0; i < prepared.length; i++) {
+			GisGridAnnotation annotation = Objects.requireNonNull(this.annotations.get(i), "Annotations must not be null");
+			List<LngLatAlt> ring = annotation.getExteriorRing();
+			double[] xs = new double[ring.size()];
+			double[] ys = new double[ring.size()];
+			for (int v = 0; v < xs.length; v++) {
+				xs[v] = ring.get(v).getLongitude();
+				ys[v] = ring.get(v).getLatitude();
+			}
+			prepared[i] = new PreparedAnnotation(annotation, xs, ys);
+
+			envelopes[i] = ring.size() < 3 ? Envelope.EMPTY : Envelope.of(annotation);
+			bounds = bounds.union(envelopes[i]);
+		}
+
+		this.minLongitude = bounds.getMinLongitude();
+		this.minLatitude = bounds.getMinLatitude();
+		this.maxLongitude = bounds.getMaxLongitude();
+		this.maxLatitude = bounds.getMaxLatitude();
+
+		// About one annotation per cell
+		int side = (int) Math.max(1, Math.min(MAX_CELLS_PER_SIDE, Math.ceil(Math.sqrt(prepared.length))));
+		this.columns = side;
+		this.rows = side;
+		double width = maxLongitude - minLongitude;
+		double height = maxLatitude - minLatitude;
+		this.columnScale = width > 0 ? columns / width : 0.0;
+		this.rowScale = height > 0 ? rows / height : 0.0;
+
+		// Count then fill, as PreparedAnnotation's bands
+		this.cellStart = new int[columns * rows + 1];
+		for (Envelope envelope : envelopes) {
+			forEachCell(envelope, cell -> cellStart[cell + 1]++);
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+
+		this.cellAnnotations = new int[cellStart[columns * rows]];
+		int[] fill = new int[columns * rows];
+		for (int i = 0; i < envelopes.length; i++) {
+			int annotation = i;
+			forEachCell(envelopes[i], cell -> cellAnnotations[cellStart[cell] + fill[cell]++] = annotation);
+		}
+	}
+
+	public List<GisGridAnnotation> getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * The containing annotation of every point
+	 * @param longitudes
+	 * @param latitudes
+	 * @return per point, the index of its annotation or -1 for none
+	 */
+	public int[] join(double[] longitudes, double[] latitudes) {
+		if (longitudes.length != latitudes.length) {
+			throw new IllegalArgumentException("Must provide the same number of longitudes and latitudes");
+		}
+		int size = longitudes.length;
+		int[] result = new int[size];
+		Arrays.fill(result, -1);
+
+		// Bucket the points by cell, skipping those outside every annotation's envelope
+		int cellCount = columns * rows;
+		int[] cellOf = new int[size];
+		int[] pointStart = new int[cellCount + 1];
+		for (int i = 0; i < size; i++) {
+			cellOf[i] = cell(longitudes[i], latitudes[i]);
+			if (cellOf[i] >= 0) {
+				pointStart[cellOf[i] + 1]++;
+			}
+		}
+		for (int c = 0; c < cellCount; c++) {
+			pointStart[c + 1] += pointStart[c];
+		}
+		int[] points = new int[pointStart[cellCount]];
+		int[] fill = new int[cellCount];
+		for (int i = 0; i < size; i++) {
+			if (cellOf[i] >= 0) {
+				points[pointStart[cellOf[i]] + fill[cellOf[i]]++] = i;
+			}
+		}
+
+		JoinCells task = new JoinCells(longitudes, latitudes, pointStart, points, result, 0, cellCount);
+		if (pool == null) {
+			task.compute();
+		} else {
+			pool.invoke(task);
+		}
+
+		return result;
+	}
+
+	/**
+	 * The containing annotation of every point
+	 * @param points
+	 * @return per point, its annotation or null for none
+	 */
+	public List<GisGridAnnotation> join(List<LngLatAlt> points) {
+		double[] longitudes = new double[points.size()];
+		double[] latitudes = new double[points.size()];
+		for (int i = 0; i < longitudes.length; i++) {
+			longitudes[i] = points.get(i).getLongitude();
+			latitudes[i] = points.get(i).getLatitude();
+		}
+
+		int[] assigned = join(longitudes, latitudes);
+		List<GisGridAnnotation> result = new ArrayList<>(assigned.length);
+		for (int index : assigned) {
+			result.add(index < 0 ? null : annotations.get(index));
+		}
+		return result;
+	}
+
+	/**
+	 * Join a stream of points a batch at a time, so it can be much larger than memory
+	 * @param points
+	 * @param batchSize points joined together
+	 * @param consumer receives every point and its annotation (null for none), in stream order
+	 */
+	public void join(Stream<LngLatAlt> points, int batchSize, BiConsumer<LngLatAlt, GisGridAnnotation> consumer) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+
+		Iterator<LngLatAlt> iterator = points.iterator();
+		List<LngLatAlt> batch = new ArrayList<>(batchSize);
+		while (iterator.hasNext()) {
+			batch.add(iterator.next());
+			if (batch.size() == batchSize || !iterator.hasNext()) {
+				List<GisGridAnnotation> assigned = join(batch);
+				for (int i = 0; i < batch.size(); i++) {
+					consumer.accept(batch.get(i), assigned.get(i));
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	public void join(Stream<LngLatAlt> points, BiConsumer<LngLatAlt, GisGridAnnotation> consumer) {
+		join(points, DEFAULT_BATCH_SIZE, consumer);
+	}
+
+	/**
+	 * @return the cell holding a point, -1 outside the grid
+	 */
+	private int cell(double longitude, double latitude) {
+		if (!(longitude >= minLongitude && longitude <= maxLongitude && latitude >= minLatitude && latitude <= maxLatitude)) {
+			return -1;
+		}
+		return row(latitude) * columns + column(longitude);
+	}
+
+	private int column(double longitude) {
+		int column = (int) ((longitude - minLongitude) * columnScale);
+		return column < 0 ? 0 : (column >= columns ? columns - 1 : column);
+	}
+
+	private int row(double latitude) {
+		int row = (int) ((latitude - minLatitude) * rowScale);
+		return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+	}
+
+	private void forEachCell(Envelope envelope, IntConsumer action) {
+		if (envelope.isEmpty()) {
+			return;
+		}
+		int firstColumn = column(envelope.getMinLongitude());
+		int lastColumn = column(envelope.getMaxLongitude());
+		int firstRow = row(envelope.getMinLatitude());
+		int lastRow = row(envelope.getMaxLatitude());
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				action.accept(row * columns + column);
+			}
+		}
+	}
+
+	/**
+	 * Joins a range of cells, splitting while it holds many points
+	 */
+	private final class JoinCells extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Points joined by one task before it is worth splitting
+		 */
+		private static final int SPLIT_POINTS = 4096;
+
+		private final double[] longitudes;
+
+		private final double[] latitudes;
+
+		private final int[] pointStart;
+
+		private final int[] points;
+
+		private final int[] result;
+
+		private final int from;
+
+		private final int to;
+
+		JoinCells(double[] longitudes, double[] latitudes, int[] pointStart, int[] points, int[] result, int from, int to) {
+			this.longitudes = longitudes;
+			this.latitudes = latitudes;
+			this.pointStart = pointStart;
+			this.points = points;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1 && pointStart[to] - pointStart[from] > SPLIT_POINTS) {
+				int mid = (from + to) >>> 1;
+				JoinCells left = new JoinCells(longitudes, latitudes, pointStart, points, result, from, mid);
+				JoinCells right = new JoinCells(longitudes, latitudes, pointStart, points, result, mid, to);
+				if (pool == null) {
+					left.compute();
+					right.compute();
+				} else {
+					invokeAll(left, right);
+				}
+				return;
+			}
+
+			for (int cell = from; cell < to; cell++) {
+				int first = cellStart[cell];
+				int last = cellStart[cell + 1];
+				if (first == last) {
+					continue;
+				}
+
+				for (int p = pointStart[cell]; p < pointStart[cell + 1]; p++) {
+					int point = points[p];
+					double longitude = longitudes[point];
+					double latitude = latitudes[point];
+
+					for (int a = first; a < last; a++) {
+						if (prepared[cellAnnotations[a]].contains(longitude, latitude)) {
+							result[point] = cellAnnotations[a];
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package spelexander.gis;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of rendered tiles, bounded by the memory their pixels
+ * take rather than by count. Memory held elsewhere for the same layer, such as its
+ * projected shapes, can be reserved against the same budget. Thread safe.
+ */
+public class TileCache {
+
+	private final long maxBytes;
+
+	private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+
+	private long currentBytes = 0;
+
+	private long reservedBytes = 0;
+
+	/**
+	 * @param maxBytes memory to allow for tile pixels
+	 */
+	public TileCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Approximate pixel memory of an image
+	 * @param image
+	 * @return
+	 */
+	public static long sizeOf(BufferedImage image) {
+		int bytesPerPixel = Math.max(1, (image.getColorModel().getPixelSize() + 7) / 8);
+		return (long) image.getWidth() * image.getHeight() * bytesPerPixel;
+	}
+
+	public synchronized BufferedImage get(TileKey key) {
+		return tiles.get(key);
+	}
+
+	/**
+	 * Add a tile, evicting the least recently used tiles until it fits
+	 * @param key
+	 * @param image
+	 */
+	public synchronized void put(TileKey key, BufferedImage image) {
+		BufferedImage previous = tiles.put(key, image);
+		if (previous != null) {
+			currentBytes -= sizeOf(previous);
+		}
+		currentBytes += sizeOf(image);
+
+		evict(key);
+	}
+
+	/**
+	 * Count memory held outside the cache against its budget, evicting tiles to make room
+	 * @param bytes
+	 */
+	public synchronized void reserve(long bytes) {
+		reservedBytes += bytes;
+		evict(null);
+	}
+
+	/**
+	 * Return memory previously reserved
+	 * @param bytes
+	 */
+	public synchronized void release(long bytes) {
+		reservedBytes = Math.max(0, reservedBytes - bytes);
+	}
+
+	/**
+	 * Evict least recently used tiles, other than keep, until within budget
+	 */
+	private void evict(TileKey keep) {
+		Iterator<Map.Entry<TileKey, BufferedImage>> iterator = tiles.entrySet().iterator();
+		while (currentBytes + reservedBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<TileKey, BufferedImage> eldest = iterator.next();
+			if (eldest.getKey().equals(keep)) {
+				continue;
+			}
+			currentBytes -= sizeOf(eldest.getValue());
+			iterator.remove();
+		}
+	}
+
+	public synchronized void remove(TileKey key) {
+		BufferedImage previous = tiles.remove(key);
+		if (previous != null) {
+			currentBytes -= sizeOf(previous);
+		}
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		currentBytes = 0;
+	}
+
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	public synchronized long getReservedBytes() {
+		return reservedBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
@@ -0,0 +1,73 @@
+package spelexander.gis;
+
+/**
+ * Identifies one rendered tile: the zoom level (grid units are scaled by 2^zoom
+ * pixels), the tile's column and row at that zoom, and the field bearing the
+ * layer was rotated by.
+ */
+public final class TileKey {
+
+	private final int zoom;
+
+	private final int tileX;
+
+	private final int tileY;
+
+	private final double bearing;
+
+	public TileKey(int zoom, int tileX, int tileY, double bearing) {
+		this.zoom = zoom;
+		this.tileX = tileX;
+		this.tileY = tileY;
+		this.bearing = bearing;
+	}
+
+	public int getZoom() {
+		return zoom;
+	}
+
+	public int getTileX() {
+		return tileX;
+	}
+
+	public int getTileY() {
+		return tileY;
+	}
+
+	public double getBearing() {
+		return bearing;
+	}
+
+	/**
+	 * @return pixels per grid unit at this zoom
+	 */
+	public double getScale() {
+		return Math.pow(2.0, zoom);
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(bearing);
+		int result = 31 * zoom + tileX;
+		result = 31 * result + tileY;
+		return 31 * result + (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof TileKey)) {
+			return false;
+		}
+		TileKey other = (TileKey) obj;
+		return zoom == other.zoom && tileX == other.tileX && tileY == other.tileY
+				&& Double.compare(bearing, other.bearing) == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "TileKey{zoom=" + zoom + ", tileX=" + tileX + ", tileY=" + tileY + ", bearing=" + bearing + "}";
+	}
+}
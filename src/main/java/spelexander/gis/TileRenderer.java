@@ -0,0 +1,355 @@
+package spelexander.gis;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import org.geojson.LngLatAlt;
+
+/**
+ * Renders a layer of annotations into fixed size tiles for Swing clients, so a pan
+ * only blits cached tiles instead of re-projecting every polygon.
+ *
+ * For each bearing the layer is rotated to north and projected once with
+ * {@link MapGisGridUtil#getPolygonShape(GisGridAnnotation, LngLatAlt, Dimension, ScaleRotation, WidthHeightProvider)}.
+ * Only the {@link #MAX_PROJECTED_LAYERS} most recently used bearings keep their
+ * projection, and its memory is reserved against the {@link TileCache} budget.
+ * Tiles are rendered on the given executor and kept in the cache. Listeners are
+ * told when a background tile is ready, on the rendering thread. A render still
+ * running when the renderer is invalidated is discarded and its future cancelled.
+ */
+public class TileRenderer {
+
+	/**
+	 * Paints one projected annotation onto a tile, the graphics are already scaled to grid units
+	 */
+	public interface TilePainter {
+		void paint(Graphics2D graphics, GisGridAnnotation annotation, Shape shape);
+	}
+
+	/**
+	 * Translucent fill with a one pixel outline
+	 */
+	public static final TilePainter DEFAULT_PAINTER = (graphics, annotation, shape) -> {
+		graphics.setColor(new Color(30, 120, 200, 90));
+		graphics.fill(shape);
+		graphics.setColor(new Color(30, 120, 200));
+		graphics.draw(shape);
+	};
+
+	private final MapGisGridUtil util;
+
+	private final List<GisGridAnnotation> annotations;
+
+	private final Dimension fieldSize;
+
+	private final WidthHeightProvider params;
+
+	private final int tileSize;
+
+	private final TileCache cache;
+
+	private final ExecutorService executor;
+
+	private volatile TilePainter painter = DEFAULT_PAINTER;
+
+	/**
+	 * Projections kept, the current bearing and the one before so rotating back and forth stays cheap
+	 */
+	public static final int MAX_PROJECTED_LAYERS = 2;
+
+	/**
+	 * Least recently used projections, guarded by this
+	 */
+	private final LinkedHashMap<Double, ProjectedLayer> layers = new LinkedHashMap<>(4, 0.75f, true);
+
+	/**
+	 * Bumped by invalidate, renders scheduled under an older generation are discarded
+	 */
+	private long generation = 0;
+
+	private final Map<TileKey, CompletableFuture<BufferedImage>> pending = new ConcurrentHashMap<>();
+
+	private final List<Consumer<TileKey>> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param util
+	 * @param annotations the layer, not copied, call {@link #invalidate()} after changing it
+	 * @param fieldSize
+	 * @param params
+	 * @param tileSize tile width and height in pixels
+	 * @param cache
+	 * @param executor runs background renders
+	 */
+	public TileRenderer(MapGisGridUtil util, List<GisGridAnnotation> annotations, Dimension fieldSize,
+			WidthHeightProvider params, int tileSize, TileCache cache, ExecutorService executor) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Tile size must be positive");
+		}
+		this.util = Objects.requireNonNull(util);
+		this.annotations = Objects.requireNonNull(annotations);
+		this.fieldSize = Objects.requireNonNull(fieldSize);
+		this.params = Objects.requireNonNull(params);
+		this.tileSize = tileSize;
+		this.cache = Objects.requireNonNull(cache);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	public void setPainter(TilePainter painter) {
+		this.painter = Objects.requireNonNull(painter);
+		invalidate();
+	}
+
+	public void addTileListener(Consumer<TileKey> listener) {
+		listeners.add(listener);
+	}
+
+	public void removeTileListener(Consumer<TileKey> listener) {
+		listeners.remove(listener);
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Drop cached projections and tiles, e.g. after the layer was edited
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		for (ProjectedLayer layer : layers.values()) {
+			cache.release(layer.bytes);
+		}
+		layers.clear();
+		pending.clear();
+		cache.clear();
+	}
+
+	/**
+	 * A cached tile, or null after scheduling it to be rendered in the background
+	 * @param key
+	 * @return
+	 */
+	public BufferedImage getTile(TileKey key) {
+		BufferedImage image = cache.get(key);
+		if (image == null) {
+			requestTile(key);
+		}
+		return image;
+	}
+
+	/**
+	 * A cached tile or one rendering in the background, concurrent requests share a render
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<BufferedImage> requestTile(TileKey key) {
+		BufferedImage image = cache.get(key);
+		if (image != null) {
+			return CompletableFuture.completedFuture(image);
+		}
+
+		CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+		long scheduled;
+		synchronized (this) {
+			CompletableFuture<BufferedImage> existing = pending.putIfAbsent(key, future);
+			if (existing != null) {
+				return existing;
+			}
+			scheduled = generation;
+		}
+
+		try {
+			executor.execute(() -> {
+				try {
+					BufferedImage rendered = renderTile(key);
+					synchronized (this) {
+						pending.remove(key, future);
+						if (scheduled != generation) {
+							// Invalidated while rendering, the tile may show the old layer or painter
+							future.cancel(false);
+							return;
+						}
+						cache.put(key, rendered);
+					}
+					future.complete(rendered);
+
+					for (Consumer<TileKey> listener : listeners) {
+						listener.accept(key);
+					}
+				} catch (RuntimeException e) {
+					pending.remove(key, future);
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			pending.remove(key, future);
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	/**
+	 * Render a tile on the calling thread, bypassing the cache
+	 * @param key
+	 * @return
+	 */
+	public BufferedImage renderTile(TileKey key) {
+		ProjectedLayer layer = getLayer(key.getBearing());
+		double scale = key.getScale();
+
+		BufferedImage image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			graphics.translate(-(double) key.getTileX() * tileSize, -(double) key.getTileY() * tileSize);
+			graphics.scale(scale, scale);
+			graphics.setStroke(new BasicStroke((float) (1.0 / scale)));
+
+			// Tile area in grid units
+			double minX = key.getTileX() * tileSize / scale;
+			double minY = key.getTileY() * tileSize / scale;
+			double maxX = minX + tileSize / scale;
+			double maxY = minY + tileSize / scale;
+
+			TilePainter tilePainter = painter;
+			for (int i = 0; i < layer.shapes.size(); i++) {
+				Rectangle bounds = layer.bounds[i];
+				if (bounds.x > maxX || bounds.y > maxY || bounds.x + bounds.width < minX || bounds.y + bounds.height < minY) {
+					continue;
+				}
+				tilePainter.paint(graphics, layer.annotations.get(i), layer.shapes.get(i));
+			}
+		} finally {
+			graphics.dispose();
+		}
+
+		return image;
+	}
+
+	/**
+	 * Blit the cached tiles covering a viewport (in pixels at the given zoom), requesting
+	 * any that are missing. Missing tiles are left blank until a listener repaints.
+	 * @param graphics
+	 * @param viewport
+	 * @param zoom
+	 * @param bearing
+	 */
+	public void paint(Graphics2D graphics, Rectangle viewport, int zoom, double bearing) {
+		int firstX = Math.floorDiv(viewport.x, tileSize);
+		int firstY = Math.floorDiv(viewport.y, tileSize);
+		int lastX = Math.floorDiv(viewport.x + viewport.width - 1, tileSize);
+		int lastY = Math.floorDiv(viewport.y + viewport.height - 1, tileSize);
+
+		for (int tileY = firstY; tileY <= lastY; tileY++) {
+			for (int tileX = firstX; tileX <= lastX; tileX++) {
+				BufferedImage tile = getTile(new TileKey(zoom, tileX, tileY, bearing));
+				if (tile != null) {
+					graphics.drawImage(tile, tileX * tileSize - viewport.x, tileY * tileSize - viewport.y, null);
+				}
+			}
+		}
+	}
+
+	private ProjectedLayer getLayer(double bearing) {
+		long projected;
+		synchronized (this) {
+			ProjectedLayer layer = layers.get(bearing);
+			if (layer != null) {
+				return layer;
+			}
+			projected = generation;
+		}
+
+		// Project outside the lock, concurrent requests for a new bearing may both project it
+		ProjectedLayer layer = project(bearing);
+
+		synchronized (this) {
+			if (projected != generation) {
+				return layer;
+			}
+			ProjectedLayer existing = layers.get(bearing);
+			if (existing != null) {
+				return existing;
+			}
+
+			layers.put(bearing, layer);
+			cache.reserve(layer.bytes);
+
+			Iterator<ProjectedLayer> eldest = layers.values().iterator();
+			while (layers.size() > MAX_PROJECTED_LAYERS) {
+				cache.release(eldest.next().bytes);
+				eldest.remove();
+			}
+			return layer;
+		}
+	}
+
+	private ProjectedLayer project(double bearing) {
+		ScaleRotation rotation = new ScaleRotation(bearing);
+		List<GisGridAnnotation> rotated = bearing == 0.0 ? new ArrayList<>(annotations) : util.rotateToNorth(annotations, rotation);
+		LngLatAlt topLeft = util.getTopLeftPoint(rotated, fieldSize, rotation, params);
+
+		List<Shape> shapes = new ArrayList<>(rotated.size());
+		Rectangle[] bounds = new Rectangle[rotated.size()];
+		long bytes = 0;
+		for (int i = 0; i < rotated.size(); i++) {
+			Shape shape = util.getPolygonShape(rotated.get(i), topLeft, fieldSize, rotation, params);
+			shapes.add(shape);
+			bounds[i] = shape.getBounds();
+			bytes += sizeOf(shape);
+		}
+
+		return new ProjectedLayer(new ArrayList<>(annotations), shapes, bounds, bytes);
+	}
+
+	/**
+	 * Approximate memory of a projected shape and its bounds
+	 */
+	private static long sizeOf(Shape shape) {
+		long bytes = 96;
+		if (shape instanceof Polygon) {
+			bytes += 8L * ((Polygon) shape).xpoints.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Shapes of the layer at one bearing, with their bounds for culling
+	 */
+	private static final class ProjectedLayer {
+
+		final List<GisGridAnnotation> annotations;
+
+		final List<Shape> shapes;
+
+		final Rectangle[] bounds;
+
+		final long bytes;
+
+		ProjectedLayer(List<GisGridAnnotation> annotations, List<Shape> shapes, Rectangle[] bounds, long bytes) {
+			this.annotations = annotations;
+			this.shapes = shapes;
+			this.bounds = bounds;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package spelexander.gis;
+
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+import org.geojson.LngLatAlt;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Projects only what is visible in a window of the grid: annotations whose
+ * envelope falls outside the window are rejected without projecting a vertex, the
+ * rest are clipped to the window (Sutherland-Hodgman in grid space) so huge
+ * polygons only hand Java2D the visible part.
+ *
+ * Envelopes are cached per annotation with weak, identity compared keys, call
+ * {@link #invalidate(GisGridAnnotation)} after editing an annotation in place. With
+ * an {@link AnnotationRTree} the visible annotations are found without visiting the
+ * rest of the layer. Safe to share between threads.
+ */
+public class ViewportClipper {
+
+	private final ProjectionContext context;
+
+	private final ConcurrentMap<GisGridAnnotation, Envelope> envelopes = new MapMaker().weakKeys().makeMap();
+
+	/**
+	 * Grid units per degree along each axis, away from the top left
+	 */
+	private final double unitsPerDegreeX;
+
+	private final double unitsPerDegreeY;
+
+	public ViewportClipper(ProjectionContext context) {
+		this.context = Objects.requireNonNull(context);
+
+		LngLatAlt topLeft = context.getTopLeft();
+		this.unitsPerDegreeX = context.toGridX(topLeft.getLongitude() + 1.0) - context.toGridX(topLeft.getLongitude());
+		this.unitsPerDegreeY = context.toGridY(topLeft.getLatitude() + 1.0) - context.toGridY(topLeft.getLatitude());
+	}
+
+	public ProjectionContext getContext() {
+		return context;
+	}
+
+	/**
+	 * The whole field, 0,0 to the field size
+	 * @return
+	 */
+	public Rectangle2D getFieldBounds() {
+		return new Rectangle2D.Double(0, 0, context.getFieldSize().getWidth(), context.getFieldSize().getHeight());
+	}
+
+	public Envelope getEnvelope(GisGridAnnotation annotation) {
+		return envelopes.computeIfAbsent(annotation, Envelope::of);
+	}
+
+	public void invalidate(GisGridAnnotation annotation) {
+		envelopes.remove(annotation);
+	}
+
+	public void clear() {
+		envelopes.clear();
+	}
+
+	/**
+	 * Grid bounds of an annotation from its envelope. Grid x and y grow with the
+	 * distance from the top left on either side, so an envelope spanning the top left
+	 * starts at its grid position.
+	 * @param annotation
+	 * @return null for an empty annotation
+	 */
+	public Rectangle2D getGridBounds(GisGridAnnotation annotation) {
+		Envelope envelope = getEnvelope(annotation);
+		if (envelope.isEmpty()) {
+			return null;
+		}
+
+		LngLatAlt topLeft = context.getTopLeft();
+		double[] x = range(context.toGridX(envelope.getMinLongitude()), context.toGridX(envelope.getMaxLongitude()),
+				envelope.getMinLongitude() <= topLeft.getLongitude() && topLeft.getLongitude() <= envelope.getMaxLongitude(),
+				context.toGridX(topLeft.getLongitude()));
+		double[] y = range(context.toGridY(envelope.getMinLatitude()), context.toGridY(envelope.getMaxLatitude()),
+				envelope.getMinLatitude() <= topLeft.getLatitude() && topLeft.getLatitude() <= envelope.getMaxLatitude(),
+				context.toGridY(topLeft.getLatitude()));
+
+		return new Rectangle2D.Double(x[0], y[0], x[1] - x[0], y[1] - y[0]);
+	}
+
+	/**
+	 * @param annotation
+	 * @param viewport window in grid units
+	 * @return false if no part of the annotation's envelope is in the window
+	 */
+	public boolean isVisible(GisGridAnnotation annotation, Rectangle2D viewport) {
+		Rectangle2D bounds = getGridBounds(annotation);
+		return bounds != null && bounds.getMaxX() >= viewport.getMinX() && bounds.getMinX() <= viewport.getMaxX()
+				&& bounds.getMaxY() >= viewport.getMinY() && bounds.getMinY() <= viewport.getMaxY();
+	}
+
+	/**
+	 * The visible part of an annotation's projected ring
+	 * @param annotation
+	 * @param viewport window in grid units
+	 * @return null if the annotation is not visible
+	 */
+	public Shape getPolygonShape(GisGridAnnotation annotation, Rectangle2D viewport) {
+		if (!isVisible(annotation, viewport)) {
+			return null;
+		}
+
+		List<LngLatAlt> ring = annotation.getExteriorRing();
+		int size = ring.size();
+		double[] xs = new double[size];
+		double[] ys = new double[size];
+		int count = 0;
+		for (LngLatAlt point : ring) {
+			xs[count] = context.toGridX(point.getLongitude());
+			ys[count] = context.toGridY(point.getLatitude());
+			count++;
+		}
+
+		Rectangle2D bounds = getGridBounds(annotation);
+		if (viewport.contains(bounds)) {
+			return toPolygon(xs, ys, count);
+		}
+
+		double[][] clipped = clip(xs, ys, count, viewport.getMinX(), viewport.getMinY(), viewport.getMaxX(), viewport.getMaxY());
+		if (clipped[0].length == 0) {
+			return null;
+		}
+		return toPolygon(clipped[0], clipped[1], clipped[0].length);
+	}
+
+	/**
+	 * Visit the visible annotations of a layer with their clipped shapes, in order
+	 * @param annotations
+	 * @param viewport window in grid units
+	 * @param visitor
+	 */
+	public void forEachVisible(List<GisGridAnnotation> annotations, Rectangle2D viewport,
+			BiConsumer<GisGridAnnotation, Shape> visitor) {
+		for (GisGridAnnotation annotation : annotations) {
+			Shape shape = getPolygonShape(annotation, viewport);
+			if (shape != null) {
+				visitor.accept(annotation, shape);
+			}
+		}
+	}
+
+	/**
+	 * Visit the visible annotations of an indexed layer with their clipped shapes,
+	 * only searching the parts of the tree that can project into the window
+	 * @param tree
+	 * @param viewport window in grid units
+	 * @param visitor
+	 */
+	public void forEachVisible(AnnotationRTree tree, Rectangle2D viewport, BiConsumer<GisGridAnnotation, Shape> visitor) {
+		Set<GisGridAnnotation> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Envelope window : getWindows(viewport)) {
+			for (GisGridAnnotation annotation : tree.queryEnvelopes(window)) {
+				if (!seen.add(annotation)) {
+					continue;
+				}
+				Shape shape = getPolygonShape(annotation, viewport);
+				if (shape != null) {
+					visitor.accept(annotation, shape);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Longitude/latitude windows that project into a grid window, one on each side of
+	 * the top left along each axis
+	 * @param viewport
+	 * @return
+	 */
+	public List<Envelope> getWindows(Rectangle2D viewport) {
+		LngLatAlt topLeft = context.getTopLeft();
+		double[] lng = offsets(viewport.getMinX(), viewport.getMaxX(), context.toGridX(topLeft.getLongitude()), unitsPerDegreeX);
+		double[] lat = offsets(viewport.getMinY(), viewport.getMaxY(), context.toGridY(topLeft.getLatitude()), unitsPerDegreeY);
+
+		List<Envelope> windows = new ArrayList<>(4);
+		if (lng == null || lat == null) {
+			return windows;
+		}
+
+		double topLong = topLeft.getLongitude();
+		double topLat = topLeft.getLatitude();
+		for (int sideX = -1; sideX <= 1; sideX += 2) {
+			for (int sideY = -1; sideY <= 1; sideY += 2) {
+				double lng1 = topLong + sideX * lng[0];
+				double lng2 = topLong + sideX * lng[1];
+				double lat1 = topLat + sideY * lat[0];
+				double lat2 = topLat + sideY * lat[1];
+				windows.add(new Envelope(Math.min(lng1, lng2), Math.min(lat1, lat2), Math.max(lng1, lng2), Math.max(lat1, lat2)));
+			}
+		}
+		return windows;
+	}
+
+	/**
+	 * Range of distances in degrees from the top left that project between two grid values
+	 * @return null if none do
+	 */
+	private static double[] offsets(double min, double max, double origin, double unitsPerDegree) {
+		if (unitsPerDegree == 0.0) {
+			return min <= origin && origin <= max ? new double[] { 0.0, Double.MAX_VALUE } : null;
+		}
+
+		double a = (min - origin) / unitsPerDegree;
+		double b = (max - origin) / unitsPerDegree;
+		double low = Math.max(0.0, Math.min(a, b));
+		double high = Math.max(a, b);
+		if (high < 0.0) {
+			return null;
+		}
+		return new double[] { low, high };
+	}
+
+	private static double[] range(double a, double b, boolean spansOrigin, double origin) {
+		double min = Math.min(a, b);
+		double max = Math.max(a, b);
+		if (spansOrigin) {
+			min = Math.min(min, origin);
+			max = Math.max(max, origin);
+		}
+		return new double[] { min, max };
+	}
+
+	/**
+	 * Sutherland-Hodgman clipping of a polygon to a rectangle
+	 * @param xs
+	 * @param ys
+	 * @param count
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 * @return the clipped xs and ys, empty if nothing is inside
+	 */
+	public static double[][] clip(double[] xs, double[] ys, int count, double minX, double minY, double maxX, double maxY) {
+		double[][] polygon = { xs, ys };
+		int size = count;
+
+		for (int edge = 0; edge < 4 && size > 0; edge++) {
+			double[] outXs = new double[2 * size];
+			double[] outYs = new double[2 * size];
+			int out = 0;
+
+			double[] inXs = polygon[0];
+			double[] inYs = polygon[1];
+			double prevX = inXs[size - 1];
+			double prevY = inYs[size - 1];
+			boolean prevInside = inside(edge, prevX, prevY, minX, minY, maxX, maxY);
+
+			for (int i = 0; i < size; i++) {
+				double x = inXs[i];
+				double y = inYs[i];
+				boolean isInside = inside(edge, x, y, minX, minY, maxX, maxY);
+
+				if (isInside != prevInside) {
+					double t = intersection(edge, prevX, prevY, x, y, minX, minY, maxX, maxY);
+					outXs[out] = prevX + t * (x - prevX);
+					outYs[out] = prevY + t * (y - prevY);
+					out++;
+				}
+				if (isInside) {
+					outXs[out] = x;
+					outYs[out] = y;
+					out++;
+				}
+
+				prevX = x;
+				prevY = y;
+				prevInside = isInside;
+			}
+
+			polygon = new double[][] { outXs, outYs };
+			size = out;
+		}
+
+		double[][] result = new double[2][size];
+		System.arraycopy(polygon[0], 0, result[0], 0, size);
+		System.arraycopy(polygon[1], 0, result[1], 0, size);
+		return result;
+	}
+
+	/**
+	 * Edges in order: left, right, top, bottom
+	 */
+	private static boolean inside(int edge, double x, double y, double minX, double minY, double maxX, double maxY) {
+		switch (edge) {
+		case 0:
+			return x >= minX;
+		case 1:
+			return x <= maxX;
+		case 2:
+			return y >= minY;
+		default:
+			return y <= maxY;
+		}
+	}
+
+	/**
+	 * Fraction along the segment from the first point where it crosses an edge
+	 */
+	private static double intersection(int edge, double x1, double y1, double x2, double y2, double minX, double minY,
+			double maxX, double maxY) {
+		switch (edge) {
+		case 0:
+			return (minX - x1) / (x2 - x1);
+		case 1:
+			return (maxX - x1) / (x2 - x1);
+		case 2:
+			return (minY - y1) / (y2 - y1);
+		default:
+			return (maxY - y1) / (y2 - y1);
+		}
+	}
+
+	private static Polygon toPolygon(double[] xs, double[] ys, int count) {
+		int[] x = new int[count];
+		int[] y = new int[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = (int) Math.round(xs[i]);
+			y[i] = (int) Math.round(ys[i]);
+		}
+		return new Polygon(x, y, count);
+	}
+}
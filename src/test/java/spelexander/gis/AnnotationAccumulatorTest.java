@@ -0,0 +1,166 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.geojson.LngLatAlt;
+import org.junit.Test;
+
+public class AnnotationAccumulatorTest {
+
+	private final MapGisGridUtil util = new MapGisGridUtil();
+
+	private final ScaleRotation rotation = new ScaleRotation(30.0);
+
+	// Mock provider, half meter cells with a border
+	private final WidthHeightProvider provider = new WidthHeightProvider() {
+
+		@Override
+		public double getTotalUnitX() {
+			return 0.5;
+		}
+
+		@Override
+		public double getTotalUnitY() {
+			return 0.5;
+		}
+
+		@Override
+		public double getUnitXForMeters(double meters) {
+			return meters / this.getTotalUnitX();
+		}
+
+		@Override
+		public double getMetersForUnitX(double x) {
+			return x * this.getTotalUnitX();
+		}
+
+		@Override
+		public double getUnitYForMeters(double meters) {
+			return meters / this.getTotalUnitY();
+		}
+
+		@Override
+		public double getMetersForUnitY(double y) {
+			return y * this.getTotalUnitY();
+		}
+
+		@Override
+		public int getAdditionalY() {
+			return 4;
+		}
+
+		@Override
+		public int getAdditionalX() {
+			return 4;
+		}
+	};
+
+	/**
+	 * helper method, a random triangle or degenerate line, some with altitude
+	 */
+	private static GisGridAnnotation randomAnnotation(Random rand) {
+		double lng = 149.0 + rand.nextDouble() * 0.05;
+		double lat = -35.0 + rand.nextDouble() * 0.05;
+		int points = rand.nextInt(10) == 0 ? 2 : 3 + rand.nextInt(5);
+		boolean altitude = rand.nextBoolean();
+
+		List<LngLatAlt> ring = new ArrayList<>();
+		for (int i = 0; i < points; i++) {
+			double pointLng = lng + rand.nextDouble() * 0.002;
+			double pointLat = lat + rand.nextDouble() * 0.002;
+			ring.add(altitude ? new LngLatAlt(pointLng, pointLat, rand.nextDouble() * 600) : new LngLatAlt(pointLng, pointLat));
+		}
+		return new GisGridAnnotation(ring);
+	}
+
+	/**
+	 * helper method
+	 */
+	private void assertMatchesBatch(AnnotationAccumulator accumulator, List<GisGridAnnotation> annotations) {
+		LngLatAlt expected = util.getCenterPoint(annotations);
+		LngLatAlt center = accumulator.getCenterPoint();
+
+		assertEquals("Longitude should match the batch center", expected.getLongitude(), center.getLongitude(), 1e-12);
+		assertEquals("Latitude should match the batch center", expected.getLatitude(), center.getLatitude(), 1e-12);
+		assertEquals("Altitude should match the batch center", expected.getAltitude(), center.getAltitude(), 1e-9);
+
+		Dimension fieldSize = util.getFieldSizeToUse(annotations, rotation, provider);
+		assertEquals("Field size should match the batch field size", fieldSize, accumulator.getFieldSizeToUse(rotation, provider));
+
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations, fieldSize, rotation, provider);
+		LngLatAlt result = accumulator.getTopLeftPoint(fieldSize, rotation, provider);
+		assertEquals("Top left should match the batch top left", 0.0, MapGisGridUtil.distance(topLeft, result), 1e-6);
+	}
+
+	@Test
+	public void randomEditsMatchBatch() {
+		Random rand = new Random(11);
+		AnnotationAccumulator accumulator = new AnnotationAccumulator(util);
+		List<GisGridAnnotation> annotations = new ArrayList<>();
+
+		for (int i = 0; i < 200; i++) {
+			GisGridAnnotation annotation = randomAnnotation(rand);
+			annotations.add(annotation);
+			assertTrue("New annotation should be added", accumulator.add(annotation));
+		}
+		assertMatchesBatch(accumulator, annotations);
+
+		for (int step = 0; step < 500; step++) {
+			int index = rand.nextInt(annotations.size());
+			switch (rand.nextInt(4)) {
+			case 0:
+				GisGridAnnotation added = randomAnnotation(rand);
+				annotations.add(added);
+				accumulator.add(added);
+				break;
+			case 1:
+				assertTrue("Tracked annotation should be removed", accumulator.remove(annotations.remove(index)));
+				break;
+			case 2:
+				GisGridAnnotation replacement = randomAnnotation(rand);
+				assertTrue("Tracked annotation should be replaced", accumulator.replace(annotations.set(index, replacement), replacement));
+				break;
+			default:
+				// Move a vertex in place
+				LngLatAlt point = annotations.get(index).getExteriorRing().get(0);
+				point.setLongitude(point.getLongitude() + (rand.nextDouble() - 0.5) * 0.01);
+				point.setLatitude(point.getLatitude() + (rand.nextDouble() - 0.5) * 0.01);
+				assertTrue("Tracked annotation should be updated", accumulator.update(annotations.get(index)));
+			}
+
+			if (step % 25 == 0) {
+				assertMatchesBatch(accumulator, annotations);
+			}
+		}
+
+		assertEquals("Accumulator size was incorrect", annotations.size(), accumulator.size());
+		assertMatchesBatch(accumulator, annotations);
+	}
+
+	@Test
+	public void removingEverythingEmpties() {
+		AnnotationAccumulator accumulator = new AnnotationAccumulator(util);
+		GisGridAnnotation annotation = randomAnnotation(new Random(5));
+
+		assertNull("Empty accumulator should have no center", accumulator.getCenterPoint());
+		accumulator.add(annotation);
+		assertFalse("Annotation should only be added once", accumulator.add(annotation));
+		accumulator.remove(annotation);
+
+		assertNull("Empty accumulator should have no center", accumulator.getCenterPoint());
+		assertNull("Empty accumulator should have no field size", accumulator.getFieldSizeToUse(rotation, provider));
+		assertTrue("Empty accumulator should have an empty envelope", accumulator.getEnvelope().isEmpty());
+
+		accumulator.addAll(Arrays.asList(annotation));
+		assertMatchesBatch(accumulator, Arrays.asList(annotation));
+	}
+}
@@ -0,0 +1,246 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.geojson.LngLatAlt;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnnotationRTreeTest {
+
+	private List<GisGridAnnotation> annotations2;
+
+	private List<GisGridAnnotation> random;
+
+	@Before
+	public void loadFiles() {
+		try {
+			annotations2 = new MapGisGridAnnotationReader().fromGeoJson(new File(this.getClass().getResource("geojson-test2.json").toURI()));
+		} catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+
+		Random rand = new Random(42);
+		random = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			random.add(square(149.0 + rand.nextDouble(), -35.0 + rand.nextDouble(), rand.nextDouble() * 0.01));
+		}
+	}
+
+	/**
+	 * helper method
+	 */
+	private static GisGridAnnotation square(double lng, double lat, double size) {
+		return new GisGridAnnotation(new ArrayList<>(Arrays.asList(new LngLatAlt(lng, lat), new LngLatAlt(lng + size, lat),
+				new LngLatAlt(lng + size, lat + size), new LngLatAlt(lng, lat + size), new LngLatAlt(lng, lat))));
+	}
+
+	/**
+	 * helper method
+	 */
+	private static List<GisGridAnnotation> bruteForce(List<GisGridAnnotation> annotations, Envelope window) {
+		List<GisGridAnnotation> result = new ArrayList<>();
+		for (GisGridAnnotation annotation : annotations) {
+			if (annotation.intersects(window)) {
+				result.add(annotation);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * helper method, compares by identity ignoring order
+	 */
+	private static void assertSameAnnotations(List<GisGridAnnotation> expected, List<GisGridAnnotation> result) {
+		assertEquals("Query returned the wrong number of annotations", expected.size(), result.size());
+
+		Map<GisGridAnnotation, Boolean> seen = new IdentityHashMap<>();
+		for (GisGridAnnotation annotation : result) {
+			seen.put(annotation, Boolean.TRUE);
+		}
+		for (GisGridAnnotation annotation : expected) {
+			assertTrue("Query missed an annotation", seen.containsKey(annotation));
+		}
+	}
+
+	/**
+	 * helper method
+	 */
+	private static void assertQueriesMatch(AnnotationRTree tree, List<GisGridAnnotation> annotations, long seed) {
+		Random rand = new Random(seed);
+		for (int i = 0; i < 200; i++) {
+			double lng = 149.0 + rand.nextDouble();
+			double lat = -35.0 + rand.nextDouble();
+			double size = rand.nextDouble() * 0.05;
+			Envelope window = new Envelope(lng, lat, lng + size, lat + size);
+
+			assertSameAnnotations(bruteForce(annotations, window), tree.query(window));
+		}
+	}
+
+	@Test
+	public void bulkLoadedWindowQueriesMatch() {
+		AnnotationRTree tree = new AnnotationRTree(random);
+
+		assertEquals("Tree size was incorrect", random.size(), tree.size());
+		assertQueriesMatch(tree, random, 1);
+	}
+
+	@Test
+	public void incrementalInsertAndRemoveMatch() {
+		AnnotationRTree tree = new AnnotationRTree(4);
+		List<GisGridAnnotation> live = new ArrayList<>();
+
+		for (GisGridAnnotation annotation : random) {
+			tree.insert(annotation);
+			live.add(annotation);
+		}
+		assertQueriesMatch(tree, live, 2);
+
+		Collections.shuffle(live, new Random(3));
+		List<GisGridAnnotation> removed = new ArrayList<>(live.subList(0, 1500));
+		live.removeAll(removed);
+		for (GisGridAnnotation annotation : removed) {
+			assertTrue("Indexed annotation should be removed", tree.remove(annotation));
+		}
+
+		assertFalse("Removed annotation should not be removed twice", tree.remove(removed.get(0)));
+		assertEquals("Tree size was incorrect", live.size(), tree.size());
+		assertQueriesMatch(tree, live, 4);
+	}
+
+	@Test
+	public void pointQueryIsExact() {
+		AnnotationRTree tree = new AnnotationRTree(annotations2);
+
+		// Inside the bounding box of the first polygon but outside the polygon itself
+		LngLatAlt outside = new LngLatAlt(149.3860, -35.0773);
+		LngLatAlt inside = new LngLatAlt(149.3880, -35.0790);
+
+		assertEquals("Point outside every polygon should not match", 0, tree.query(outside).size());
+		assertEquals("Point inside should match its polygon", 1, tree.query(inside).size());
+		assertTrue("Point inside should match the first polygon", tree.query(inside).get(0) == annotations2.get(0));
+	}
+
+	@Test
+	public void emptyTreeQueries() {
+		AnnotationRTree tree = new AnnotationRTree();
+
+		assertTrue("Empty tree should be empty", tree.isEmpty());
+		assertEquals("Empty tree should match nothing", 0, tree.query(149.0, -36.0, 150.0, -35.0).size());
+	}
+
+	/**
+	 * helper method, the k smallest distances by brute force
+	 */
+	private static List<Double> bruteForceNearest(List<GisGridAnnotation> annotations, LngLatAlt point, int k,
+			AnnotationRTree.NearestMode mode) {
+		List<Double> distances = new ArrayList<>();
+		for (GisGridAnnotation annotation : annotations) {
+			if (mode == AnnotationRTree.NearestMode.CENTROID) {
+				distances.add(MapGisGridUtil.distance(point, annotation.getCenterPoint().getCoordinates()));
+			} else {
+				distances.add(GreatCircle.distanceToRing(point.getLongitude(), point.getLatitude(),
+						annotation.getExteriorRing(), annotation.contains(point)));
+			}
+		}
+		Collections.sort(distances);
+		return distances.subList(0, Math.min(k, distances.size()));
+	}
+
+	/**
+	 * helper method
+	 */
+	private static void assertNearestMatches(AnnotationRTree tree, List<GisGridAnnotation> annotations, LngLatAlt point,
+			int k, AnnotationRTree.NearestMode mode) {
+		List<AnnotationRTree.Neighbour> nearest = tree.nearest(point, k, mode);
+		List<Double> expected = bruteForceNearest(annotations, point, k, mode);
+
+		assertEquals("Nearest returned the wrong number of annotations", expected.size(), nearest.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("Nearest distances should match", expected.get(i), nearest.get(i).getDistance(), 1e-6);
+		}
+	}
+
+	@Test
+	public void nearestMatchesBruteForce() {
+		AnnotationRTree tree = new AnnotationRTree(random);
+
+		Random rand = new Random(11);
+		for (int i = 0; i < 50; i++) {
+			LngLatAlt point = new LngLatAlt(148.8 + rand.nextDouble() * 1.4, -35.2 + rand.nextDouble() * 1.4);
+			int k = 1 + rand.nextInt(20);
+			assertNearestMatches(tree, random, point, k, AnnotationRTree.NearestMode.CENTROID);
+			assertNearestMatches(tree, random, point, k, AnnotationRTree.NearestMode.RING);
+		}
+	}
+
+	@Test
+	public void nearestByRing() {
+		GisGridAnnotation small = square(149.0, -35.0, 0.001);
+		GisGridAnnotation large = square(149.002, -35.01, 0.02);
+		AnnotationRTree tree = new AnnotationRTree(Arrays.asList(small, large));
+
+		// Inside the large square but nearer the small square's centroid
+		LngLatAlt point = new LngLatAlt(149.0025, -35.0);
+		assertTrue(large.contains(point));
+		assertTrue(small == tree.nearest(point, 1, AnnotationRTree.NearestMode.CENTROID).get(0).getAnnotation());
+
+		AnnotationRTree.Neighbour byRing = tree.nearest(point, 1, AnnotationRTree.NearestMode.RING).get(0);
+		assertTrue(large == byRing.getAnnotation());
+		assertEquals(0.0, byRing.getDistance(), 0.0);
+
+		// Due east of the small square, the nearest ring point is on its east edge
+		LngLatAlt east = new LngLatAlt(149.0015, -34.9995);
+		AnnotationRTree.Neighbour toSmall = tree.nearest(east, 2, AnnotationRTree.NearestMode.RING).get(0);
+		assertTrue(small == toSmall.getAnnotation());
+		assertEquals(MapGisGridUtil.distance(149.001, -34.9995, 149.0015, -34.9995), toSmall.getDistance(), 1e-3);
+	}
+
+	@Test
+	public void nearestAtHighLatitude() {
+		// Long edges bow towards the pole past their envelopes
+		List<GisGridAnnotation> annotations = new ArrayList<>();
+		Random rand = new Random(5);
+		for (int i = 0; i < 300; i++) {
+			annotations.add(square(-20.0 + rand.nextDouble() * 40.0, 78.0 + rand.nextDouble() * 2.0, 0.5 + rand.nextDouble() * 4.0));
+		}
+		AnnotationRTree tree = new AnnotationRTree(annotations, 4);
+
+		// North of the wide square's envelope but under its arcing north edge's peak
+		GisGridAnnotation wide = square(0.0, 76.0, 4.0);
+		GisGridAnnotation near = square(2.0, 80.013, 0.001);
+		LngLatAlt above = new LngLatAlt(2.0, 80.008);
+		AnnotationRTree pair = new AnnotationRTree(Arrays.asList(wide, near));
+		assertTrue(wide == pair.nearest(above, 1, AnnotationRTree.NearestMode.RING).get(0).getAnnotation());
+
+		for (int i = 0; i < 30; i++) {
+			LngLatAlt point = new LngLatAlt(-25.0 + rand.nextDouble() * 50.0, 77.0 + rand.nextDouble() * 10.0);
+			assertNearestMatches(tree, annotations, point, 5, AnnotationRTree.NearestMode.RING);
+			assertNearestMatches(tree, annotations, point, 5, AnnotationRTree.NearestMode.CENTROID);
+		}
+	}
+
+	@Test
+	public void nearestOnSmallTrees() {
+		AnnotationRTree tree = new AnnotationRTree();
+		assertEquals(0, tree.nearest(new LngLatAlt(149.0, -35.0), 3).size());
+
+		tree.insert(square(149.0, -35.0, 0.01));
+		tree.insert(square(149.1, -35.0, 0.01));
+		assertEquals(2, tree.nearest(new LngLatAlt(149.0, -35.0), 10).size());
+		assertEquals(0, tree.nearest(new LngLatAlt(149.0, -35.0), 0).size());
+	}
+}
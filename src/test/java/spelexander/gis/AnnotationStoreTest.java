@@ -0,0 +1,227 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.geojson.LngLatAlt;
+import org.junit.Test;
+
+public class AnnotationStoreTest {
+
+	private final MapGisGridUtil util = new MapGisGridUtil();
+
+	private static GisGridAnnotation square(double lng, double lat, String name) {
+		GisGridAnnotation annotation = new GisGridAnnotation(Arrays.asList(new LngLatAlt(lng, lat),
+				new LngLatAlt(lng + 0.001, lat), new LngLatAlt(lng + 0.001, lat + 0.001), new LngLatAlt(lng, lat + 0.001)));
+		annotation.setName(name);
+		return annotation;
+	}
+
+	@Test
+	public void testSnapshotIsolation() {
+		AnnotationStore store = new AnnotationStore(2);
+		long first = store.add(square(153.0, -27.0, "first"));
+		AnnotationSnapshot before = store.snapshot();
+
+		long second = store.add(square(153.01, -27.0, "second"));
+		store.remove(first);
+
+		// The old snapshot is unchanged
+		assertEquals(1, before.size());
+		assertEquals("first", before.get(0).getName());
+		assertEquals(first, before.getId(0));
+
+		AnnotationSnapshot after = store.snapshot();
+		assertEquals(1, after.size());
+		assertEquals("second", after.get(0).getName());
+		assertEquals(second, after.getId(0));
+		assertTrue(after.getVersion() > before.getVersion());
+	}
+
+	@Test
+	public void testBatchPublishesOnce() {
+		AnnotationStore store = new AnnotationStore(4);
+		long[] ids = store.addAll(Arrays.asList(square(153.0, -27.0, "a"), square(153.01, -27.0, "b"),
+				square(153.02, -27.0, "c")));
+		long version = store.snapshot().getVersion();
+
+		AnnotationSnapshot published = store.update(batch -> {
+			assertTrue(batch.remove(ids[1]));
+			assertFalse(batch.remove(ids[1]));
+			assertTrue(batch.replace(ids[2], square(153.03, -27.0, "c2")));
+			batch.add(square(153.04, -27.0, "d"));
+			assertEquals(3, batch.getBase().size());
+		});
+
+		assertSame(published, store.snapshot());
+		assertEquals(version + 1, published.getVersion());
+		List<String> names = new ArrayList<>();
+		for (GisGridAnnotation annotation : published) {
+			names.add(annotation.getName());
+		}
+		assertEquals(Arrays.asList("a", "c2", "d"), names);
+
+		// No changes publish nothing
+		assertSame(published, store.update(batch -> {
+		}));
+
+		// A failed batch publishes nothing
+		try {
+			store.update(batch -> {
+				batch.remove(ids[0]);
+				throw new IllegalStateException();
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertSame(published, store.snapshot());
+		}
+	}
+
+	@Test
+	public void testFindById() {
+		AnnotationStore store = new AnnotationStore(3);
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			ids.add(store.add(square(153.0 + i * 0.01, -27.0, "n" + i)));
+		}
+		for (int i = 0; i < 20; i += 2) {
+			store.remove(ids.get(i));
+		}
+
+		AnnotationSnapshot snapshot = store.snapshot();
+		assertEquals(10, snapshot.size());
+		for (int i = 0; i < 20; i++) {
+			GisGridAnnotation found = snapshot.find(ids.get(i));
+			if (i % 2 == 0) {
+				assertNull(found);
+				assertEquals(-1, snapshot.indexOfId(ids.get(i)));
+			} else {
+				assertEquals("n" + i, found.getName());
+				assertEquals(i / 2, snapshot.indexOfId(ids.get(i)));
+			}
+		}
+		assertNull(snapshot.find(0));
+		assertFalse(store.replace(ids.get(0), square(0, 0, "gone")));
+	}
+
+	@Test
+	public void testCopiesAreReadOnly() {
+		AnnotationStore store = new AnnotationStore();
+		GisGridAnnotation original = square(153.0, -27.0, "original");
+		store.add(original);
+
+		// Later changes to the added annotation are not seen
+		original.setName("changed");
+		original.getExteriorRing().get(0).setLongitude(0.0);
+		GisGridAnnotation copy = store.snapshot().get(0);
+		assertEquals("original", copy.getName());
+		assertEquals(153.0, copy.getExteriorRing().get(0).getLongitude(), 0.0);
+
+		try {
+			copy.setName("changed");
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			copy.getExteriorRing().get(0).setLatitude(0.0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			copy.getExteriorRing().add(new LngLatAlt(0, 0));
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			store.snapshot().remove(0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testSnapshotWithUtilities() {
+		AnnotationStore store = new AnnotationStore(2);
+		List<GisGridAnnotation> list = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			GisGridAnnotation annotation = square(153.0 + i * 0.002, -27.0 - i * 0.001, "n" + i);
+			list.add(annotation);
+			store.add(annotation);
+		}
+
+		LngLatAlt expected = util.getCenterPoint(list);
+		LngLatAlt actual = util.getCenterPoint(store.snapshot());
+		assertEquals(expected.getLongitude(), actual.getLongitude(), 1e-12);
+		assertEquals(expected.getLatitude(), actual.getLatitude(), 1e-12);
+
+		// Rotating gives new, writable annotations
+		List<GisGridAnnotation> rotated = util.rotateToNorth(store.snapshot(), new ScaleRotation(30.0));
+		assertEquals(7, rotated.size());
+		rotated.get(0).setName("renamed");
+	}
+
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		AnnotationStore store = new AnnotationStore(16);
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicReference<String> failure = new AtomicReference<>();
+
+		Runnable reader = () -> {
+			long lastVersion = -1;
+			while (!done.get()) {
+				AnnotationSnapshot snapshot = store.snapshot();
+				if (snapshot.getVersion() < lastVersion) {
+					failure.set("Version went backwards");
+				}
+				lastVersion = snapshot.getVersion();
+
+				// Every batch adds pairs, so a consistent view is always even
+				if (snapshot.size() % 2 != 0) {
+					failure.set("Saw half a batch: " + snapshot.size());
+				}
+				for (int i = 0; i < snapshot.size(); i++) {
+					if (snapshot.get(i) == null || snapshot.find(snapshot.getId(i)) != snapshot.get(i)) {
+						failure.set("Inconsistent index " + i);
+					}
+				}
+			}
+		};
+
+		Thread[] readers = new Thread[3];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(reader);
+			readers[i].start();
+		}
+
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			int n = i;
+			store.update(batch -> {
+				ids.add(batch.add(square(153.0 + n * 0.001, -27.0, "a" + n)));
+				ids.add(batch.add(square(153.0 + n * 0.001, -27.1, "b" + n)));
+				if (n % 3 == 0 && ids.size() > 4) {
+					batch.remove(ids.remove(0));
+					batch.remove(ids.remove(0));
+				}
+			});
+		}
+
+		done.set(true);
+		for (Thread thread : readers) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(ids.size(), store.size());
+	}
+}
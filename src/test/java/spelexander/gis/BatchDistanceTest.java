@@ -0,0 +1,113 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchDistanceTest {
+
+	private double[] longitudes;
+
+	private double[] latitudes;
+
+	@Before
+	public void createPoints() {
+		Random rand = new Random(7);
+		longitudes = new double[500];
+		latitudes = new double[500];
+		for (int i = 0; i < longitudes.length; i++) {
+			// Mostly local points around Canberra, some anywhere on the globe
+			if (i % 5 == 0) {
+				longitudes[i] = rand.nextDouble() * 360.0 - 180.0;
+				latitudes[i] = rand.nextDouble() * 180.0 - 90.0;
+			} else {
+				longitudes[i] = 149.0 + rand.nextDouble() * 0.1;
+				latitudes[i] = -35.0 + rand.nextDouble() * 0.1;
+			}
+		}
+	}
+
+	/**
+	 * helper method
+	 */
+	private static void assertDistance(double expected, double result) {
+		double tolerance = BatchDistance.TOLERANCE_METERS + BatchDistance.RELATIVE_TOLERANCE * expected;
+		assertEquals("Batch distance should match the scalar distance", expected, result, tolerance);
+	}
+
+	@Test
+	public void oneToManyMatchesScalar() {
+		BatchDistance.Points targets = BatchDistance.prepare(longitudes, latitudes);
+		double[] result = new double[targets.size()];
+
+		for (int i = 0; i < 20; i++) {
+			BatchDistance.oneToMany(longitudes[i], latitudes[i], targets, result);
+			for (int j = 0; j < result.length; j++) {
+				assertDistance(MapGisGridUtil.distance(longitudes[i], latitudes[i], longitudes[j], latitudes[j]), result[j]);
+			}
+		}
+	}
+
+	@Test
+	public void manyToManyIndependentOfTileSize() {
+		BatchDistance.Points points = BatchDistance.prepare(longitudes, latitudes);
+		int n = points.size();
+		double[] tiled = new double[n * n];
+		double[] untiled = new double[n * n];
+
+		BatchDistance.manyToMany(points, points, tiled, 64);
+		BatchDistance.manyToMany(points, points, untiled, n);
+
+		assertArrayEquals("Tiling should not change the distances", untiled, tiled, 0.0);
+		for (int i = 0; i < n; i += 37) {
+			for (int j = 0; j < n; j++) {
+				assertDistance(MapGisGridUtil.distance(longitudes[i], latitudes[i], longitudes[j], latitudes[j]), tiled[i * n + j]);
+			}
+		}
+	}
+
+	@Test
+	public void withinRadiusMatchesScalar() {
+		BatchDistance.Points points = BatchDistance.prepare(longitudes, latitudes);
+		double radius = 5000.0;
+
+		for (int i = 0; i < 20; i++) {
+			int[] result = BatchDistance.withinRadius(longitudes[i], latitudes[i], points, radius);
+
+			int expected = 0;
+			for (int j = 0; j < longitudes.length; j++) {
+				double distance = MapGisGridUtil.distance(longitudes[i], latitudes[i], longitudes[j], latitudes[j]);
+				// Skip points sitting on the boundary within the tolerance
+				if (Math.abs(distance - radius) < 1e-3) {
+					continue;
+				}
+				if (distance <= radius) {
+					assertEquals("Point within the radius was not returned", j, result[expected]);
+					expected++;
+				}
+			}
+			assertEquals("Wrong number of points within the radius", expected, result.length);
+		}
+	}
+
+	@Test
+	public void packedCoordinatesPrepareLikeArrays() {
+		double[] packed = new double[longitudes.length * 3];
+		for (int i = 0; i < longitudes.length; i++) {
+			packed[i * 3] = longitudes[i];
+			packed[i * 3 + 1] = latitudes[i];
+			packed[i * 3 + 2] = 100.0;
+		}
+
+		double[] fromPacked = new double[longitudes.length];
+		double[] fromArrays = new double[longitudes.length];
+		BatchDistance.oneToMany(149.05, -35.05, BatchDistance.prepare(packed, 3), fromPacked);
+		BatchDistance.oneToMany(149.05, -35.05, BatchDistance.prepare(longitudes, latitudes), fromArrays);
+
+		assertArrayEquals("Packed and array points should give the same distances", fromArrays, fromPacked, 0.0);
+	}
+}
@@ -0,0 +1,193 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.geojson.LngLatAlt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryAnnotationFileTest {
+
+	private File testFileMultiPolygon;
+
+	private Path directory;
+
+	@Before
+	public void loadFiles() throws IOException {
+		try {
+			testFileMultiPolygon = new File(this.getClass().getResource("geojson-test2.json").toURI());
+		} catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+		directory = Files.createTempDirectory("binary-annotations");
+	}
+
+	@After
+	public void deleteFiles() throws IOException {
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * helper method
+	 */
+	private static void assertSameRings(List<GisGridAnnotation> expected, BinaryAnnotationFile result) {
+		assertEquals("Incorrect number of annotations", expected.size(), result.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("Ring " + i + " should round trip", PackedRing.fromAnnotation(expected.get(i)), result.getRing(i));
+			assertEquals("Annotation " + i + " should round trip", expected.get(i).getExteriorRing(), result.get(i).getExteriorRing());
+			assertEquals("Name " + i + " should round trip", expected.get(i).getName(), result.getName(i));
+		}
+	}
+
+	@Test
+	public void writtenAnnotationsReadBack() throws IOException {
+		List<GisGridAnnotation> annotations = new MapGisGridAnnotationReader().fromGeoJson(testFileMultiPolygon);
+		annotations.get(0).setName("Paddock \u00ff 1");
+		annotations.get(1).setName(null);
+
+		Path path = directory.resolve("layer.bin");
+		BinaryAnnotationFile.write(annotations, path);
+
+		BinaryAnnotationFile file = BinaryAnnotationFile.open(path);
+		assertSameRings(annotations, file);
+		assertNull("Missing name should stay missing", file.getName(1));
+	}
+
+	@Test
+	public void altitudeAndLargeRingsReadBack() throws IOException {
+		// Larger than the writer's staging buffer
+		List<LngLatAlt> large = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			large.add(new LngLatAlt(149.0 + i * 1e-6, -35.0 - i * 1e-6));
+		}
+		List<GisGridAnnotation> annotations = Arrays.asList(
+				new GisGridAnnotation(new ArrayList<>(Arrays.asList(new LngLatAlt(149.0, -35.0, 10.0), new LngLatAlt(149.1, -35.0, 12.0),
+						new LngLatAlt(149.1, -35.1, 14.0), new LngLatAlt(149.0, -35.0, 10.0)))),
+				new GisGridAnnotation(large),
+				new GisGridAnnotation(new ArrayList<>()));
+
+		Path path = directory.resolve("large.bin");
+		BinaryAnnotationFile.write(annotations, path);
+
+		BinaryAnnotationFile file = BinaryAnnotationFile.open(path);
+		assertSameRings(annotations, file);
+		assertEquals("Altitude should be kept", 3, file.getRing(0).getStride());
+		assertEquals("Point count should be read without decoding", 100000, file.getPointCount(1));
+	}
+
+	@Test
+	public void geoJsonConvertsBothWays() throws IOException {
+		Path binary = directory.resolve("converted.bin");
+		Path json = directory.resolve("converted.json");
+
+		BinaryAnnotationFile.fromGeoJson(testFileMultiPolygon, binary);
+		BinaryAnnotationFile.toGeoJson(binary, json, false);
+
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		List<GisGridAnnotation> expected = reader.fromGeoJson(testFileMultiPolygon);
+		assertSameRings(expected, BinaryAnnotationFile.open(binary));
+		assertEquals("Converted GeoJson should match", reader.toGeoJson(expected), new String(Files.readAllBytes(json), "UTF-8"));
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesAreRejected() throws IOException {
+		BinaryAnnotationFile.open(testFileMultiPolygon.toPath());
+	}
+
+	@Test
+	public void failedWriteLeavesFileInvalid() throws IOException {
+		List<GisGridAnnotation> annotations = new MapGisGridAnnotationReader().fromGeoJson(testFileMultiPolygon);
+		List<LngLatAlt> broken = new ArrayList<>();
+		broken.add(null);
+
+		Path path = directory.resolve("partial.bin");
+		try (BinaryAnnotationWriter writer = new BinaryAnnotationWriter(path)) {
+			writer.write(annotations.get(0));
+			writer.write(new GisGridAnnotation(broken));
+			fail("Writing a broken annotation should throw");
+		} catch (NullPointerException e) {
+			// expected
+		}
+
+		try {
+			BinaryAnnotationFile.open(path);
+			fail("A partially written file should be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void truncatedGeoJsonLeavesFileInvalid() throws IOException {
+		byte[] json = Files.readAllBytes(testFileMultiPolygon.toPath());
+		Path truncated = directory.resolve("truncated.json");
+		Files.write(truncated, Arrays.copyOf(json, json.length * 2 / 3));
+
+		Path path = directory.resolve("partial.bin");
+		try {
+			BinaryAnnotationFile.fromGeoJson(truncated.toFile(), path);
+			fail("Converting a truncated file should throw");
+		} catch (IOException e) {
+			// expected
+		}
+
+		try {
+			BinaryAnnotationFile.open(path);
+			fail("A partially converted file should be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void failingSourceLeavesFileInvalid() throws IOException {
+		List<GisGridAnnotation> annotations = new MapGisGridAnnotationReader().fromGeoJson(testFileMultiPolygon);
+		Iterable<GisGridAnnotation> failing = () -> new Iterator<GisGridAnnotation>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+
+			@Override
+			public GisGridAnnotation next() {
+				if (next == 1) {
+					throw new IllegalStateException("source failed");
+				}
+				return annotations.get(next++);
+			}
+		};
+
+		Path path = directory.resolve("partial.bin");
+		try (BinaryAnnotationWriter writer = new BinaryAnnotationWriter(path)) {
+			writer.writeAll(failing);
+			fail("A failing source should throw");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			BinaryAnnotationFile.open(path);
+			fail("A partially written file should be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.geojson.LngLatAlt;
+import org.junit.Test;
+
+public class DistanceModelTest {
+
+	/**
+	 * helper method, largest difference from haversine over random pairs within an extent of a latitude
+	 */
+	private static double measureError(DistanceModel model, double extent, double latitude, long seed) {
+		Random rand = new Random(seed);
+		double metersPerDegree = EquirectangularDistanceModel.EARTH_RADIUS_METERS * Math.PI / 180.0;
+		double latSpan = extent / metersPerDegree;
+		double lngSpan = latSpan / Math.cos(Math.toRadians(Math.abs(latitude) + latSpan));
+
+		double worst = 0.0;
+		for (int i = 0; i < 20000; i++) {
+			double lng1 = 149.0 + (rand.nextDouble() - 0.5) * lngSpan;
+			double lat1 = latitude + (rand.nextDouble() - 0.5) * latSpan;
+			double lng2 = 149.0 + (rand.nextDouble() - 0.5) * lngSpan;
+			double lat2 = latitude + (rand.nextDouble() - 0.5) * latSpan;
+
+			double expected = MapGisGridUtil.distance(lng1, lat1, lng2, lat2);
+			if (expected > extent) {
+				continue;
+			}
+			worst = Math.max(worst, Math.abs(model.distance(lng1, lat1, lng2, lat2) - expected));
+		}
+		return worst;
+	}
+
+	@Test
+	public void errorsStayWithinReportedBounds() {
+		double[] latitudes = { 0.0, -35.0, 60.0, -75.0 };
+		double[] extents = { 100.0, 5000.0, 50000.0 };
+
+		for (double latitude : latitudes) {
+			for (double extent : extents) {
+				DistanceModel[] models = { DistanceModel.EQUIRECTANGULAR, new CachedCosineDistanceModel(latitude) };
+				for (DistanceModel model : models) {
+					double bound = model.getMaxError(extent, latitude);
+					double error = measureError(model, extent, latitude, (long) (latitude * 31 + extent));
+					assertTrue(model + " error " + error + " above bound " + bound + " at " + latitude + ", " + extent,
+							error <= bound + 1e-9);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void equirectangularIsMillimetreAccurateForFields() {
+		assertTrue("Bound should be under a millimetre for a 5km field",
+				DistanceModel.EQUIRECTANGULAR.getMaxError(5000.0, -35.0) < 0.001);
+		assertEquals("Haversine has no error against itself", 0.0, DistanceModel.HAVERSINE.getMaxError(5000.0, -35.0), 0.0);
+	}
+
+	@Test
+	public void forTolerancePicksCheapestModel() {
+		assertTrue("Loose tolerance should use a cached cosine",
+				DistanceModel.forTolerance(10.0, 5000.0, -35.0) instanceof CachedCosineDistanceModel);
+		assertSame("Millimetre tolerance should use equirectangular", DistanceModel.EQUIRECTANGULAR,
+				DistanceModel.forTolerance(0.001, 5000.0, -35.0));
+		assertSame("Tight tolerance over a continent should use haversine", DistanceModel.HAVERSINE,
+				DistanceModel.forTolerance(0.001, 2000000.0, -35.0));
+	}
+
+	@Test
+	public void movesMatchHaversine() {
+		LngLatAlt start = new LngLatAlt(149.38, -35.07);
+		DistanceModel[] models = { DistanceModel.EQUIRECTANGULAR, new CachedCosineDistanceModel(-35.07) };
+
+		// A flat move follows a constant bearing rather than the great circle, which drifts sideways by about d^2 tan(lat) / 2R
+		for (DistanceModel model : models) {
+			for (double bearing = 0.0; bearing < 360.0; bearing += 15.0) {
+				LngLatAlt expected = DistanceModel.HAVERSINE.move(start, 2000.0, bearing);
+				LngLatAlt result = model.move(start, 2000.0, bearing);
+				assertTrue(model + " move was too far from haversine at " + bearing,
+						MapGisGridUtil.distance(expected, result) < 0.5);
+			}
+		}
+	}
+
+	@Test
+	public void utilUsesItsModel() {
+		MapGisGridUtil util = new MapGisGridUtil(DistanceModel.EQUIRECTANGULAR);
+		LngLatAlt a = new LngLatAlt(149.38, -35.07);
+		LngLatAlt b = new LngLatAlt(149.40, -35.09);
+
+		assertEquals("Util should measure with its model", DistanceModel.EQUIRECTANGULAR.distance(149.38, -35.07, 149.40, -35.09),
+				util.getDistanceBetween(a, b), 0.0);
+		assertEquals("Flat and haversine distances should agree over a field", new MapGisGridUtil().getDistanceBetween(a, b),
+				util.getDistanceBetween(a, b), 0.001);
+	}
+
+	@Test
+	public void flatModelsCrossTheAntimeridian() {
+		double expected = MapGisGridUtil.distance(179.99, -17.0, -179.99, -17.0);
+		DistanceModel[] models = { DistanceModel.EQUIRECTANGULAR, new CachedCosineDistanceModel(-17.0) };
+		for (DistanceModel model : models) {
+			assertEquals(model + " should take the short way round", expected, model.distance(179.99, -17.0, -179.99, -17.0), 0.01);
+
+			LngLatAlt moved = model.move(new LngLatAlt(179.99, -17.0), expected, 90.0);
+			assertEquals(model + " should wrap the moved longitude", -179.99, moved.getLongitude(), 1e-6);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GeoJsonBulkLoaderTest {
+
+	private Path directory;
+
+	private Path single;
+
+	private Path multi;
+
+	@Before
+	public void setup() throws IOException, URISyntaxException {
+		directory = Files.createTempDirectory("bulk-loader");
+		single = new File(this.getClass().getResource("geojson-test1.json").toURI()).toPath();
+		multi = new File(this.getClass().getResource("geojson-test2.json").toURI()).toPath();
+
+		for (int i = 0; i < 20; i++) {
+			Files.copy(i % 2 == 0 ? single : multi, directory.resolve(String.format("field-%02d.geojson", i)));
+		}
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(directory.resolve("field-20.json.gz")))) {
+			out.write(Files.readAllBytes(multi));
+		}
+		Files.write(directory.resolve("field-21.json"), "{ not json".getBytes(StandardCharsets.UTF_8));
+		Files.write(directory.resolve("notes.txt"), "ignored".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		for (File file : directory.toFile().listFiles()) {
+			Files.delete(file.toPath());
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void loadsDirectoryWithPerFileErrors() throws IOException {
+		GeoJsonBulkLoader loader = new GeoJsonBulkLoader(new MapGisGridAnnotationReader(), 4, 2);
+		GeoJsonBulkLoader.LoadResult result = loader.load(directory);
+
+		assertEquals(22, result.getFiles().size());
+		assertFalse(result.isSuccessful());
+		assertEquals(1, result.getFailures().size());
+		GeoJsonBulkLoader.FileResult failure = result.getFailures().get(0);
+		assertEquals(directory.resolve("field-21.json"), failure.getPath());
+		assertNotNull(failure.getError());
+		assertTrue(failure.getAnnotations().isEmpty());
+
+		// In name order, each matching the single threaded reader
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		int singleSize = reader.fromGeoJson(single.toFile()).size();
+		int multiSize = reader.fromGeoJson(multi.toFile()).size();
+		for (int i = 0; i < 21; i++) {
+			GeoJsonBulkLoader.FileResult file = result.getFiles().get(i);
+			assertTrue(file.getPath().getFileName().toString().startsWith(String.format("field-%02d", i)));
+			assertTrue(file.isSuccessful());
+			assertEquals(i % 2 == 0 && i < 20 ? singleSize : multiSize, file.getAnnotations().size());
+		}
+
+		List<GisGridAnnotation> merged = result.merge();
+		assertEquals(10 * singleSize + 11 * multiSize, merged.size());
+		assertEquals(reader.fromGeoJson(single.toFile()).get(0).getExteriorRing(), merged.get(0).getExteriorRing());
+	}
+
+	@Test
+	public void loadsListedPaths() throws IOException {
+		Path missing = directory.resolve("missing.json");
+		List<Path> paths = new ArrayList<>(Arrays.asList(multi, missing, single));
+
+		GeoJsonBulkLoader.LoadResult result = new GeoJsonBulkLoader().load(paths);
+
+		assertEquals(3, result.getFiles().size());
+		assertTrue(result.getFiles().get(0).isSuccessful());
+		assertTrue(result.getFiles().get(1).getError() instanceof IOException);
+		assertTrue(result.getFiles().get(2).isSuccessful());
+		assertEquals(missing, result.getFiles().get(1).getPath());
+
+		assertEquals(0, new GeoJsonBulkLoader().load(new ArrayList<>()).merge().size());
+	}
+}
@@ -0,0 +1,201 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.geojson.LngLatAlt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spelexander.gis.GisMetrics.Operation;
+import spelexander.gis.GisMetrics.OperationStats;
+
+public class GisMetricsTest {
+
+	private File testFileMultiPolygon = null;
+
+	// Mock provider, one meter cells
+	private final WidthHeightProvider provider = new WidthHeightProvider() {
+
+		@Override
+		public double getTotalUnitX() {
+			return 1.0;
+		}
+
+		@Override
+		public double getTotalUnitY() {
+			return 1.0;
+		}
+
+		@Override
+		public double getUnitXForMeters(double meters) {
+			return meters;
+		}
+
+		@Override
+		public double getMetersForUnitX(double x) {
+			return x;
+		}
+
+		@Override
+		public double getUnitYForMeters(double meters) {
+			return meters;
+		}
+
+		@Override
+		public double getMetersForUnitY(double y) {
+			return y;
+		}
+
+		@Override
+		public int getAdditionalY() {
+			return 0;
+		}
+
+		@Override
+		public int getAdditionalX() {
+			return 0;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		testFileMultiPolygon = new File(this.getClass().getResource("geojson-test2.json").toURI());
+		GisMetrics.reset();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		GisMetrics.setEnabled(false);
+		GisMetrics.reset();
+		GisMetrics.unregisterMBean();
+	}
+
+	@Test
+	public void testDisabledRecordsNothing() {
+		GisMetrics.setEnabled(false);
+		new MapGisGridAnnotationReader().fromGeoJson(testFileMultiPolygon);
+		MapGisGridUtil.distance(153.0, -27.0, 153.1, -27.1);
+
+		for (OperationStats stats : GisMetrics.getStats()) {
+			assertEquals(0L, stats.getCount());
+		}
+	}
+
+	@Test
+	public void testRecordsOperations() {
+		GisMetrics.setEnabled(true);
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(testFileMultiPolygon);
+		reader.toGeoJson(annotations);
+
+		OperationStats read = GisMetrics.getStats(Operation.FROM_GEOJSON);
+		assertEquals(1L, read.getCount());
+		assertEquals(annotations.size(), read.getItems());
+		assertTrue(read.getTotalNanos() > 0);
+		assertEquals(1L, GisMetrics.getStats(Operation.TO_GEOJSON).getCount());
+
+		MapGisGridUtil util = new MapGisGridUtil();
+		ProjectionContext context = util.getProjectionContext(new LngLatAlt(153.0, -27.0), null, new ScaleRotation(0.0), provider);
+		int vertices = 0;
+		for (GisGridAnnotation annotation : annotations) {
+			util.getPolygonShape(annotation, context);
+			vertices += annotation.getExteriorRing().size();
+		}
+
+		OperationStats shapes = GisMetrics.getStats(Operation.POLYGON_SHAPE);
+		assertEquals(annotations.size(), shapes.getCount());
+		assertEquals(vertices, shapes.getItems());
+		assertTrue(shapes.getItemsPerSecond() > 0);
+
+		GisMetrics.reset();
+		util.getDistanceBetween(new LngLatAlt(153.0, -27.0), new LngLatAlt(153.1, -27.1));
+		OperationStats haversine = GisMetrics.getStats(Operation.HAVERSINE);
+		assertEquals(1L, haversine.getCount());
+		assertEquals(0L, haversine.getTotalNanos());
+	}
+
+	@Test
+	public void testListener() {
+		List<Operation> seen = new ArrayList<>();
+		GisMetrics.Listener listener = (operation, nanos, items) -> seen.add(operation);
+		GisMetrics.addListener(listener);
+		try {
+			GisMetrics.setEnabled(true);
+			new MapGisGridUtil().transformToXY(new LngLatAlt(153.1, -27.1), new LngLatAlt(153.0, -27.0), null,
+					new ScaleRotation(0.0), provider);
+		} finally {
+			GisMetrics.removeListener(listener);
+		}
+
+		assertEquals("A transform should be recorded once, without its distances", 1, seen.size());
+		assertEquals(Operation.TRANSFORM_TO_XY, seen.get(0));
+	}
+
+	@Test
+	public void testShapeRecordsOneOperation() {
+		GisGridAnnotation annotation = new MapGisGridAnnotationReader().fromGeoJson(testFileMultiPolygon).get(0);
+		MapGisGridUtil util = new MapGisGridUtil();
+
+		GisMetrics.setEnabled(true);
+		util.getPolygonShape(annotation, new LngLatAlt(149.38, -35.07), null, new ScaleRotation(0.0), provider);
+
+		OperationStats shapes = GisMetrics.getStats(Operation.POLYGON_SHAPE);
+		assertEquals(1L, shapes.getCount());
+		assertEquals(annotation.getExteriorRing().size(), shapes.getItems());
+		assertEquals(0L, GisMetrics.getStats(Operation.TRANSFORM_TO_XY).getCount());
+		assertEquals(0L, GisMetrics.getStats(Operation.HAVERSINE).getCount());
+	}
+
+	@Test
+	public void testHistogram() {
+		GisMetrics.setEnabled(true);
+		for (int i = 0; i < 99; i++) {
+			GisMetrics.record(Operation.TRANSFORM_TO_XY, 1000, 1);
+		}
+		GisMetrics.record(Operation.TRANSFORM_TO_XY, 1000000, 1);
+
+		OperationStats stats = GisMetrics.getStats(Operation.TRANSFORM_TO_XY);
+		assertEquals(100L, stats.getCount());
+		assertEquals(1000000L, stats.getMaxNanos());
+		assertEquals(99L, stats.getHistogram()[GisMetrics.bucketOf(1000)]);
+
+		// Within a factor of two of the true values
+		assertTrue(stats.getMedianNanos() >= 1000 && stats.getMedianNanos() < 2000);
+		assertTrue(stats.getPercentileNanos(100.0) >= 1000000 && stats.getPercentileNanos(100.0) < 2000000);
+		assertEquals((99 * 1000 + 1000000) / 100.0, stats.getMeanNanos(), 1e-9);
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		ObjectName name = GisMetrics.registerMBean();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		server.setAttribute(name, new javax.management.Attribute("Enabled", true));
+		assertTrue(GisMetrics.isEnabled());
+
+		MapGisGridUtil.distance(153.0, -27.0, 153.1, -27.1);
+		CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+		assertEquals(Operation.values().length, operations.length);
+		for (CompositeData operation : operations) {
+			if (Operation.HAVERSINE.name().equals(operation.get("operation"))) {
+				assertEquals(1L, operation.get("count"));
+			}
+		}
+
+		GisMetricsMXBean proxy = javax.management.JMX.newMXBeanProxy(server, name, GisMetricsMXBean.class);
+		assertEquals(1L, proxy.getOperation("HAVERSINE").getCount());
+		proxy.reset();
+		assertEquals(0L, GisMetrics.getStats(Operation.HAVERSINE).getCount());
+	}
+}
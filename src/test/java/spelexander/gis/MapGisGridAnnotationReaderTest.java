@@ -2,15 +2,30 @@ package spelexander.gis;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import org.geojson.LngLatAlt;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class MapGisGridAnnotationReaderTest {
 
 	private File testFileSinglePolygon = null;
@@ -139,4 +154,202 @@ public class MapGisGridAnnotationReaderTest {
 		pointsCorrect(testFileExtras, true, true, true, true, false, false, true, true);
 	}
 
+	/**
+	 * Helper method
+	 * @param file
+	 * @throws IOException
+	 */
+	public void streamMatchesTree(File file) throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		List<GisGridAnnotation> expected = reader.fromGeoJson(file);
+
+		List<GisGridAnnotation> streamed;
+		try (Stream<GisGridAnnotation> stream = reader.streamGeoJson(file)) {
+			streamed = stream.collect(Collectors.toList());
+		}
+
+		List<GisGridAnnotation> consumed = new ArrayList<>();
+		reader.readGeoJson(file, consumed::add);
+
+		assertEquals("Streamed features did not match", expected.size(), streamed.size());
+		assertEquals("Consumed features did not match", expected.size(), consumed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("Streamed ring did not match", expected.get(i).getExteriorRing(), streamed.get(i).getExteriorRing());
+			assertEquals("Consumed ring did not match", expected.get(i).getExteriorRing(), consumed.get(i).getExteriorRing());
+		}
+	}
+
+	@Test
+	public void streamSinglePolygonFile_matchesTree() throws IOException {
+		streamMatchesTree(testFileSinglePolygon);
+	}
+
+	@Test
+	public void streamMultiPolygonFile_matchesTree() throws IOException {
+		streamMatchesTree(testFileMultiPolygon);
+	}
+
+	@Test
+	public void streamExtrasPolygonFile_matchesTree() throws IOException {
+		streamMatchesTree(testFileExtras);
+	}
+
+	@Test
+	public void writeExtrasPolygonFile_matchesString() throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(testFileExtras);
+
+		StringWriter writer = new StringWriter();
+		reader.writeGeoJson(annotations, writer);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		reader.writeGeoJson(annotations, outputStream, false);
+
+		String expected = reader.toGeoJson(annotations);
+		assertEquals("Streamed writer output did not match", expected, writer.toString());
+		assertEquals("Streamed output stream did not match", expected, new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void writeGzipFile_roundTrips() throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(testFileMultiPolygon);
+
+		Path path = Files.createTempFile("geojson-test", ".json.gz");
+		try {
+			reader.writeGeoJson(annotations, path, true);
+
+			List<GisGridAnnotation> result = new ArrayList<>();
+			try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(path));
+					GeoJsonAnnotationIterator iterator = reader.openGeoJson(inputStream)) {
+				iterator.forEachRemaining(result::add);
+			}
+
+			assertEquals("Incorrect number of Features round tripped", annotations.size(), result.size());
+			for (int i = 0; i < annotations.size(); i++) {
+				assertEquals("Round tripped ring did not match", annotations.get(i).getExteriorRing(), result.get(i).getExteriorRing());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void writeEmpty_isEmptyCollection() throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		reader.writeGeoJson(new ArrayList<GisGridAnnotation>(), outputStream, false);
+
+		List<GisGridAnnotation> result = new ArrayList<>();
+		try (GeoJsonAnnotationIterator iterator = reader.openGeoJson(new ByteArrayInputStream(outputStream.toByteArray()))) {
+			iterator.forEachRemaining(result::add);
+		}
+		assertEquals("Empty collection should have no features", 0, result.size());
+	}
+
+	@Test
+	public void failedWrite_leavesOutputUnterminated() throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(testFileMultiPolygon);
+		Iterable<GisGridAnnotation> failing = () -> Stream.concat(annotations.stream(),
+				Stream.<GisGridAnnotation>generate(() -> {
+					throw new IllegalStateException("source failed");
+				})).iterator();
+
+		StringWriter writer = new StringWriter();
+		try (GeoJsonAnnotationWriter output = reader.openGeoJsonWriter(writer, 0)) {
+			output.writeAll(failing);
+			Assert.fail("Writing should fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			new ObjectMapper().readTree(writer.toString());
+			Assert.fail("Truncated output should not parse");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+
+	private static final String PROPERTIES_JSON = "{\"type\":\"FeatureCollection\",\"features\":["
+			+ "{\"type\":\"Feature\",\"properties\":{\"id\":7,\"field\":\"North paddock\",\"tags\":[\"wheat\",{\"year\":2018}]},"
+			+ "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[149.0,-35.0],[149.1,-35.0],[149.1,-35.1],[149.0,-35.0]]]}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[149.2,-35.2]},\"properties\":{}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[149.3,-35.3]},\"properties\":null}"
+			+ "]}";
+
+	private static InputStream propertiesInput() {
+		return new ByteArrayInputStream(PROPERTIES_JSON.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void lazyPropertiesParsedOnFirstRead() throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		reader.setLazyProperties(true);
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(propertiesInput());
+		assertEquals(3, annotations.size());
+
+		LazyProperties properties = annotations.get(0).getProperties();
+		Assert.assertFalse(properties.isParsed());
+		Assert.assertTrue(properties.getRawSize() > 0);
+
+		assertEquals("North paddock", properties.getString("field"));
+		Assert.assertTrue(properties.isParsed());
+		assertEquals(7, ((Number) properties.get("id")).intValue());
+		assertEquals("wheat", ((List<?>) properties.get("tags")).get(0));
+
+		Assert.assertTrue(annotations.get(1).getProperties().isEmpty());
+		Assert.assertTrue(annotations.get(2).getProperties().isEmpty());
+		assertEquals("", annotations.get(0).getName());
+	}
+
+	@Test
+	public void nameProjectedWithoutKeepingProperties() throws IOException {
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		reader.setNameProperty("field");
+
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(propertiesInput());
+		assertEquals("North paddock", annotations.get(0).getName());
+		assertEquals("", annotations.get(1).getName());
+		Assert.assertTrue(annotations.get(0).getProperties().isEmpty());
+
+		// Numbers are projected as text
+		reader.setNameProperty("id");
+		try (GeoJsonAnnotationIterator iterator = reader.openGeoJson(propertiesInput())) {
+			assertEquals("7", iterator.next().getName());
+		}
+	}
+
+	@Test
+	public void propertiesIgnoredByDefault() throws IOException {
+		List<GisGridAnnotation> annotations = new MapGisGridAnnotationReader().fromGeoJson(propertiesInput());
+		assertEquals(3, annotations.size());
+		Assert.assertTrue(annotations.get(0).getProperties().isEmpty());
+	}
+
+	@Test
+	public void propertiesOfSingleFeature() throws IOException {
+		String json = "{\"type\":\"Feature\",\"properties\":{\"field\":\"East\"},"
+				+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[149.2,-35.2]}}";
+		MapGisGridAnnotationReader reader = new MapGisGridAnnotationReader();
+		reader.setLazyProperties(true);
+		reader.setNameProperty("field");
+
+		List<GisGridAnnotation> annotations = reader.fromGeoJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(1, annotations.size());
+		assertEquals("East", annotations.get(0).getName());
+		assertEquals("East", annotations.get(0).getProperties().get("field"));
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void readMissingFile_throws() throws IOException {
+		Path directory = Files.createTempDirectory("geojson-missing");
+		try {
+			new MapGisGridAnnotationReader().fromGeoJson(directory.resolve("missing.json").toFile());
+		} finally {
+			Files.delete(directory);
+		}
+	}
 }
@@ -1,15 +1,20 @@
 package spelexander.gis;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Polygon;
 import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.geojson.LngLatAlt;
 import org.junit.Before;
@@ -281,6 +286,348 @@ public class MapGisGridUtilTest {
 		assertEquals("Point X Matched", point.x, 25);
 		assertEquals("Point Y Matched", point.y, 65);
 	}
-	
-	
+
+	@Test
+	public void packedRingRoundTrips() {
+		for (GisGridAnnotation annotation : annotations3) {
+			annotation.setName("field");
+			GisGridAnnotation result = PackedRing.fromAnnotation(annotation).toAnnotation();
+
+			assertEquals("Packed ring did not round trip", annotation.getExteriorRing(), result.getExteriorRing());
+			assertEquals("Packed name did not round trip", "field", result.getName());
+		}
+	}
+
+	@Test
+	public void packedCenterPointMatches() {
+		List<PackedRing> rings = new ArrayList<>();
+		for (GisGridAnnotation annotation : annotations3) {
+			rings.add(PackedRing.fromAnnotation(annotation));
+		}
+
+		assertEquals("Packed center point did not match", util.getCenterPoint(annotations3), util.getPackedCenterPoint(rings));
+	}
+
+	@Test
+	public void packedPolygonShapeMatches() {
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations2, fieldSize, rot, provider);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			Polygon expected = (Polygon) util.getPolygonShape(annotation, topLeft, fieldSize, rot, provider);
+			Polygon result = (Polygon) util.getPolygonShape(PackedRing.fromAnnotation(annotation), topLeft, fieldSize, rot, provider);
+
+			assertEquals("Packed shape size did not match", expected.npoints, result.npoints);
+			for (int i = 0; i < expected.npoints; i++) {
+				assertEquals("Packed shape x did not match", expected.xpoints[i], result.xpoints[i]);
+				assertEquals("Packed shape y did not match", expected.ypoints[i], result.ypoints[i]);
+			}
+		}
+	}
+
+	@Test
+	public void packedRotationMatches() {
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		LngLatAlt center = util.getCenterPoint(annotations2);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			GisGridAnnotation expected = util.rotateToNorth(annotation, center, rot);
+			PackedRing result = util.rotateTo(PackedRing.fromAnnotation(annotation), center, rot, RotationType.NORTH);
+
+			assertEquals("Packed rotation did not match", expected.getExteriorRing(), result.toAnnotation().getExteriorRing());
+		}
+	}
+
+	@Test
+	public void preparedAnnotationMatchesShape() {
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations2, fieldSize, rot, provider);
+		Random rand = new Random(7);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			Polygon shape = (Polygon) util.getPolygonShape(annotation, topLeft, fieldSize, rot, provider);
+			PreparedAnnotation prepared = util.prepare(annotation, topLeft, fieldSize, rot, provider);
+
+			for (int i = 0; i < 2000; i++) {
+				double x = rand.nextDouble() * fieldSize.width;
+				double y = rand.nextDouble() * fieldSize.height;
+				assertEquals("Prepared containment did not match the shape", shape.contains(x, y), prepared.contains(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void doesPointIntersectIsExactForConcave() {
+		// An L shape, the notch is inside the bounds but outside the polygon
+		PreparedAnnotation prepared = new PreparedAnnotation(null, new double[] { 0, 10, 10, 5, 5, 0 },
+				new double[] { 0, 0, 10, 10, 5, 5 });
+
+		assertTrue("Point in the L should be contained", prepared.contains(2, 2));
+		assertTrue("Point in the L should be contained", prepared.contains(8, 8));
+		assertFalse("Point in the notch should not be contained", prepared.contains(2, 8));
+		assertFalse("Point outside the bounds should not be contained", prepared.contains(20, 2));
+	}
+
+	@Test
+	public void preparedCombIndexStaysLinear() {
+		// Teeth spanning the full height, every edge crosses every band
+		int teeth = 5000;
+		double[] xs = new double[teeth * 2 + 2];
+		double[] ys = new double[teeth * 2 + 2];
+		for (int i = 0; i < teeth; i++) {
+			xs[2 * i] = 2 * i;
+			ys[2 * i] = 0;
+			xs[2 * i + 1] = 2 * i + 1;
+			ys[2 * i + 1] = 1000;
+		}
+		xs[teeth * 2] = teeth * 2;
+		ys[teeth * 2] = -10;
+		xs[teeth * 2 + 1] = 0;
+		ys[teeth * 2 + 1] = -10;
+
+		PreparedAnnotation prepared = new PreparedAnnotation(null, xs, ys);
+		assertTrue("Index should stay within its budget",
+				prepared.getIndexSize() <= PreparedAnnotation.MAX_BAND_ENTRIES_PER_EDGE * xs.length);
+
+		int[] intXs = new int[xs.length];
+		int[] intYs = new int[ys.length];
+		for (int i = 0; i < xs.length; i++) {
+			intXs[i] = (int) xs[i];
+			intYs[i] = (int) ys[i];
+		}
+		Random rand = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			double x = rand.nextDouble() * teeth * 2;
+			double y = rand.nextDouble() * 1010 - 10;
+			assertEquals("Prepared comb did not match the crossing test",
+					PreparedAnnotation.contains(intXs, intYs, xs.length, x, y), prepared.contains(x, y));
+		}
+	}
+
+	@Test
+	public void doesPointIntersectMatchesPrepared() {
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations2, fieldSize, rot, provider);
+		Random rand = new Random(3);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			PreparedAnnotation prepared = util.prepare(annotation, topLeft, fieldSize, rot, provider);
+			PackedRing packed = PackedRing.fromAnnotation(annotation);
+			for (int i = 0; i < 200; i++) {
+				Point point = new Point(rand.nextInt(fieldSize.width), rand.nextInt(fieldSize.height));
+				assertEquals(prepared.contains(point), util.doesPointIntersect(point, annotation, topLeft, fieldSize, rot, provider));
+				assertEquals(prepared.contains(point), util.doesPointIntersect(point, packed, topLeft, fieldSize, rot, provider));
+			}
+		}
+	}
+
+	@Test
+	public void projectionContextMatchesTransforms() {
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations2, fieldSize, rot, provider);
+		ProjectionContext context = util.getProjectionContext(topLeft, fieldSize, rot, provider);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			PackedRing ring = PackedRing.fromAnnotation(annotation);
+			int[] xs = new int[ring.size()];
+			int[] ys = new int[ring.size()];
+			context.toXY(ring, xs, ys);
+
+			for (int i = 0; i < ring.size(); i++) {
+				Point expected = util.transformToXY(ring.getPoint(i), topLeft, fieldSize, rot, provider);
+				assertEquals("Projected x did not match", expected.x, xs[i]);
+				assertEquals("Projected y did not match", expected.y, ys[i]);
+			}
+		}
+
+		Point point = new Point(25, 65);
+		LngLatAlt expected = util.transformToLongLat(point, topLeft, fieldSize, rot, provider);
+		LngLatAlt result = context.toLongLat(point);
+		assertEquals("Unprojected longitude did not match", expected.getLongitude(), result.getLongitude(), 1e-7);
+		assertEquals("Unprojected latitude did not match", expected.getLatitude(), result.getLatitude(), 1e-7);
+	}
+
+	@Test
+	public void minimumAreaRectangleOfRotatedRectangle() {
+		LngLatAlt origin = new LngLatAlt(149.3865874610993, -35.07597449607705);
+		LngLatAlt b = util.movePoint(origin, 400, 30);
+		LngLatAlt c = util.movePoint(b, 100, 120);
+		LngLatAlt d = util.movePoint(origin, 100, 120);
+
+		List<GisGridAnnotation> annotations = new ArrayList<>();
+		annotations.add(new GisGridAnnotation(new ArrayList<>(java.util.Arrays.asList(origin, b, c, d, origin))));
+
+		OrientedRectangle rect = util.getMinimumAreaRectangle(annotations);
+		System.out.println("MinimumAreaRectangle -> " + rect);
+
+		assertEquals("Bearing should match the long side", 30.0, util.getBestFieldBearing(rect).bearing, 0.01);
+		assertEquals("Width should match the long side", 400.0, rect.getWidth(), 0.05);
+		assertEquals("Height should match the short side", 100.0, rect.getHeight(), 0.05);
+		assertEquals("Field size should fit the rectangle", new Dimension(163, 44), util.getFieldSizeToUse(rect, provider));
+	}
+
+	@Test
+	public void minimumAreaRectangleIsNoLargerThanField() {
+		OrientedRectangle rect = util.getMinimumAreaRectangle(annotations2);
+		Dimension size = util.getFieldSizeToUse(rect, provider);
+		Dimension fieldSize = util.getFieldSizeToUse(annotations2, util.getBestFieldBearing(annotations2), provider);
+
+		assertTrue("Rectangle field should not be larger", size.width * size.height <= fieldSize.width * fieldSize.height);
+	}
+
+	@Test
+	public void rotationTurnsBearingToNorthAndReverts() {
+		LngLatAlt center = util.getCenterPoint(annotations2);
+		ScaleRotation rot = new ScaleRotation(30.0);
+
+		// A direction at the bearing, in degree space, ends up pointing north
+		double bearing = Math.toRadians(rot.bearing);
+		LngLatAlt along = new LngLatAlt(center.getLongitude() + 0.01 * Math.sin(bearing), center.getLatitude() + 0.01 * Math.cos(bearing));
+		LngLatAlt north = util.rotateToNorth(along, center, rot);
+		assertEquals("Rotated direction should point north", center.getLongitude(), north.getLongitude(), 1e-12);
+		assertEquals("Rotated direction should keep its length", center.getLatitude() + 0.01, north.getLatitude(), 1e-12);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			GisGridAnnotation reverted = util.revertRotation(util.rotateToNorth(annotation, center, rot), center, rot);
+			for (int i = 0; i < annotation.getExteriorRing().size(); i++) {
+				LngLatAlt expected = annotation.getExteriorRing().get(i);
+				LngLatAlt result = reverted.getExteriorRing().get(i);
+				assertEquals("Revert should undo the rotation", expected.getLongitude(), result.getLongitude(), 1e-12);
+				assertEquals("Revert should undo the rotation", expected.getLatitude(), result.getLatitude(), 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void rotationInPlaceMatchesCopies() {
+		LngLatAlt center = util.getCenterPoint(annotations2);
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		RotationTransform transform = util.getRotationTransform(center, rot, RotationType.NORTH);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			GisGridAnnotation expected = util.rotateToNorth(annotation, center, rot);
+
+			PackedRing packed = PackedRing.fromAnnotation(annotation);
+			transform.applyInPlace(packed);
+			assertEquals("Packed rotation in place did not match", expected.getExteriorRing(), packed.toAnnotation().getExteriorRing());
+
+			GisGridAnnotation copy = packed.toAnnotation();
+			copy.getExteriorRing().clear();
+			for (LngLatAlt point : annotation.getExteriorRing()) {
+				copy.getExteriorRing().add(new LngLatAlt(point.getLongitude(), point.getLatitude()));
+			}
+			transform.applyInPlace(copy);
+			assertEquals("Annotation rotation in place did not match", expected.getExteriorRing(), copy.getExteriorRing());
+		}
+
+		assertTrue("Zero bearing should not rotate", util.getRotationTransform(center, new ScaleRotation(0.0), RotationType.NORTH).isIdentity());
+	}
+
+	@Test
+	public void quantizedRingRoundTrips() {
+		for (GisGridAnnotation annotation : annotations3) {
+			annotation.setName("field");
+			QuantizedRing quantized = QuantizedRing.encode(annotation);
+			PackedRing packed = PackedRing.fromAnnotation(annotation);
+			double tolerance = 0.5 / quantized.getScale();
+
+			GisGridAnnotation result = quantized.toAnnotation();
+			assertEquals("Quantized name did not round trip", "field", result.getName());
+			assertEquals("Quantized size did not match", annotation.getExteriorRing().size(), result.getExteriorRing().size());
+			for (int i = 0; i < result.getExteriorRing().size(); i++) {
+				LngLatAlt expected = annotation.getExteriorRing().get(i);
+				LngLatAlt point = result.getExteriorRing().get(i);
+				assertEquals("Quantized longitude out of tolerance", expected.getLongitude(), point.getLongitude(), tolerance + 1e-12);
+				assertEquals("Quantized latitude out of tolerance", expected.getLatitude(), point.getLatitude(), tolerance + 1e-12);
+			}
+
+			assertTrue("Quantized ring should be smaller than packed",
+					quantized.getEncodedSize() < packed.getCoordinates().length * Double.BYTES);
+			assertEquals("Quantized envelope did not match", Envelope.of(quantized), Envelope.of(quantized.toPackedRing()));
+		}
+	}
+
+	@Test
+	public void quantizedCursorDecodesAltitude() {
+		List<LngLatAlt> ring = new ArrayList<>();
+		ring.add(new LngLatAlt(-179.9999999, -89.5, 12.3456));
+		ring.add(new LngLatAlt(179.9999999, 89.5));
+		ring.add(new LngLatAlt(0.0, 0.0, -4.0));
+		QuantizedRing quantized = QuantizedRing.encode(new GisGridAnnotation(ring));
+
+		QuantizedRing.Cursor cursor = quantized.cursor();
+		for (int pass = 0; pass < 2; pass++) {
+			for (LngLatAlt expected : ring) {
+				assertTrue(cursor.next());
+				assertEquals(expected.getLongitude(), cursor.getLongitude(), 1e-9);
+				assertEquals(expected.getLatitude(), cursor.getLatitude(), 1e-9);
+				if (expected.hasAltitude()) {
+					assertEquals(expected.getAltitude(), cursor.getAltitude(), 0.001);
+				} else {
+					assertTrue("Missing altitude should decode as NaN", Double.isNaN(cursor.getAltitude()));
+				}
+			}
+			assertFalse(cursor.next());
+			assertFalse(cursor.next());
+			cursor.reset();
+		}
+
+		assertEquals(QuantizedRing.encode(quantized.toAnnotation()), quantized);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void quantizedRingRejectsOverflowingScale() {
+		QuantizedRing.encode(annotations3.get(0), QuantizedRing.MAX_SCALE * 2);
+	}
+
+	@Test
+	public void quantizedCenterPointMatches() {
+		List<QuantizedRing> rings = new ArrayList<>();
+		for (GisGridAnnotation annotation : annotations3) {
+			rings.add(QuantizedRing.encode(annotation));
+		}
+
+		LngLatAlt expected = util.getCenterPoint(annotations3);
+		LngLatAlt result = util.getQuantizedCenterPoint(rings);
+		assertEquals("Quantized center longitude did not match", expected.getLongitude(), result.getLongitude(), 1e-7);
+		assertEquals("Quantized center latitude did not match", expected.getLatitude(), result.getLatitude(), 1e-7);
+	}
+
+	@Test
+	public void quantizedPolygonShapeMatches() {
+		ScaleRotation rot = util.getBestFieldBearing(annotations2);
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations2, fieldSize, rot, provider);
+		ProjectionContext context = util.getProjectionContext(topLeft, fieldSize, rot, provider);
+
+		for (GisGridAnnotation annotation : annotations2) {
+			QuantizedRing quantized = QuantizedRing.encode(annotation);
+
+			// Rounding to a centimeter can move a vertex over a pixel boundary
+			assertPolygonsClose((Polygon) util.getPolygonShape(annotation, topLeft, fieldSize, rot, provider),
+					(Polygon) util.getPolygonShape(quantized, topLeft, fieldSize, rot, provider));
+			assertPolygonsClose((Polygon) util.getPolygonShape(annotation, context),
+					(Polygon) util.getPolygonShape(quantized, context));
+		}
+	}
+
+	private static void assertPolygonsClose(Polygon expected, Polygon result) {
+		assertEquals("Quantized shape size did not match", expected.npoints, result.npoints);
+		for (int i = 0; i < expected.npoints; i++) {
+			assertEquals("Quantized shape x did not match", expected.xpoints[i], result.xpoints[i], 1);
+			assertEquals("Quantized shape y did not match", expected.ypoints[i], result.ypoints[i], 1);
+		}
+	}
+
+	@Test
+	public void interfaceAdditionsHaveDefaults() {
+		// The methods of the first release, anything added since must be a default
+		int abstractMethods = 0;
+		for (Method method : GisGridUtil.class.getMethods()) {
+			if (Modifier.isAbstract(method.getModifiers())) {
+				abstractMethods++;
+			}
+		}
+		assertEquals("New GisGridUtil methods should have default implementations", 22, abstractMethods);
+	}
+
 }
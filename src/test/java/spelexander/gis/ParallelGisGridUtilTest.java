@@ -0,0 +1,84 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.geojson.LngLatAlt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spelexander.gis.GisGridUtil.RotationType;
+
+public class ParallelGisGridUtilTest {
+
+	private MapGisGridUtil util = new MapGisGridUtil();
+
+	private List<GisGridAnnotation> annotations;
+
+	private ForkJoinPool single;
+
+	private ForkJoinPool several;
+
+	@Before
+	public void setup() {
+		Random rand = new Random(11);
+		annotations = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			List<LngLatAlt> ring = new ArrayList<>();
+			double lng = 149.0 + rand.nextDouble();
+			double lat = -35.0 + rand.nextDouble();
+			for (int v = 0; v < 8; v++) {
+				ring.add(new LngLatAlt(lng + rand.nextDouble() * 0.001, lat + rand.nextDouble() * 0.001, rand.nextDouble() * 100));
+			}
+			annotations.add(new GisGridAnnotation(ring));
+		}
+
+		single = new ForkJoinPool(1);
+		several = new ForkJoinPool(4);
+	}
+
+	@After
+	public void shutdown() {
+		single.shutdown();
+		several.shutdown();
+	}
+
+	@Test
+	public void centerPointIndependentOfThreads() {
+		LngLatAlt serial = new ParallelGisGridUtil(util, null, 64).getCenterPoint(annotations);
+		LngLatAlt one = new ParallelGisGridUtil(util, single, 64).getCenterPoint(annotations);
+		LngLatAlt four = new ParallelGisGridUtil(util, several, 64).getCenterPoint(annotations);
+
+		assertEquals("Single thread center should match serial exactly", serial, one);
+		assertEquals("Parallel center should match serial exactly", serial, four);
+
+		LngLatAlt expected = util.getCenterPoint(annotations);
+		assertEquals("Longitude should match the batch center", expected.getLongitude(), four.getLongitude(), 1e-9);
+		assertEquals("Latitude should match the batch center", expected.getLatitude(), four.getLatitude(), 1e-9);
+		assertEquals("Altitude should match the batch center", expected.getAltitude(), four.getAltitude(), 1e-9);
+	}
+
+	@Test
+	public void rotateToMatchesSerial() {
+		ScaleRotation rot = new ScaleRotation(30.0);
+		ParallelGisGridUtil parallel = new ParallelGisGridUtil(util, several, 100);
+
+		List<GisGridAnnotation> expected = util.rotateTo(annotations, rot, RotationType.NORTH);
+		List<GisGridAnnotation> result = parallel.rotateTo(annotations, rot, RotationType.NORTH);
+
+		assertEquals("Rotated layer size did not match", expected.size(), result.size());
+		for (int i = 0; i < expected.size(); i++) {
+			List<LngLatAlt> expectedRing = expected.get(i).getExteriorRing();
+			List<LngLatAlt> resultRing = result.get(i).getExteriorRing();
+			for (int v = 0; v < expectedRing.size(); v++) {
+				assertEquals("Rotated longitude did not match", expectedRing.get(v).getLongitude(), resultRing.get(v).getLongitude(), 1e-9);
+				assertEquals("Rotated latitude did not match", expectedRing.get(v).getLatitude(), resultRing.get(v).getLatitude(), 1e-9);
+			}
+		}
+	}
+}
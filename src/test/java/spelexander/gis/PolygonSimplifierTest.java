@@ -0,0 +1,162 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Polygon;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geojson.LngLatAlt;
+import org.junit.Test;
+
+public class PolygonSimplifierTest {
+
+	/**
+	 * helper method, distance from a point to the closest segment of a polyline
+	 */
+	private static double distanceToOutline(double x, double y, double[] xs, double[] ys, int[] kept, int count) {
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 0; i + 1 < count; i++) {
+			double ax = xs[kept[i]];
+			double ay = ys[kept[i]];
+			double dx = xs[kept[i + 1]] - ax;
+			double dy = ys[kept[i + 1]] - ay;
+			double length = dx * dx + dy * dy;
+			double t = length == 0.0 ? 0.0 : Math.max(0.0, Math.min(1.0, ((x - ax) * dx + (y - ay) * dy) / length));
+			best = Math.min(best, Math.hypot(x - ax - t * dx, y - ay - t * dy));
+		}
+		return best;
+	}
+
+	/**
+	 * helper method, a noisy closed circle in grid units
+	 */
+	private static void circle(double[] xs, double[] ys, long seed) {
+		Random rand = new Random(seed);
+		int count = xs.length;
+		for (int i = 0; i < count - 1; i++) {
+			double angle = 2 * Math.PI * i / (count - 1);
+			double radius = 100.0 + rand.nextDouble() * 0.3;
+			xs[i] = 200.0 + radius * Math.cos(angle);
+			ys[i] = 200.0 + radius * Math.sin(angle);
+		}
+		xs[count - 1] = xs[0];
+		ys[count - 1] = ys[0];
+	}
+
+	@Test
+	public void simplifiedRingStaysWithinDeviation() {
+		double[] xs = new double[5001];
+		double[] ys = new double[5001];
+		circle(xs, ys, 3);
+
+		for (double tolerance : new double[] { 0.25, 1.0, 4.0 }) {
+			int[] kept = new int[xs.length];
+			int count = PolygonSimplifier.simplify(xs, ys, xs.length, tolerance, kept);
+
+			assertTrue("Simplification should drop vertices", count < xs.length / 4);
+			assertEquals("First vertex should be kept", 0, kept[0]);
+			assertEquals("Last vertex should be kept", xs.length - 1, kept[count - 1]);
+			for (int i = 0; i < xs.length; i++) {
+				assertTrue("Vertex " + i + " moved too far at " + tolerance,
+						distanceToOutline(xs[i], ys[i], xs, ys, kept, count) <= PolygonSimplifier.getMaxDeviation(tolerance) + 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void zeroToleranceKeepsEveryVertex() {
+		double[] xs = new double[101];
+		double[] ys = new double[101];
+		circle(xs, ys, 4);
+		int[] kept = new int[xs.length];
+
+		assertEquals("Zero tolerance should keep every vertex", xs.length, PolygonSimplifier.simplify(xs, ys, xs.length, 0.0, kept));
+	}
+
+	@Test
+	public void cachedLevelsMatchProjection() {
+		MapGisGridUtil util = new MapGisGridUtil();
+		List<GisGridAnnotation> annotations = new ArrayList<>();
+		List<LngLatAlt> ring = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			double angle = 2 * Math.PI * i / 2000;
+			ring.add(new LngLatAlt(149.38 + 0.01 * Math.cos(angle), -35.07 + 0.01 * Math.sin(angle)));
+		}
+		ring.add(ring.get(0));
+		annotations.add(new GisGridAnnotation(ring));
+
+		WidthHeightProvider provider = new WidthHeightProvider() {
+
+			@Override
+			public double getTotalUnitX() {
+				return 1.0;
+			}
+
+			@Override
+			public double getTotalUnitY() {
+				return 1.0;
+			}
+
+			@Override
+			public double getUnitXForMeters(double meters) {
+				return meters;
+			}
+
+			@Override
+			public double getMetersForUnitX(double x) {
+				return x;
+			}
+
+			@Override
+			public double getUnitYForMeters(double meters) {
+				return meters;
+			}
+
+			@Override
+			public double getMetersForUnitY(double y) {
+				return y;
+			}
+
+			@Override
+			public int getAdditionalY() {
+				return 0;
+			}
+
+			@Override
+			public int getAdditionalX() {
+				return 0;
+			}
+		};
+		ScaleRotation rotation = new ScaleRotation(0.0);
+		Dimension fieldSize = util.getFieldSizeToUse(annotations, rotation, provider);
+		ProjectionContext context = util.getProjectionContext(util.getTopLeftPoint(annotations, fieldSize, rotation, provider),
+				fieldSize, rotation, provider);
+
+		LevelOfDetailCache cache = new LevelOfDetailCache(context);
+		Polygon full = (Polygon) util.getPolygonShape(annotations.get(0), context);
+		Polygon level0 = (Polygon) cache.getPolygonShapeAtLevel(annotations.get(0), 0);
+		assertEquals("Level 0 should be the full ring", full.npoints, level0.npoints);
+		assertArrayEquals("Level 0 should be the full ring", full.xpoints, level0.xpoints);
+		assertArrayEquals("Level 0 should be the full ring", full.ypoints, level0.ypoints);
+
+		assertEquals("Zoomed in should draw the full ring", 0, cache.getLevel(4.0));
+		assertEquals("Zoomed out should draw the coarsest level", cache.getLevels(), cache.getLevel(1.0 / 1024));
+
+		int previous = full.npoints;
+		for (int level = 1; level <= cache.getLevels(); level++) {
+			int points = ((Polygon) cache.getPolygonShapeAtLevel(annotations.get(0), level)).npoints;
+			assertTrue("Coarser levels should not have more points", points <= previous);
+			previous = points;
+		}
+		assertTrue("Coarsest level should be much smaller", previous < full.npoints / 10);
+
+		Polygon simplified = (Polygon) util.getPolygonShape(annotations.get(0), context, cache.getTolerance(3));
+		assertArrayEquals("Cached level should match direct simplification", simplified.xpoints,
+				((Polygon) cache.getPolygonShapeAtLevel(annotations.get(0), 3)).xpoints);
+	}
+}
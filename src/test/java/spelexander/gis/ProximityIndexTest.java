@@ -0,0 +1,121 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.geojson.LngLatAlt;
+import org.junit.Test;
+
+public class ProximityIndexTest {
+
+	private static GisGridAnnotation point(double lng, double lat) {
+		return new GisGridAnnotation(Collections.singletonList(new LngLatAlt(lng, lat)));
+	}
+
+	/**
+	 * helper method, every annotation within the radius by brute force
+	 */
+	private static Set<GisGridAnnotation> bruteForce(List<GisGridAnnotation> annotations, LngLatAlt center, double radius) {
+		Set<GisGridAnnotation> result = Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+		for (GisGridAnnotation annotation : annotations) {
+			LngLatAlt position = annotation.getExteriorRing().get(0);
+			if (MapGisGridUtil.distance(center, position) <= radius) {
+				result.add(annotation);
+			}
+		}
+		return result;
+	}
+
+	private static void assertMatches(Set<GisGridAnnotation> expected, List<GisGridAnnotation> actual) {
+		assertEquals(expected.size(), actual.size());
+		assertTrue(expected.containsAll(actual));
+	}
+
+	@Test
+	public void testMatchesBruteForce() {
+		Random rand = new Random(7);
+		List<GisGridAnnotation> annotations = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			annotations.add(point(153.0 + rand.nextDouble() * 0.1, -27.5 + rand.nextDouble() * 0.1));
+		}
+		ProximityIndex index = new ProximityIndex(annotations, 250.0, -27.5);
+		assertEquals(2000, index.size());
+
+		for (int q = 0; q < 50; q++) {
+			LngLatAlt center = new LngLatAlt(153.0 + rand.nextDouble() * 0.1, -27.5 + rand.nextDouble() * 0.1);
+			double radius = 50.0 + rand.nextDouble() * 1000.0;
+			assertMatches(bruteForce(annotations, center, radius), index.withinRadius(center, radius));
+		}
+	}
+
+	@Test
+	public void testNearestFirst() {
+		ProximityIndex index = new ProximityIndex(100.0);
+		GisGridAnnotation far = point(153.002, -27.0);
+		GisGridAnnotation near = point(153.0005, -27.0);
+		GisGridAnnotation outside = point(153.1, -27.0);
+		index.insert(far);
+		index.insert(near);
+		index.insert(outside);
+
+		assertEquals(Arrays.asList(near, far), index.withinRadius(new LngLatAlt(153.0, -27.0), 250.0));
+	}
+
+	@Test
+	public void testAntimeridianAndPoles() {
+		List<GisGridAnnotation> annotations = Arrays.asList(point(179.999, 10.0), point(-179.999, 10.0),
+				point(0.0, 89.999), point(180.0 - 0.0001, 89.9995), point(-90.0, 89.9999));
+		ProximityIndex index = new ProximityIndex(annotations, 500.0, 10.0);
+
+		LngLatAlt dateLine = new LngLatAlt(180.0, 10.0);
+		assertMatches(bruteForce(annotations, dateLine, 1000.0), index.withinRadius(dateLine, 1000.0));
+		assertEquals(2, index.withinRadius(dateLine, 1000.0).size());
+
+		LngLatAlt pole = new LngLatAlt(45.0, 90.0);
+		assertMatches(bruteForce(annotations, pole, 200.0), index.withinRadius(pole, 200.0));
+		assertEquals(3, index.withinRadius(pole, 200.0).size());
+	}
+
+	@Test
+	public void testCentroidsAndUpdates() {
+		GisGridAnnotation square = new GisGridAnnotation(Arrays.asList(new LngLatAlt(153.0, -27.0),
+				new LngLatAlt(153.002, -27.0), new LngLatAlt(153.002, -27.002), new LngLatAlt(153.0, -27.002)));
+		ProximityIndex index = new ProximityIndex(200.0, -27.0);
+		index.insert(square);
+
+		// Positioned at the centroid rather than any vertex
+		LngLatAlt center = new LngLatAlt(153.001, -27.001);
+		assertEquals(1, index.withinRadius(center, 10.0).size());
+		assertEquals(0, index.withinRadius(new LngLatAlt(153.0, -27.0), 10.0).size());
+
+		// Inserting again moves it
+		index.insert(square, 150.0, 10.0);
+		assertEquals(1, index.size());
+		assertEquals(0, index.withinRadius(center, 10.0).size());
+		assertEquals(1, index.withinRadius(new LngLatAlt(150.0, 10.0), 1.0).size());
+
+		assertTrue(index.remove(square));
+		assertFalse(index.remove(square));
+		assertEquals(0, index.getCellCount());
+	}
+
+	@Test
+	public void testVisitorDistances() {
+		ProximityIndex index = new ProximityIndex(1000.0);
+		Set<Double> distances = new HashSet<>();
+		GisGridAnnotation a = point(10.0, 50.0);
+		index.insert(a);
+		index.withinRadius(10.01, 50.0, 5000.0, (annotation, distance) -> distances.add(distance));
+
+		assertEquals(Collections.singleton(MapGisGridUtil.distance(10.01, 50.0, 10.0, 50.0)), distances);
+	}
+}
@@ -0,0 +1,132 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.geojson.LngLatAlt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpatialJoinTest {
+
+	private List<GisGridAnnotation> annotations;
+
+	private double[] longitudes;
+
+	private double[] latitudes;
+
+	private ForkJoinPool several;
+
+	@Before
+	public void setup() {
+		Random rand = new Random(3);
+		annotations = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			// Random convex-ish polygons, some overlapping
+			double lng = 149.0 + rand.nextDouble() * 0.5;
+			double lat = -35.0 + rand.nextDouble() * 0.5;
+			double radius = 0.002 + rand.nextDouble() * 0.02;
+			List<LngLatAlt> ring = new ArrayList<>();
+			int vertices = 3 + rand.nextInt(10);
+			for (int v = 0; v < vertices; v++) {
+				double angle = 2 * Math.PI * v / vertices;
+				double r = radius * (0.5 + rand.nextDouble() * 0.5);
+				ring.add(new LngLatAlt(lng + r * Math.cos(angle), lat + r * Math.sin(angle)));
+			}
+			annotations.add(new GisGridAnnotation(ring));
+		}
+		// A line and a point, which contain nothing
+		annotations.add(new GisGridAnnotation(Arrays.asList(new LngLatAlt(149.1, -34.9), new LngLatAlt(149.2, -34.8))));
+		annotations.add(new GisGridAnnotation(Arrays.asList(new LngLatAlt(149.3, -34.7))));
+
+		longitudes = new double[20000];
+		latitudes = new double[20000];
+		for (int i = 0; i < longitudes.length; i++) {
+			longitudes[i] = 148.95 + rand.nextDouble() * 0.6;
+			latitudes[i] = -35.05 + rand.nextDouble() * 0.6;
+		}
+
+		several = new ForkJoinPool(4);
+	}
+
+	@After
+	public void shutdown() {
+		several.shutdown();
+	}
+
+	/**
+	 * helper method, first containing annotation by brute force
+	 */
+	private int[] bruteForce() {
+		int[] result = new int[longitudes.length];
+		for (int i = 0; i < longitudes.length; i++) {
+			result[i] = -1;
+			for (int a = 0; a < annotations.size(); a++) {
+				if (annotations.get(a).contains(longitudes[i], latitudes[i])) {
+					result[i] = a;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void joinMatchesBruteForce() {
+		int[] expected = bruteForce();
+
+		assertArrayEquals(expected, new SpatialJoin(annotations, null).join(longitudes, latitudes));
+		assertArrayEquals(expected, new SpatialJoin(annotations, several).join(longitudes, latitudes));
+	}
+
+	@Test
+	public void joinListsAndStreams() {
+		SpatialJoin join = new SpatialJoin(annotations, several);
+		int[] expected = join.join(longitudes, latitudes);
+
+		List<LngLatAlt> points = new ArrayList<>();
+		for (int i = 0; i < longitudes.length; i++) {
+			points.add(new LngLatAlt(longitudes[i], latitudes[i]));
+		}
+		List<GisGridAnnotation> assigned = join.join(points);
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] < 0) {
+				assertNull(assigned.get(i));
+			} else {
+				assertSame(annotations.get(expected[i]), assigned.get(i));
+			}
+		}
+
+		// Small batches, in stream order
+		List<GisGridAnnotation> streamed = new ArrayList<>();
+		List<LngLatAlt> seen = new ArrayList<>();
+		join.join(IntStream.range(0, points.size()).mapToObj(points::get), 777, (point, annotation) -> {
+			seen.add(point);
+			streamed.add(annotation);
+		});
+		assertEquals(points, seen);
+		for (int i = 0; i < expected.length; i++) {
+			assertSame(assigned.get(i), streamed.get(i));
+		}
+	}
+
+	@Test
+	public void joinWithNothingToJoin() {
+		SpatialJoin empty = new SpatialJoin(new ArrayList<>(), null);
+		assertArrayEquals(new int[] { -1, -1 }, empty.join(new double[] { 149.0, Double.NaN }, new double[] { -35.0, 0.0 }));
+
+		SpatialJoin join = new SpatialJoin(annotations, null);
+		assertEquals(0, join.join(new double[0], new double[0]).length);
+		assertArrayEquals(new int[] { -1 }, join.join(new double[] { 10.0 }, new double[] { 10.0 }));
+	}
+}
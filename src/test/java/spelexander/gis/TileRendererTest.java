@@ -0,0 +1,181 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.geojson.LngLatAlt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileRendererTest {
+
+	private MapGisGridUtil util = new MapGisGridUtil();
+
+	private List<GisGridAnnotation> annotations2;
+
+	private ExecutorService executor;
+
+	private Dimension fieldSize = new Dimension(278, 304);
+
+	private WidthHeightProvider provider = new WidthHeightProvider() {
+
+		@Override
+		public double getTotalUnitX() {
+			return 2.5;
+		}
+
+		@Override
+		public double getTotalUnitY() {
+			return 2.5;
+		}
+
+		@Override
+		public double getUnitXForMeters(double meters) {
+			return meters / this.getTotalUnitX();
+		}
+
+		@Override
+		public double getMetersForUnitX(double x) {
+			return x * this.getTotalUnitX();
+		}
+
+		@Override
+		public double getUnitYForMeters(double meters) {
+			return meters / this.getTotalUnitY();
+		}
+
+		@Override
+		public double getMetersForUnitY(double y) {
+			return y * this.getTotalUnitY();
+		}
+
+		@Override
+		public int getAdditionalY() {
+			return 4;
+		}
+
+		@Override
+		public int getAdditionalX() {
+			return 4;
+		}
+	};
+
+	@Before
+	public void setup() {
+		try {
+			annotations2 = new MapGisGridAnnotationReader().fromGeoJson(new File(this.getClass().getResource("geojson-test2.json").toURI()));
+		} catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void cacheEvictsLeastRecentlyUsed() {
+		TileCache cache = new TileCache(3 * 16 * 16 * 4);
+		for (int i = 0; i < 3; i++) {
+			cache.put(new TileKey(0, i, 0, 0.0), new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+		}
+
+		// Touch the first so the second is the eldest
+		assertNotNull(cache.get(new TileKey(0, 0, 0, 0.0)));
+		cache.put(new TileKey(0, 3, 0, 0.0), new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+
+		assertEquals("Cache should stay within its memory", 3, cache.size());
+		assertNull("Least recently used tile should be evicted", cache.get(new TileKey(0, 1, 0, 0.0)));
+		assertNotNull("Recently used tile should be kept", cache.get(new TileKey(0, 0, 0, 0.0)));
+	}
+
+	@Test
+	public void tileIsPaintedUnderPolygon() throws Exception {
+		TileRenderer renderer = new TileRenderer(util, annotations2, fieldSize, provider, 64, new TileCache(1 << 20), executor);
+
+		// Grid position of a point inside the first polygon
+		LngLatAlt topLeft = util.getTopLeftPoint(annotations2, fieldSize, new ScaleRotation(0.0), provider);
+		Point inside = util.transformToXY(new LngLatAlt(149.3880, -35.0790), topLeft, fieldSize, new ScaleRotation(0.0), provider);
+
+		TileKey key = new TileKey(1, inside.x * 2 / 64, inside.y * 2 / 64, 0.0);
+		BufferedImage tile = renderer.requestTile(key).get();
+
+		int alpha = tile.getRGB(inside.x * 2 % 64, inside.y * 2 % 64) >>> 24;
+		assertTrue("Pixel under the polygon should be painted", alpha > 0);
+		assertTrue("Rendered tile should be cached", renderer.getTile(key) == tile);
+	}
+
+	@Test
+	public void invalidateDiscardsRenderInFlight() throws Exception {
+		TileCache cache = new TileCache(1 << 20);
+		TileRenderer renderer = new TileRenderer(util, annotations2, fieldSize, provider, 512, cache, executor);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		renderer.setPainter((graphics, annotation, shape) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		TileKey key = new TileKey(0, 0, 0, 0.0);
+		CompletableFuture<BufferedImage> stale = renderer.requestTile(key);
+		assertTrue("Render should start", started.await(10, TimeUnit.SECONDS));
+
+		renderer.setPainter(TileRenderer.DEFAULT_PAINTER);
+		CompletableFuture<BufferedImage> fresh = renderer.requestTile(key);
+		assertNotSame("Requests after invalidate should not join the stale render", stale, fresh);
+		release.countDown();
+
+		try {
+			stale.get(10, TimeUnit.SECONDS);
+			fail("Stale render should be cancelled");
+		} catch (CancellationException e) {
+			// expected
+		}
+		BufferedImage tile = fresh.get(10, TimeUnit.SECONDS);
+		assertTrue("Fresh tile should be cached", cache.get(key) == tile);
+	}
+
+	@Test
+	public void projectedLayersAreBounded() {
+		TileCache cache = new TileCache(1 << 20);
+		TileRenderer renderer = new TileRenderer(util, annotations2, fieldSize, provider, 64, cache, executor);
+
+		renderer.renderTile(new TileKey(0, 0, 0, 0.0));
+		long oneLayer = cache.getReservedBytes();
+		assertTrue("Projected layer should be reserved", oneLayer > 0);
+
+		for (int bearing = 1; bearing < 90; bearing++) {
+			renderer.renderTile(new TileKey(0, 0, 0, bearing));
+		}
+		assertTrue("Only the most recent bearings should be kept",
+				cache.getReservedBytes() <= TileRenderer.MAX_PROJECTED_LAYERS * oneLayer * 2);
+
+		renderer.invalidate();
+		assertEquals(0, cache.getReservedBytes());
+	}
+}
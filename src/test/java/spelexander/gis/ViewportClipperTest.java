@@ -0,0 +1,182 @@
+package spelexander.gis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.geojson.LngLatAlt;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ViewportClipperTest {
+
+	private final MapGisGridUtil util = new MapGisGridUtil();
+
+	private List<GisGridAnnotation> annotations;
+
+	private ProjectionContext context;
+
+	// One grid unit per meter
+	private final WidthHeightProvider provider = new WidthHeightProvider() {
+
+		@Override
+		public double getTotalUnitX() {
+			return 1.0;
+		}
+
+		@Override
+		public double getTotalUnitY() {
+			return 1.0;
+		}
+
+		@Override
+		public double getUnitXForMeters(double meters) {
+			return meters;
+		}
+
+		@Override
+		public double getMetersForUnitX(double x) {
+			return x;
+		}
+
+		@Override
+		public double getUnitYForMeters(double meters) {
+			return meters;
+		}
+
+		@Override
+		public double getMetersForUnitY(double y) {
+			return y;
+		}
+
+		@Override
+		public int getAdditionalY() {
+			return 0;
+		}
+
+		@Override
+		public int getAdditionalX() {
+			return 0;
+		}
+	};
+
+	@Before
+	public void createLayer() {
+		Random rand = new Random(9);
+		annotations = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			double lng = 149.0 + rand.nextDouble() * 0.1;
+			double lat = -35.0 + rand.nextDouble() * 0.1;
+			double size = rand.nextDouble() * 0.005;
+			annotations.add(new GisGridAnnotation(new ArrayList<>(Arrays.asList(new LngLatAlt(lng, lat), new LngLatAlt(lng + size, lat),
+					new LngLatAlt(lng + size / 2, lat + size), new LngLatAlt(lng, lat)))));
+		}
+
+		// A large detailed ring covering the middle of the layer
+		List<LngLatAlt> coast = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			double angle = 2 * Math.PI * i / 20000;
+			double radius = 0.03 + 0.002 * Math.sin(angle * 50);
+			coast.add(new LngLatAlt(149.05 + radius * Math.cos(angle), -34.95 + radius * Math.sin(angle)));
+		}
+		coast.add(coast.get(0));
+		annotations.add(new GisGridAnnotation(coast));
+
+		// Top left in the north west corner, so nothing folds
+		ScaleRotation rotation = new ScaleRotation(90.0);
+		Dimension fieldSize = util.getFieldSizeToUse(annotations, rotation, provider);
+		context = util.getProjectionContext(util.getTopLeftPoint(annotations, fieldSize, rotation, provider), fieldSize,
+				rotation, provider);
+	}
+
+	/**
+	 * helper method
+	 */
+	private static double area(Shape shape) {
+		double area = 0;
+		double[] coords = new double[6];
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+			int type = it.currentSegment(coords);
+			if (type == PathIterator.SEG_MOVETO) {
+				startX = lastX = coords[0];
+				startY = lastY = coords[1];
+			} else if (type == PathIterator.SEG_LINETO) {
+				area += lastX * coords[1] - coords[0] * lastY;
+				lastX = coords[0];
+				lastY = coords[1];
+			} else if (type == PathIterator.SEG_CLOSE) {
+				area += lastX * startY - startX * lastY;
+				lastX = startX;
+				lastY = startY;
+			}
+		}
+		return Math.abs(area / 2);
+	}
+
+	@Test
+	public void culledAnnotationsAreNotVisible() {
+		ViewportClipper clipper = new ViewportClipper(context);
+		Rectangle2D viewport = new Rectangle2D.Double(4000, 2400, 1500, 1200);
+
+		for (GisGridAnnotation annotation : annotations) {
+			Polygon full = (Polygon) util.getPolygonShape(annotation, context);
+			boolean touches = full.getBounds2D().intersects(viewport);
+			if (touches) {
+				assertTrue("Annotation touching the window should be visible", clipper.isVisible(annotation, viewport));
+			}
+			if (!clipper.isVisible(annotation, viewport)) {
+				assertNull("Culled annotation should have no shape", clipper.getPolygonShape(annotation, viewport));
+			}
+		}
+	}
+
+	@Test
+	public void clippedShapesMatchIntersection() {
+		ViewportClipper clipper = new ViewportClipper(context);
+		Rectangle2D viewport = new Rectangle2D.Double(4000, 2400, 1500, 1200);
+		GisGridAnnotation coast = annotations.get(annotations.size() - 1);
+
+		Area expected = new Area(util.getPolygonShape(coast, context));
+		expected.intersect(new Area(viewport));
+		Shape clipped = clipper.getPolygonShape(coast, viewport);
+
+		// Within rounding of the window
+		Rectangle2D window = new Rectangle2D.Double(viewport.getX() - 1, viewport.getY() - 1, viewport.getWidth() + 2, viewport.getHeight() + 2);
+		assertTrue("Clipped ring should lie in the window", window.contains(clipped.getBounds2D()));
+		assertEquals("Clipped area should match the visible area", area(expected), area(clipped), area(expected) * 0.01);
+		assertTrue("Clipping should drop most vertices", ((Polygon) clipped).npoints < 20000 / 2);
+	}
+
+	@Test
+	public void indexedLayerMatchesList() {
+		ViewportClipper clipper = new ViewportClipper(context);
+		AnnotationRTree tree = new AnnotationRTree(annotations);
+		Random rand = new Random(2);
+
+		for (int i = 0; i < 20; i++) {
+			Rectangle2D viewport = new Rectangle2D.Double(rand.nextDouble() * 9000, rand.nextDouble() * 11000, 800, 600);
+
+			Map<GisGridAnnotation, Boolean> expected = new IdentityHashMap<>();
+			clipper.forEachVisible(annotations, viewport, (annotation, shape) -> expected.put(annotation, Boolean.TRUE));
+
+			Map<GisGridAnnotation, Boolean> result = new IdentityHashMap<>();
+			clipper.forEachVisible(tree, viewport, (annotation, shape) -> result.put(annotation, Boolean.TRUE));
+
+			assertEquals("Indexed layer should find the same annotations", expected.keySet(), result.keySet());
+		}
+	}
+}